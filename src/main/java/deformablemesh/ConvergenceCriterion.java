@@ -0,0 +1,135 @@
+package deformablemesh;
+
+/**
+ * Decides when a mesh has stopped moving. After each deformation step the displacement of the nodes is measured,
+ * either the largest displacement of a single node or the root mean square displacement. When the displacement
+ * stays below the tolerance for a number of consecutive steps, the patience, the mesh is considered converged.
+ *
+ * The criterion itself holds no state, each mesh being deformed gets its own {@link ConvergenceCriterion.State}.
+ */
+public class ConvergenceCriterion {
+    public enum Measure{
+        Maximum("max displacement"), RMS("rms displacement");
+
+        String title;
+        Measure(String t){
+            title = t;
+        }
+
+        @Override
+        public String toString(){
+            return title;
+        }
+    }
+
+    final Measure measure;
+    final double tolerance;
+    final int patience;
+
+    /**
+     * @param measure how the displacement of the nodes is combined.
+     * @param tolerance displacement, in normalized units, below which a step counts as still.
+     * @param patience number of consecutive still steps required.
+     */
+    public ConvergenceCriterion(Measure measure, double tolerance, int patience){
+        if(tolerance < 0){
+            throw new IllegalArgumentException("tolerance cannot be negative: " + tolerance);
+        }
+        this.measure = measure;
+        this.tolerance = tolerance;
+        this.patience = patience < 1 ? 1 : patience;
+    }
+
+    public Measure getMeasure(){
+        return measure;
+    }
+
+    public double getTolerance(){
+        return tolerance;
+    }
+
+    public int getPatience(){
+        return patience;
+    }
+
+    /**
+     * @return a new state for tracking a single mesh.
+     */
+    public State createState(){
+        return new State();
+    }
+
+    /**
+     * Keeps a copy of the previous positions of one mesh.
+     */
+    public class State{
+        double[] previous;
+        int still;
+        double displacement = Double.NaN;
+
+        /**
+         * Sets the reference positions, should be called before the first step.
+         *
+         * @param positions current positions of the mesh.
+         */
+        public void reset(double[] positions){
+            if(previous==null || previous.length != positions.length){
+                previous = new double[positions.length];
+            }
+            System.arraycopy(positions, 0, previous, 0, positions.length);
+            still = 0;
+            displacement = Double.NaN;
+        }
+
+        /**
+         * Measures the displacement since the last call and updates the reference positions.
+         *
+         * @param positions the positions after a deformation step.
+         * @return true if the mesh has been still for patience steps.
+         */
+        public boolean update(double[] positions){
+            if(previous == null || previous.length != positions.length){
+                //topology changed, start over.
+                reset(positions);
+                return false;
+            }
+            double max = 0;
+            double sum = 0;
+            for(int i = 0; i<positions.length; i+=3){
+                double dx = positions[i] - previous[i];
+                double dy = positions[i + 1] - previous[i + 1];
+                double dz = positions[i + 2] - previous[i + 2];
+                double d2 = dx*dx + dy*dy + dz*dz;
+                sum += d2;
+                if(d2 > max){
+                    max = d2;
+                }
+            }
+            System.arraycopy(positions, 0, previous, 0, positions.length);
+            int n = positions.length/3;
+            if(measure == Measure.Maximum){
+                displacement = Math.sqrt(max);
+            } else{
+                displacement = n == 0 ? 0 : Math.sqrt(sum/n);
+            }
+
+            if(displacement <= tolerance){
+                still++;
+            } else{
+                still = 0;
+            }
+            return still >= patience;
+        }
+
+        public boolean isConverged(){
+            return still >= patience;
+        }
+
+        /**
+         * @return displacement of the most recent step, NaN if no step has been measured.
+         */
+        public double getDisplacement(){
+            return displacement;
+        }
+    }
+}
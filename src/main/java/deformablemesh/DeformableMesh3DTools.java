@@ -2,7 +2,9 @@ package deformablemesh;
 
 import deformablemesh.geometry.*;
 import deformablemesh.io.MeshWriter;
+import deformablemesh.solvers.ReverseCuthillMcKee;
 import deformablemesh.track.Track;
+import deformablemesh.util.MeshVoxelizer;
 import deformablemesh.util.Vector3DOps;
 import deformablemesh.util.astar.*;
 import ij.ImageJ;
@@ -1470,306 +1472,124 @@ public class DeformableMesh3DTools {
     }
 
     /**
-     * Get pixels contained in the mesh. This has repeated code with "mosaicBinary" and should
-     * be combined.
+     * Get pixels contained in the mesh.
      *
-     * @param stack
+     * @see MeshVoxelizer
+     * @param stack geometry used to convert the mesh to image coordinates.
      * @param mesh
-     * @return
+     * @return {x, y, z} of every pixel inside of the mesh, ordered by slice, row and x.
      */
     public static List<int[]> getContainedPixels(MeshImageStack stack, DeformableMesh3D mesh){
-        Box3D box = mesh.getBoundingBox();
-        double[] lowI = stack.getImageCoordinates(box.low);
-        double[] highI = stack.getImageCoordinates(box.high);
-
-        InterceptingMesh3D picker = new InterceptingMesh3D(mesh);
-        double[] xdirection = {1,0,0};
-
-        int slices = stack.getNSlices();
-        int w = stack.getWidthPx();
-        int h = stack.getHeightPx();
-        double center[] = new double[3];
-
-        int sliceLow = (int)lowI[2];
-        int sliceHigh = (int)highI[2];
-        //verify
-        sliceLow = sliceLow < 0 ? 0 : sliceLow;
-        sliceHigh = sliceHigh <= slices ? sliceHigh : slices;
-
-        int jlo = (int)lowI[1];
-        int jhi = (int)highI[1];
-        jlo = jlo < 0 ? 0 : jlo;
-        jhi = jhi <= h ? jhi : h;
-
-        int xlo = (int)lowI[0];
-        int xhi = (int)highI[0];
-        xlo = xlo < 0 ? 0: xlo;
-        xhi = xhi > w ? w : xhi;
-        List<int[]> contained = new ArrayList<>();
-        for(int slice = sliceLow; slice<sliceHigh; slice++){
-
-            center[2] = slice;
-
-
-            for(int j = jlo; j<jhi; j++){
-
-                int offset = j*w;
-                center[1] = j;
-
-                List<Intersection> sections = picker.getIntersections(stack.getNormalizedCoordinate(center), xdirection);
-                if(sections.size()==0){
-                    //No intersections. No points inside.
-                    continue;
-                }
-                scanDirty(sections);
-                sections.sort((a,b)->Double.compare(a.location[0], b.location[0]));
-
-                boolean startInside = false;
-                double count = 0;
-                double[] boundaries = new double[sections.size()+1];
-
-                //the number of boundaries that switch the state from inside to outside.
-                int valid = 0;
-                double lowestEntry = Double.MAX_VALUE;
-                double highestExit = -Double.MAX_VALUE;
-
-                for(int k = 0; k<sections.size(); k++){
-
-                    double bound = stack.getImageCoordinates(sections.get(k).location)[0];
-
-                    boolean facingLeft = sections.get(k).surfaceNormal[0]<0;
-                    boolean facingRight = !facingLeft;
-                    //going through all interfaces, and either going further in
-                    //or back out.
-                    if(facingLeft){
-                        count++;
-                        if(bound < lowestEntry){
-                            lowestEntry = bound;
-                        }
-                    } else{
-                        count--;
-                        if(bound > highestExit){
-                            highestExit = bound;
-                        }
-                    }
-                    if(bound>0) {
-                        //check if it is actually a boundary
-                        if ( count==1 && facingLeft ) {
-                            //boundary entering region.
-                            if( valid == 0){
-                                startInside = false;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        } else if (count==0 && facingRight) {
-                            //stepped out.
-                            if( valid == 0){
-                                startInside = true;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        }
-
-                    }
-                }
-
-                boolean inside = startInside;
-
-
-                if(lowestEntry < lowI[0]){
-                    System.out.println("Topo Error: lowest entry is less than bounding box!");
-                }
-                if( (int)highestExit > highI[0] ){
-                    System.out.println("Topo Error: highest exit is outside of bounding box!");
-                }
-
-                if(startInside && lowestEntry>0){
-                    System.out.println("Topo Error: Lower bound above zero but mesh starts inside.");
-                }
-
-                boundaries[valid] = w;
-
-                //This isn't necessarily true.
-                //lowestIntersection >= lowI[0] and highestIntersection <= highI[0]
-                boolean finishesOutsideImage = lowestEntry <= (w-1) && highestExit >= (w - 1) ;
-
-                int current = 0;
-
-
-                for(int p = 0; p<w; p++){
-                    if(p>boundaries[current]){
-                        //switch.
-                        current++;
-                        inside = !inside;
-                    }
-                    if(inside){
-                        contained.add(new int[]{p, j, slice});
-                    }
-                }
-                if(finishesOutsideImage && !inside){
-                    System.out.println("topography warning: bounds outside image, but not inside the shape at end");
-                }
-
-                if(!finishesOutsideImage && inside){
-                    System.out.println("Inconsistent bounding box: End of image is out of bounds, but state is inside the shape");
-                    System.out.println(Arrays.toString(lowI) + " [~] " + Arrays.toString(highI));
-                }
-
-            }
-
-        }
-        return contained;
+        return new MeshVoxelizer(stack, mesh).getVoxels();
     }
 
+    /**
+     * Sets the pixels inside of the mesh to the provided value.
+     *
+     * @param stack geometry used to convert the mesh to image coordinates.
+     * @param out image stack backed by int[] pixels, eg. ColorProcessor
+     * @param mesh
+     * @param rgb value of the pixels inside of the mesh.
+     */
     public static void mosaicBinary(MeshImageStack stack, ImageStack out, DeformableMesh3D mesh, int rgb){
-        Box3D box = mesh.getBoundingBox();
-        double[] lowI = stack.getImageCoordinates(box.low);
-        double[] highI = stack.getImageCoordinates(box.high);
-
-        InterceptingMesh3D picker = new InterceptingMesh3D(mesh);
-        double[] xdirection = {1,0,0};
-
-        int slices = out.getSize();
-        int w = out.getWidth();
-        int h = out.getHeight();
-        double center[] = new double[3];
-
-        int sliceLow = (int)lowI[2];
-        int sliceHigh = (int)highI[2];
-        //verify
-        sliceLow = sliceLow < 0 ? 0 : sliceLow;
-        sliceHigh = sliceHigh <= out.getSize() ? sliceHigh : out.getSize();
-
-        int jlo = (int)lowI[1];
-        int jhi = (int)highI[1];
-        jlo = jlo < 0 ? 0 : jlo;
-        jhi = jhi <= h ? jhi : h;
-
-        int xlo = (int)lowI[0];
-        int xhi = (int)highI[0];
-        xlo = xlo < 0 ? 0: xlo;
-        xhi = xhi > w ? w : xhi;
-
-        for(int slice = sliceLow; slice<sliceHigh; slice++){
-
-            int[] pixels = (int[])(out.getProcessor(slice+1).getPixels());
-            center[2] = slice;
-
-
-            for(int j = jlo; j<jhi; j++){
-
-                int offset = j*w;
-                center[1] = j;
-
-                List<Intersection> sections = picker.getIntersections(stack.getNormalizedCoordinate(center), xdirection);
-                if(sections.size()==0){
-                    //No intersections. No points inside.
-                    continue;
-                }
-                scanDirty(sections);
-                sections.sort((a,b)->Double.compare(a.location[0], b.location[0]));
-
-                boolean startInside = false;
-                double count = 0;
-                double[] boundaries = new double[sections.size()+1];
-
-                //the number of boundaries that switch the state from inside to outside.
-                int valid = 0;
-                double lowestEntry = Double.MAX_VALUE;
-                double highestExit = -Double.MAX_VALUE;
-
-                for(int k = 0; k<sections.size(); k++){
-
-                    double bound = stack.getImageCoordinates(sections.get(k).location)[0];
-
-                    boolean facingLeft = sections.get(k).surfaceNormal[0]<0;
-                    boolean facingRight = !facingLeft;
-                    //going through all interfaces, and either going further in
-                    //or back out.
-                    if(facingLeft){
-                        count++;
-                        if(bound < lowestEntry){
-                            lowestEntry = bound;
-                        }
-                    } else{
-                        count--;
-                        if(bound > highestExit){
-                            highestExit = bound;
-                        }
-                    }
-                    if(bound>0) {
-                        //check if it is actually a boundary
-                        if ( count==1 && facingLeft ) {
-                            //boundary entering region.
-                            if( valid == 0){
-                                startInside = false;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        } else if (count==0 && facingRight) {
-                            //stepped out.
-                            if( valid == 0){
-                                startInside = true;
-                            }
-                            boundaries[valid] = bound;
-                            valid++;
-                        }
-
-                    }
-                }
-
-                boolean inside = startInside;
-
-
-                if(lowestEntry < lowI[0]){
-                    System.out.println("Topo Error: lowest entry is less than bounding box!");
-                }
-                if( (int)highestExit > highI[0] ){
-                    System.out.println("Topo Error: highest exit is outside of bounding box!");
-                }
-
-                if(startInside && lowestEntry>0){
-                    System.out.println("Topo Error: Lower bound above zero but mesh starts inside.");
-                }
-
-                boundaries[valid] = w;
+        new MeshVoxelizer(stack, mesh, out.getWidth(), out.getHeight(), out.getSize()).fill(out, rgb);
+    }
 
-                //This isn't necessarily true.
-                //lowestIntersection >= lowI[0] and highestIntersection <= highI[0]
-                boolean finishesOutsideImage = lowestEntry <= (w-1) && highestExit >= (w - 1) ;
+    public static DeformableMesh3D copyOf(DeformableMesh3D mesh) {
+        double[] pos = Arrays.copyOf(mesh.positions, mesh.positions.length);
+        int[] con = Arrays.copyOf(mesh.connection_index, mesh.connection_index.length);
+        int[] tri = Arrays.copyOf(mesh.triangle_index, mesh.triangle_index.length);
+        return new DeformableMesh3D(pos, con, tri);
+    }
 
-                int current = 0;
+    /**
+     * Creates a copy of the mesh where the nodes have been relabelled with a reverse Cuthill-McKee ordering. Connected
+     * nodes have nearby indexes, which reduces the bandwidth of the stiffness matrix and keeps the positions of
+     * neighboring nodes close in memory. Connections and triangles are sorted by their lowest node index.
+     *
+     * @param mesh original mesh, it is not modified.
+     * @return a new mesh with the same geometry.
+     */
+    public static DeformableMesh3D reorderNodes(DeformableMesh3D mesh){
+        int n = mesh.nodes.size();
+        int[] offsets = new int[n + 1];
+        for(Connection3D con: mesh.connections){
+            offsets[con.A.index + 1]++;
+            offsets[con.B.index + 1]++;
+        }
+        for(int i = 0; i<n; i++){
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] neighbors = new int[offsets[n]];
+        for(Connection3D con: mesh.connections){
+            neighbors[fill[con.A.index]++] = con.B.index;
+            neighbors[fill[con.B.index]++] = con.A.index;
+        }
 
+        int[] permutation = ReverseCuthillMcKee.ordering(offsets, neighbors);
+        return permuteNodes(mesh, permutation);
+    }
 
-                for(int p = 0; p<w; p++){
-                    if(p>boundaries[current]){
-                        //switch.
-                        current++;
-                        inside = !inside;
-                    }
-                    if(inside){
-                        pixels[p + offset] = rgb;
-                    }
-                }
-                if(finishesOutsideImage && !inside){
-                    System.out.println("topography warning: bounds outside image, but not inside the shape at end");
-                }
-                
-                if(!finishesOutsideImage && inside){
-                    System.out.println("Inconsistent bounding box: End of image is out of bounds, but state is inside the shape");
-                    System.out.println(Arrays.toString(lowI) + " [~] " + Arrays.toString(highI));
-                }
+    /**
+     * Creates a copy of the mesh with the nodes relabelled.
+     *
+     * @param mesh original mesh, it is not modified.
+     * @param permutation permutation[newIndex] = oldIndex
+     * @return a new mesh with the same geometry and the new labels.
+     */
+    public static DeformableMesh3D permuteNodes(DeformableMesh3D mesh, int[] permutation){
+        int[] inverse = ReverseCuthillMcKee.invert(permutation);
+        double[] pos = new double[mesh.positions.length];
+        for(int i = 0; i<permutation.length; i++){
+            System.arraycopy(mesh.positions, 3*permutation[i], pos, 3*i, 3);
+        }
 
-            }
+        List<int[]> cons = new ArrayList<>(mesh.connections.size());
+        for(Connection3D con: mesh.connections){
+            int a = inverse[con.A.index];
+            int b = inverse[con.B.index];
+            cons.add(new int[]{a, b, Math.min(a, b)});
+        }
+        cons.sort(Comparator.comparingInt(c -> c[2]));
+        int[] con = new int[2*cons.size()];
+        for(int i = 0; i<cons.size(); i++){
+            con[2*i] = cons.get(i)[0];
+            con[2*i + 1] = cons.get(i)[1];
+        }
 
+        List<int[]> tris = new ArrayList<>(mesh.triangles.size());
+        for(Triangle3D t: mesh.triangles){
+            int[] dex = t.getIndices();
+            int a = inverse[dex[0]];
+            int b = inverse[dex[1]];
+            int c = inverse[dex[2]];
+            //winding is preserved.
+            tris.add(new int[]{a, b, c, Math.min(a, Math.min(b, c))});
         }
+        tris.sort(Comparator.comparingInt(t -> t[3]));
+        int[] tri = new int[3*tris.size()];
+        for(int i = 0; i<tris.size(); i++){
+            System.arraycopy(tris.get(i), 0, tri, 3*i, 3);
+        }
+
+        DeformableMesh3D reordered = new DeformableMesh3D(pos, con, tri);
+        reordered.setColor(mesh.getColor());
+        reordered.setShowSurface(mesh.isShowSurface());
+        reordered.setSolverType(mesh.getSolverType());
+        return reordered;
     }
 
-    public static DeformableMesh3D copyOf(DeformableMesh3D mesh) {
-        double[] pos = Arrays.copyOf(mesh.positions, mesh.positions.length);
-        int[] con = Arrays.copyOf(mesh.connection_index, mesh.connection_index.length);
-        int[] tri = Arrays.copyOf(mesh.triangle_index, mesh.triangle_index.length);
-        return new DeformableMesh3D(pos, con, tri);
+    /**
+     * Replaces every mesh in the track with a reordered copy.
+     *
+     * @see #reorderNodes(DeformableMesh3D)
+     * @param track
+     */
+    public static void reorderNodes(Track track){
+        for(Map.Entry<Integer, DeformableMesh3D> entry: track.getTrack().entrySet()){
+            track.addMesh(entry.getKey(), reorderNodes(entry.getValue()));
+        }
     }
 
     /**
@@ -0,0 +1,227 @@
+package deformablemesh;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Least recently used cache of frame volumes for a {@link MeshImageStack}, limited by an approximate memory budget.
+ * Frames can be loaded ahead of time on a background thread, so that changing to the next frame only has to wait
+ * for a load that is already in progress, if at all.
+ *
+ * The cached arrays are shared and must not be modified.
+ */
+public class FrameCache {
+    /**
+     * The voxel values of one frame and channel, with the range of values.
+     */
+    public static class Volume{
+        final float[] values;
+        final double min;
+        final double max;
+
+        Volume(float[] values, double min, double max){
+            this.values = values;
+            this.min = min;
+            this.max = max;
+        }
+
+        long getMemoryUsage(){
+            return 4L*values.length;
+        }
+    }
+
+    /**
+     * Creates the volume for a frame and channel, called on the prefetch thread as well as the calling thread.
+     */
+    public interface Loader{
+        Volume load(int frame, int channel);
+    }
+
+    private final LinkedHashMap<Long, Volume> volumes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Future<Volume>> pending = new HashMap<>();
+    private ExecutorService prefetcher;
+    private long maxBytes;
+    private long bytes;
+    private int hits;
+    private int misses;
+    /**
+     * Incremented when the cache is cleared, loads that started before then are not stored.
+     */
+    private int generation;
+
+    /**
+     * @param maxBytes approximate limit of the memory used by cached volumes.
+     */
+    public FrameCache(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    static long key(int frame, int channel){
+        return (((long)frame)<<32) | (channel & 0xffffffffL);
+    }
+
+    /**
+     * Gets the volume from the cache, waits for it if it is being prefetched, or loads it on the calling thread.
+     *
+     * @return the volume for frame and channel.
+     */
+    public Volume get(int frame, int channel, Loader loader){
+        long k = key(frame, channel);
+        Future<Volume> future;
+        int started;
+        synchronized(this){
+            started = generation;
+            Volume v = volumes.get(k);
+            if(v!=null){
+                hits++;
+                return v;
+            }
+            future = pending.get(k);
+            if(future != null){
+                hits++;
+            } else{
+                misses++;
+            }
+        }
+
+        Volume v = null;
+        if(future != null){
+            try{
+                v = future.get();
+            } catch (CancellationException e){
+                //the cache was cleared while prefetching.
+            } catch (InterruptedException | ExecutionException e) {
+                System.err.println("Prefetching frame " + frame + " failed, loading it again.");
+                e.printStackTrace();
+            }
+        }
+        if(v == null){
+            v = loader.load(frame, channel);
+        }
+        store(k, v, started);
+        return v;
+    }
+
+    /**
+     * Starts loading the volume on a background thread, if it is not already cached or being loaded.
+     */
+    public void prefetch(int frame, int channel, Loader loader){
+        long k = key(frame, channel);
+        synchronized(this){
+            if(maxBytes <= 0 || volumes.containsKey(k) || pending.containsKey(k)){
+                return;
+            }
+            if(prefetcher == null){
+                prefetcher = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "frame-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            int started = generation;
+            pending.put(k, prefetcher.submit(() -> {
+                Volume v = loader.load(frame, channel);
+                store(k, v, started);
+                return v;
+            }));
+        }
+    }
+
+    /**
+     * @param started generation when the load started, stale volumes are not stored.
+     */
+    private synchronized void store(long k, Volume v, int started){
+        if(started != generation){
+            return;
+        }
+        pending.remove(k);
+        if(maxBytes <= 0){
+            return;
+        }
+        Volume old = volumes.put(k, v);
+        if(old != null){
+            bytes -= old.getMemoryUsage();
+        }
+        bytes += v.getMemoryUsage();
+        evict(k);
+    }
+
+    /**
+     * Removes the least recently used volumes until the cache fits in the budget.
+     *
+     * @param keep key of a volume that will not be evicted.
+     */
+    private void evict(long keep){
+        Iterator<Map.Entry<Long, Volume>> iter = volumes.entrySet().iterator();
+        while(bytes > maxBytes && iter.hasNext()){
+            Map.Entry<Long, Volume> entry = iter.next();
+            if(entry.getKey() == keep){
+                continue;
+            }
+            bytes -= entry.getValue().getMemoryUsage();
+            iter.remove();
+        }
+    }
+
+    public synchronized void setMaxBytes(long maxBytes){
+        this.maxBytes = maxBytes;
+        if(maxBytes <= 0){
+            volumes.clear();
+            bytes = 0;
+        } else{
+            evict(Long.MIN_VALUE);
+        }
+    }
+
+    public synchronized long getMaxBytes(){
+        return maxBytes;
+    }
+
+    public synchronized long getMemoryUsage(){
+        return bytes;
+    }
+
+    public synchronized int size(){
+        return volumes.size();
+    }
+
+    public synchronized int getHits(){
+        return hits;
+    }
+
+    public synchronized int getMisses(){
+        return misses;
+    }
+
+    /**
+     * Removes all volumes, eg when the image data has changed. Prefetches in progress are cancelled, and loads that
+     * finish after this will not be stored.
+     */
+    public synchronized void clear(){
+        generation++;
+        for(Future<Volume> future: pending.values()){
+            future.cancel(true);
+        }
+        pending.clear();
+        volumes.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Stops the prefetch thread, the cache can still be used.
+     */
+    public synchronized void shutdown(){
+        if(prefetcher != null){
+            prefetcher.shutdownNow();
+            prefetcher = null;
+        }
+        pending.clear();
+    }
+}
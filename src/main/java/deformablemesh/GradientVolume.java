@@ -0,0 +1,162 @@
+package deformablemesh;
+
+import deformablemesh.util.GaussianKernels;
+
+import java.util.stream.IntStream;
+
+/**
+ * Gaussian smoothed gradient of a single frame, calculated once with separable convolutions. Each component and
+ * the magnitude are stored as a {@link MeshImageStack} with the geometry of the source, so they are sampled in
+ * normalized coordinates with the usual trilinear interpolation.
+ *
+ * The gradient is the change in intensity per normalized length.
+ */
+public class GradientVolume {
+    final MeshImageStack[] components;
+    final MeshImageStack magnitude;
+
+    private GradientVolume(MeshImageStack[] components, MeshImageStack magnitude){
+        this.components = components;
+        this.magnitude = magnitude;
+    }
+
+    /**
+     * Smooths the current values of the stack with a Gaussian and takes the derivative along each axis. The
+     * standard deviation is {@link GaussianKernels#getSigma()} samples of the provided spacing, so anisotropic
+     * voxels are smoothed over the same physical distance along each axis.
+     *
+     * @param stack source of the values and geometry.
+     * @param spacing sample spacing in normalized units, eg. {@link MeshImageStack#getMinPx()}
+     * @return the gradient volume.
+     */
+    public static GradientVolume create(MeshImageStack stack, double spacing){
+        int w = stack.width;
+        int h = stack.height;
+        int d = stack.depth;
+        float[] values = stack.data;
+        if(values == null){
+            values = new float[w*h*d];
+            int dex = 0;
+            for(int z = 0; z<d; z++){
+                for(int y = 0; y<h; y++){
+                    for(int x = 0; x<w; x++){
+                        values[dex++] = (float)stack.getValue(x, y, z);
+                    }
+                }
+            }
+        }
+
+        double[][] blur = new double[3][];
+        double[][] derivative = new double[3][];
+        for(int i = 0; i<3; i++){
+            double normalizedPixel = stack.pixel_dimensions[i]/stack.SCALE;
+            double sigma = GaussianKernels.getSigma()*spacing/normalizedPixel;
+            blur[i] = GaussianKernels.blurred1DKernel(sigma);
+            derivative[i] = GaussianKernels.firstDerivative1DKernel(sigma);
+            //change per pixel to change per normalized length.
+            for(int k = 0; k<derivative[i].length; k++){
+                derivative[i][k] = derivative[i][k]/normalizedPixel;
+            }
+        }
+
+        int[] size = {w, h, d};
+        float[] a = new float[values.length];
+        float[] b = new float[values.length];
+        float[][] g = new float[3][values.length];
+
+        convolve(values, a, blur[2], 2, size);
+        convolve(a, b, blur[1], 1, size);
+        convolve(b, g[0], derivative[0], 0, size);
+
+        convolve(a, b, blur[0], 0, size);
+        convolve(b, g[1], derivative[1], 1, size);
+
+        convolve(values, a, blur[0], 0, size);
+        convolve(a, b, blur[1], 1, size);
+        convolve(b, g[2], derivative[2], 2, size);
+
+        float[] mag = a;
+        IntStream.range(0, d).parallel().forEach(z->{
+            for(int dex = z*w*h; dex<(z + 1)*w*h; dex++){
+                double gx = g[0][dex];
+                double gy = g[1][dex];
+                double gz = g[2][dex];
+                mag[dex] = (float)Math.sqrt(gx*gx + gy*gy + gz*gz);
+            }
+        });
+
+        MeshImageStack[] components = new MeshImageStack[3];
+        for(int i = 0; i<3; i++){
+            components[i] = new MeshImageStack(stack, g[i]);
+        }
+        return new GradientVolume(components, new MeshImageStack(stack, mag));
+    }
+
+    /**
+     * One dimensional convolution along an axis, values past the edge are the edge value. Slices are processed in
+     * parallel.
+     *
+     * @param src source values.
+     * @param dst destination, cannot be the source.
+     * @param kernel odd length kernel, dst[i] = sum src[i + k - half]*kernel[k]
+     * @param axis 0, 1 or 2 for x, y or z.
+     * @param size width, height and depth.
+     */
+    static void convolve(float[] src, float[] dst, double[] kernel, int axis, int[] size){
+        int w = size[0];
+        int h = size[1];
+        int n = size[axis];
+        int stride = axis == 0 ? 1 : axis == 1 ? w : w*h;
+        int half = kernel.length/2;
+        IntStream.range(0, size[2]).parallel().forEach(z->{
+            int[] c = new int[3];
+            c[2] = z;
+            for(int y = 0; y<h; y++){
+                c[1] = y;
+                for(int x = 0; x<w; x++){
+                    c[0] = x;
+                    int dex = x + w*(y + h*z);
+                    int base = dex - c[axis]*stride;
+                    double sum = 0;
+                    for(int k = 0; k<kernel.length; k++){
+                        int p = c[axis] + k - half;
+                        p = p < 0 ? 0 : p >= n ? n - 1 : p;
+                        sum += src[base + p*stride]*kernel[k];
+                    }
+                    dst[dex] = (float)sum;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the magnitude of the gradient, as a stack.
+     */
+    public MeshImageStack getMagnitude(){
+        return magnitude;
+    }
+
+    /**
+     * @param axis 0, 1 or 2
+     * @return the gradient component along the axis, as a stack.
+     */
+    public MeshImageStack getComponent(int axis){
+        return components[axis];
+    }
+
+    /**
+     * Interpolates the gradient at a point.
+     *
+     * @param xyz point in normalized coordinates.
+     * @param result where the gradient is written.
+     */
+    public void getGradient(double[] xyz, double[] result){
+        for(int i = 0; i<3; i++){
+            result[i] = components[i].getInterpolatedValue(xyz[0], xyz[1], xyz[2]);
+        }
+    }
+
+    public long getMemoryUsage(){
+        return 4L*4*magnitude.data.length;
+    }
+}
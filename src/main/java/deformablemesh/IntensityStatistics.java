@@ -0,0 +1,235 @@
+package deformablemesh;
+
+import ij.process.ImageProcessor;
+
+import java.util.stream.IntStream;
+
+/**
+ * The range and histogram of a set of intensity values. Values are visited one slice at a time, slices are reduced
+ * in parallel, first for the range and then for the histogram.
+ *
+ * For previews a stride can be used, then only every stride'th slice, and every stride'th value of those slices,
+ * is included. The range of a strided histogram might not contain every value.
+ */
+public class IntensityStatistics {
+    /**
+     * Values to be summarized, organized as slices of equal length.
+     */
+    public interface Values{
+        int getSlices();
+        int getSliceLength();
+
+        /**
+         * Called concurrently for different slices.
+         */
+        double get(int slice, int index);
+    }
+
+    final double min;
+    final double max;
+    final long count;
+    final long[] bins;
+    final long maxBin;
+
+    private IntensityStatistics(double min, double max, long count, long[] bins){
+        this.min = min;
+        this.max = max;
+        this.count = count;
+        this.bins = bins;
+        long m = 0;
+        for(long b: bins){
+            m = b > m ? b : m;
+        }
+        maxBin = m;
+    }
+
+    /**
+     * @param values source of the values.
+     * @param nBins number of histogram bins, evenly spaced from the minimum to the maximum.
+     * @param stride 1 to use every value, larger values subsample the slices and the values in each slice.
+     * @return the statistics of the values.
+     */
+    public static IntensityStatistics compute(Values values, int nBins, int stride){
+        int step = stride < 1 ? 1 : stride;
+        int slices = (values.getSlices() + step - 1)/step;
+        int length = values.getSliceLength();
+
+        double[][] ranges = new double[slices][];
+        IntStream.range(0, slices).parallel().forEach(s->{
+            int slice = s*step;
+            double low = Double.MAX_VALUE;
+            double high = -Double.MAX_VALUE;
+            for(int i = 0; i<length; i+=step){
+                double v = values.get(slice, i);
+                if(v<low) low = v;
+                if(v>high) high = v;
+            }
+            ranges[s] = new double[]{low, high};
+        });
+
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for(double[] range: ranges){
+            min = range[0] < min ? range[0] : min;
+            max = range[1] > max ? range[1] : max;
+        }
+        if(slices == 0 || length == 0){
+            return new IntensityStatistics(0, 0, 0, new long[nBins]);
+        }
+
+        final double lowest = min;
+        final double scale = max > min ? nBins/(max - min) : 0;
+        long[] bins = IntStream.range(0, slices).parallel().collect(
+                () -> new long[nBins],
+                (counts, s) -> {
+                    int slice = s*step;
+                    for(int i = 0; i<length; i+=step){
+                        int dex = (int)((values.get(slice, i) - lowest)*scale);
+                        dex = dex >= nBins ? nBins - 1 : dex;
+                        counts[dex]++;
+                    }
+                },
+                (a, b) -> {
+                    for(int i = 0; i<nBins; i++){
+                        a[i] += b[i];
+                    }
+                }
+        );
+        long count = (long)slices*((length + step - 1)/step);
+        return new IntensityStatistics(min, max, count, bins);
+    }
+
+    /**
+     * Statistics of the current frame and channel of a stack, slices are z slices.
+     */
+    public static IntensityStatistics compute(MeshImageStack stack, int nBins, int stride){
+        int w = stack.getWidthPx();
+        int h = stack.getHeightPx();
+        int d = stack.getNSlices();
+        return compute(new Values(){
+            @Override
+            public int getSlices() {
+                return d;
+            }
+
+            @Override
+            public int getSliceLength() {
+                return w*h;
+            }
+
+            @Override
+            public double get(int slice, int index) {
+                return stack.getValue(index%w, index/w, slice);
+            }
+        }, nBins, stride);
+    }
+
+    /**
+     * Statistics of texture style data, indexed [x][y][z], each row along z is treated as a slice.
+     */
+    public static IntensityStatistics compute(double[][][] values, int nBins, int stride){
+        int h = values.length == 0 ? 0 : values[0].length;
+        int d = h == 0 ? 0 : values[0][0].length;
+        return compute(new Values(){
+            @Override
+            public int getSlices() {
+                return values.length*h;
+            }
+
+            @Override
+            public int getSliceLength() {
+                return d;
+            }
+
+            @Override
+            public double get(int slice, int index) {
+                return values[slice/h][slice%h][index];
+            }
+        }, nBins, stride);
+    }
+
+    /**
+     * Statistics of a single image, each row is a slice.
+     */
+    public static IntensityStatistics compute(ImageProcessor proc, int nBins){
+        int w = proc.getWidth();
+        int h = proc.getHeight();
+        return compute(new Values(){
+            @Override
+            public int getSlices() {
+                return h;
+            }
+
+            @Override
+            public int getSliceLength() {
+                return w;
+            }
+
+            @Override
+            public double get(int slice, int index) {
+                return proc.getf(index + slice*w);
+            }
+        }, nBins, 1);
+    }
+
+    public double getMin(){
+        return min;
+    }
+
+    public double getMax(){
+        return max;
+    }
+
+    /**
+     * @return number of values included.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    public int getNBins(){
+        return bins.length;
+    }
+
+    public long getBin(int i){
+        return bins[i];
+    }
+
+    /**
+     * @return the largest number of values in a single bin.
+     */
+    public long getMaxBin(){
+        return maxBin;
+    }
+
+    /**
+     * @return the intensity at the center of the bin.
+     */
+    public double getBinCenter(int i){
+        return min + (i + 0.5)*(max - min)/bins.length;
+    }
+
+    /**
+     * Estimates the intensity below which a fraction of the values fall, values are assumed to be evenly
+     * distributed within each bin.
+     *
+     * @param fraction 0 to 1, eg. 0.99 for the 99th percentile.
+     * @return the estimated intensity.
+     */
+    public double getPercentile(double fraction){
+        if(count == 0){
+            return min;
+        }
+        double target = fraction*count;
+        double width = (max - min)/bins.length;
+        long sum = 0;
+        for(int i = 0; i<bins.length; i++){
+            if(bins[i] > 0 && sum + bins[i] >= target){
+                double f = (target - sum)/bins[i];
+                return min + (i + (f < 0 ? 0 : f))*width;
+            }
+            sum += bins[i];
+        }
+        return max;
+    }
+}
@@ -6,9 +6,7 @@ import deformablemesh.simulations.FillingBinaryImage;
 import deformablemesh.util.connectedcomponents.ConnectedComponents3D;
 import deformablemesh.util.connectedcomponents.Region;
 import deformablemesh.util.connectedcomponents.RegionGrowing;
-import ij.ImagePlus;
 import ij.ImageStack;
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
 import java.util.ArrayList;
@@ -19,10 +17,22 @@ public class MeshDetector {
     MeshImageStack mis;
     ImageStack threshed;
     int minSize = 50;
+    int pyramidLevel = 0;
     public MeshDetector(MeshImageStack mis){
         this.mis = mis;
     }
 
+    /**
+     * Detects regions on a coarser level of the image pyramid, the thresholding, labelling and region growing
+     * then work on a volume that is up to 8 times smaller for each level. The minimum size is still in full resolution
+     * pixels.
+     *
+     * @param level 0 uses the full resolution image.
+     */
+    public void setPyramidLevel(int level){
+        pyramidLevel = level < 0 ? 0 : level;
+    }
+
     public void addRegionsToAvoid(List<Box3D> regions){
         current.addAll(regions);
     }
@@ -32,7 +42,11 @@ public class MeshDetector {
         //create a thresholded version.
         long start, end;
         start = System.currentTimeMillis();
-        ImageStack currentFrame = mis.getCurrentFrame().getStack();
+        MeshImageStack source = mis.getPyramidLevel(pyramidLevel);
+        ImageStack currentFrame = source.getCurrentFrame().getStack();
+        double pixelVolume = source.pixel_dimensions[0]*source.pixel_dimensions[1]*source.pixel_dimensions[2];
+        double fullVolume = mis.pixel_dimensions[0]*mis.pixel_dimensions[1]*mis.pixel_dimensions[2];
+        int levelMinSize = (int)Math.max(1, Math.round(minSize*fullVolume/pixelVolume));
         threshed = new ImageStack(currentFrame.getWidth(), currentFrame.getHeight());
         for(int i = 1; i<= currentFrame.size(); i++){
             ImageProcessor proc = currentFrame.getProcessor(i).convertToShort(false);
@@ -64,7 +78,7 @@ public class MeshDetector {
 
             int width = threshed.getWidth();
 
-            if (points.size() < minSize) {
+            if (points.size() < levelMinSize) {
                 small++;
                 toRemove.add(region);
                 for (int[] pt : points) {
@@ -72,8 +86,8 @@ public class MeshDetector {
                     //threshed.getProcessor(pt[2]).set(pt[0], pt[1], 0);
                 }
             } else {
-                double[] rmin = mis.getNormalizedCoordinate(region.getLowCorner());
-                double[] rmax = mis.getNormalizedCoordinate(region.getHighCorner());
+                double[] rmin = source.getNormalizedCoordinate(region.getLowCorner());
+                double[] rmax = source.getNormalizedCoordinate(region.getHighCorner());
 
                 Box3D candidate = new Box3D(rmin[0], rmin[1], rmin[2], rmax[0], rmax[1], rmax[2]);
                 double cv = candidate.getVolume();
@@ -128,28 +142,10 @@ public class MeshDetector {
 
         start = System.currentTimeMillis();
         for (Region region : regions) {
-            int label = region.getLabel();
             List<int[]> rs = region.getPoints();
 
-            //Collections.sort(rs, (a,b)->Integer.compare(a[2], b[2]));
-            ImagePlus original = mis.original;
-            ImagePlus plus = original.createImagePlus();
-            int w = original.getWidth();
-            int h = original.getHeight();
-            ImageStack new_stack = new ImageStack(w, h);
-
-            for (int dummy = 0; dummy < original.getNSlices(); dummy++) {
-                new_stack.addSlice(new ByteProcessor(w, h));
-            }
-            for (int[] pt : rs) {
-                new_stack.getProcessor(pt[2]).set(pt[0], pt[1], 1);
-            }
-
-            plus.setStack(new_stack);
-            plus.setTitle("label: " + label);
-            //plus.show();
-
-            DeformableMesh3D mesh = FillingBinaryImage.fillBinaryWithMesh(plus, rs);
+            //only the geometry of the stack is used, so the region doesn't need to be drawn into an image.
+            DeformableMesh3D mesh = FillingBinaryImage.fillBinaryWithMesh(source, rs);
             mesh.clearEnergies();
             guessed.add(mesh);
         }
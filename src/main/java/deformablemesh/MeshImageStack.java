@@ -2,14 +2,21 @@ package deformablemesh;
 
 import deformablemesh.geometry.Box3D;
 import deformablemesh.geometry.Furrow3D;
+import deformablemesh.io.MappedFrames;
+import deformablemesh.io.MappedVolume;
 import deformablemesh.ringdetection.FurrowTransformer;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.io.FileInfo;
+import ij.measure.Calibration;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 
 import java.awt.Image;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import static deformablemesh.geometry.DeformableMesh3D.ORIGIN;
 
@@ -23,7 +30,44 @@ import static deformablemesh.geometry.DeformableMesh3D.ORIGIN;
  * To change this template use File | Settings | File Templates.
  */
 public class MeshImageStack {
-    public double[][][] data;
+    /**
+     * Voxel values of the current frame and channel, stored x fastest, then y, then z. The value of voxel x, y, z
+     * is at x + width*(y + height*z).
+     */
+    public float[] data;
+    int width, height, depth;
+    /**
+     * When not null, values are read from the pixels of the original image and data is not used.
+     */
+    PixelView view;
+    boolean viewPixels = false;
+    FrameCache frameCache;
+    int direction = 1;
+    /**
+     * Smoothed gradient of the current values, created when first requested.
+     */
+    GradientVolume gradient;
+    /**
+     * Lazily created coarser levels, pyramid[0] is level 1.
+     */
+    MeshImageStack[] pyramid;
+    /**
+     * When not null, frames are memory mapped from files instead of being read from the original image.
+     */
+    MappedFrames mappedFrames;
+    MappedVolume mapped;
+    /**
+     * Statistics of frames and channels that have been requested, keyed by frame, channel, bins and stride.
+     */
+    final Map<String, IntensityStatistics> statistics = new HashMap<>();
+    /**
+     * True when the values have been copied from another image, then the statistics are not cached.
+     */
+    boolean foreignValues = false;
+    /**
+     * The most recently sampled plane, so redrawing the same plane does not sample the volume again.
+     */
+    PlaneSlice planeSlice;
 
     public double SCALE;
     public double[] scale_values;
@@ -44,7 +88,10 @@ public class MeshImageStack {
         offsets=new double[]{0,0,0};
         pixel_dimensions=new double[]{1,1,1};
         PX=1;
-        data = new double[1][1][1];
+        data = new float[1];
+        width = 1;
+        height = 1;
+        depth = 1;
         max_dex = new int[3];
     }
     public MeshImageStack(ImagePlus original, int frame, int channel){
@@ -58,7 +105,10 @@ public class MeshImageStack {
         int py = original.getHeight();
         int px = original.getWidth();
 
-        data = new double[SLICES][py][px];
+        width = px;
+        height = py;
+        depth = SLICES;
+        data = new float[px*py*SLICES];
 
         max_dex = new int[]{px-1, py-1, SLICES-1};
 
@@ -110,6 +160,197 @@ public class MeshImageStack {
         this(original, 0, 0);
     }
 
+    /**
+     * Creates a stack for a series that is memory mapped from files. Voxels are read from the mapped files as
+     * they are needed, nothing is copied onto the heap, so the series can be far larger than the available memory.
+     *
+     * @param frames the mapped series.
+     * @param frame the frame to start on.
+     */
+    public MeshImageStack(MappedFrames frames, int frame){
+        mappedFrames = frames;
+        SLICES = frames.getNSlices();
+        FRAMES = frames.getNFrames();
+        CHANNELS = 1;
+        CURRENT = frame;
+
+        width = frames.getWidth();
+        height = frames.getHeight();
+        depth = SLICES;
+        max_dex = new int[]{width - 1, height - 1, depth - 1};
+
+        pixel_dimensions = frames.getPixelDimensions();
+        int[] size = {width, height, depth};
+        SCALE = 0;
+        scale_values = new double[3];
+        offsets = new double[3];
+        for(int i = 0; i<3; i++){
+            SCALE = Math.max(SCALE, pixel_dimensions[i]*size[i]);
+            scale_values[i] = 1/pixel_dimensions[i];
+        }
+        for(int i = 0; i<3; i++){
+            offsets[i] = 0.5*pixel_dimensions[i]*size[i]/SCALE;
+        }
+        double[] nPx = scaleToNormalizedLength(new double[]{1,1,1});
+        PX = Math.min(nPx[0], Math.min(nPx[1], nPx[2]));
+
+        copyValues();
+    }
+
+    /**
+     * Creates a block averaged copy of the source data.
+     *
+     * @param source stack to be downsampled.
+     * @param factors block size along x, y and z.
+     */
+    private MeshImageStack(MeshImageStack source, int[] factors){
+        int slices = (source.depth + factors[2] - 1)/factors[2];
+        int py = (source.height + factors[1] - 1)/factors[1];
+        int px = (source.width + factors[0] - 1)/factors[0];
+
+        width = px;
+        height = py;
+        depth = slices;
+        data = new float[px*py*slices];
+        max_dex = new int[]{px - 1, py - 1, slices - 1};
+        SLICES = slices;
+        FRAMES = 1;
+        CHANNELS = 1;
+
+        SCALE = source.SCALE;
+        pixel_dimensions = new double[3];
+        scale_values = new double[3];
+        offsets = new double[3];
+        for(int i = 0; i<3; i++){
+            pixel_dimensions[i] = source.pixel_dimensions[i]*factors[i];
+            scale_values[i] = source.scale_values[i]/factors[i];
+            //each new pixel is centered on the block it averages.
+            offsets[i] = source.offsets[i] - 0.5*(factors[i] - 1)*source.pixel_dimensions[i]/SCALE;
+        }
+        double[] nPx = scaleToNormalizedLength(new double[]{1,1,1});
+        PX = Math.min(nPx[0], Math.min(nPx[1], nPx[2]));
+
+        MIN_VALUE=Double.MAX_VALUE;
+        MAX_VALUE=-MIN_VALUE;
+        for(int k = 0; k<slices; k++){
+            int z1 = Math.min(source.depth, (k + 1)*factors[2]);
+            for(int j = 0; j<py; j++){
+                int y1 = Math.min(source.height, (j + 1)*factors[1]);
+                for(int i = 0; i<px; i++){
+                    int x1 = Math.min(source.width, (i + 1)*factors[0]);
+                    double sum = 0;
+                    int count = 0;
+                    for(int z = k*factors[2]; z<z1; z++){
+                        for(int y = j*factors[1]; y<y1; y++){
+                            for(int x = i*factors[0]; x<x1; x++){
+                                sum += source.getValue(x, y, z);
+                                count++;
+                            }
+                        }
+                    }
+                    float v = (float)(sum/count);
+                    if(v<MIN_VALUE) MIN_VALUE=v;
+                    if(v>MAX_VALUE) MAX_VALUE=v;
+                    data[i + px*(j + py*k)] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a stack with the same geometry as the source for values derived from its current frame and channel,
+     * eg. a filtered copy.
+     *
+     * @param source stack providing the geometry.
+     * @param values voxel values, in the same order as {@link #data}.
+     */
+    MeshImageStack(MeshImageStack source, float[] values){
+        width = source.width;
+        height = source.height;
+        depth = source.depth;
+        data = values;
+        max_dex = source.max_dex.clone();
+        SLICES = source.depth;
+        FRAMES = 1;
+        CHANNELS = 1;
+        SCALE = source.SCALE;
+        pixel_dimensions = source.pixel_dimensions.clone();
+        scale_values = source.scale_values.clone();
+        offsets = source.offsets.clone();
+        PX = source.PX;
+
+        MIN_VALUE=Double.MAX_VALUE;
+        MAX_VALUE=-MIN_VALUE;
+        for(float v: values){
+            if(v<MIN_VALUE) MIN_VALUE=v;
+            if(v>MAX_VALUE) MAX_VALUE=v;
+        }
+    }
+
+    /**
+     * Gets a level of a Gaussian pyramid of the current frame and channel. Each level is smoothed and downsampled
+     * by 2 along the finest axes of the previous level, coarser axes such as thick slices are only downsampled
+     * once the other axes have caught up. The levels use the same normalized coordinates as this stack, so they
+     * can be sampled, or used for energies, in place of this stack.
+     *
+     * Levels are created when first requested and are discarded when the frame or channel changes.
+     *
+     * @param level 0 is this stack.
+     * @return the stack for the level.
+     */
+    public synchronized MeshImageStack getPyramidLevel(int level){
+        if(level <= 0){
+            return this;
+        }
+        if(pyramid == null || pyramid.length < level){
+            MeshImageStack[] levels = new MeshImageStack[level];
+            if(pyramid != null){
+                System.arraycopy(pyramid, 0, levels, 0, pyramid.length);
+            }
+            pyramid = levels;
+        }
+        if(pyramid[level - 1] == null){
+            pyramid[level - 1] = getPyramidLevel(level - 1).createGaussianLevel();
+        }
+        return pyramid[level - 1];
+    }
+
+    /**
+     * Smooths the axes that will be downsampled with a [1 2 1]/4 kernel, then averages blocks of 2. The combined
+     * filter is [1 3 3 1]/8, centered between the two source pixels.
+     *
+     * @return the next level of the pyramid.
+     */
+    private MeshImageStack createGaussianLevel(){
+        double smallest = Math.min(pixel_dimensions[0], Math.min(pixel_dimensions[1], pixel_dimensions[2]));
+        int[] factors = new int[3];
+        for(int i = 0; i<3; i++){
+            factors[i] = Math.max(1, (int)Math.round(2*smallest/pixel_dimensions[i]));
+        }
+
+        float[] values = new float[width*height*depth];
+        int dex = 0;
+        for(int z = 0; z<depth; z++){
+            for(int y = 0; y<height; y++){
+                for(int x = 0; x<width; x++){
+                    values[dex++] = voxel(x, y, z);
+                }
+            }
+        }
+        int[] size = {width, height, depth};
+        double[] kernel = {0.25, 0.5, 0.25};
+        float[] work = new float[values.length];
+        for(int i = 0; i<3; i++){
+            if(factors[i] > 1){
+                GradientVolume.convolve(values, work, kernel, i, size);
+                float[] swap = values;
+                values = work;
+                work = swap;
+            }
+        }
+        return new MeshImageStack(new MeshImageStack(this, values), factors);
+    }
+
     public int getNFrames(){
         return FRAMES;
     }
@@ -120,19 +361,24 @@ public class MeshImageStack {
 
     public int getWidthPx(){
         if(original==null){
-            return 0;
+            //derived stacks, eg. pyramid levels, have a single frame.
+            return FRAMES == 0 ? 0 : width;
         }
         return original.getWidth();
     }
 
     public int getHeightPx(){
         if(original==null){
-            return 0;
+            //derived stacks, eg. pyramid levels, have a single frame.
+            return FRAMES == 0 ? 0 : height;
         }
         return original.getHeight();
     }
 
     public String getUnits(){
+        if(mappedFrames != null){
+            return mappedFrames.getUnits();
+        }
         return original.getFileInfo().unit;
     }
 
@@ -171,6 +417,7 @@ public class MeshImageStack {
     public void nextFrame(){
         if(CURRENT+1<FRAMES){
             CURRENT+=1;
+            direction = 1;
             copyValues();
         }
     }
@@ -178,17 +425,77 @@ public class MeshImageStack {
     public void previousFrame(){
         if(CURRENT>0){
             CURRENT--;
+            direction = -1;
             copyValues();
         }
     }
 
     public void setFrame(int i){
         if(i!=CURRENT&&i<FRAMES&&i>=0){
+            direction = i > CURRENT ? 1 : -1;
             CURRENT=i;
             copyValues();
         }
     }
 
+    /**
+     * Keeps recently used frames in memory, and loads the next frame in the direction of the last frame change on
+     * a background thread. Frames are only cached when values are copied, not in pixel view mode.
+     *
+     * @param bytes approximate memory budget for the cached frames, 0 disables the cache.
+     */
+    public void setFrameCacheSize(long bytes){
+        if(bytes <= 0){
+            if(frameCache != null){
+                frameCache.shutdown();
+                frameCache = null;
+                //the current data belongs to the cache.
+                if(data != null){
+                    data = data.clone();
+                }
+            }
+            return;
+        }
+        if(frameCache == null){
+            frameCache = new FrameCache(bytes);
+        } else{
+            frameCache.setMaxBytes(bytes);
+        }
+    }
+
+    public FrameCache getFrameCache(){
+        return frameCache;
+    }
+
+    private void prefetchNext(){
+        int next = CURRENT + direction;
+        if(next >= 0 && next < FRAMES){
+            frameCache.prefetch(next, channel, this::loadVolume);
+        }
+    }
+
+    /**
+     * In pixel view mode the values are read directly from the pixel arrays of the ImagePlus instead of being
+     * copied, so changing frames or channels does not copy the volume. The image needs to be 8, 16 or 32 bit,
+     * otherwise the values are copied as usual. MIN_VALUE and MAX_VALUE are not calculated in view mode.
+     *
+     * Changes to the pixels of the ImagePlus are visible immediately in view mode.
+     *
+     * @param view true to read from the pixels directly.
+     */
+    public void setPixelView(boolean view){
+        if(view != viewPixels){
+            viewPixels = view;
+            if(original!=null){
+                copyValues();
+            }
+        }
+    }
+
+    public boolean isPixelView(){
+        return view != null;
+    }
+
     public void setChannel(int c){
         if(c >= 0 && c < CHANNELS ){
             if(channel != c){
@@ -201,32 +508,108 @@ public class MeshImageStack {
     }
 
     /**
-     * Copies the image data from the image stack to the double[][] backing the
-     * image data that is used for obtaining values.
+     * Copies the image data from the image stack to the float[] backing the
+     * image data that is used for obtaining values. In pixel view mode the pixels are not copied, a view of the
+     * current frame and channel is created instead.
      *
      */
     public void copyValues(){
+        foreignValues = false;
+        if(mappedFrames != null){
+            gradient = null;
+            pyramid = null;
+            planeSlice = null;
+            mapped = mappedFrames.map(CURRENT);
+            clearStatistics(CURRENT, channel);
+            MIN_VALUE = Double.NaN;
+            MAX_VALUE = Double.NaN;
+            return;
+        }
         int slices = original.getNSlices();
         int py = original.getHeight();
         int px = original.getWidth();
+        gradient = null;
+        pyramid = null;
+        planeSlice = null;
+
+        if(viewPixels){
+            int first = CURRENT*CHANNELS*slices + channel + 1;
+            view = PixelView.create(original.getStack(), first, CHANNELS, slices);
+            if(view!=null){
+                data = null;
+                clearStatistics(CURRENT, channel);
+                MIN_VALUE = Double.NaN;
+                MAX_VALUE = Double.NaN;
+                return;
+            }
+        }
+        view = null;
+        FrameCache.Volume volume;
+        if(frameCache!=null){
+            volume = frameCache.get(CURRENT, channel, this::loadVolume);
+        } else{
+            if(data==null){
+                data = new float[px*py*slices];
+            }
+            volume = loadVolume(CURRENT, channel, data);
+        }
+        data = volume.values;
+        MIN_VALUE = volume.min;
+        MAX_VALUE = volume.max;
 
-        MIN_VALUE=Double.MAX_VALUE;
-        MAX_VALUE=-MIN_VALUE;
+        if(frameCache!=null){
+            prefetchNext();
+        }
+    }
 
-        for(int i = 0;i<slices; i++){
-            //int N = z*channels + i * channels * slices + c;
-            int n = i * CHANNELS + CURRENT*CHANNELS*slices + channel + 1;
-            ImageProcessor proc = original.getStack().getProcessor( n );
+    private FrameCache.Volume loadVolume(int frame, int c){
+        return loadVolume(frame, c, null);
+    }
+
+    /**
+     * Reads the values of one frame and channel from the original image.
+     *
+     * @param target where the values are written, if null a new array is created.
+     */
+    private FrameCache.Volume loadVolume(int frame, int c, float[] target){
+        int slices = original.getNSlices();
+        int py = original.getHeight();
+        int px = original.getWidth();
+        float[] values = target == null ? new float[px*py*slices] : target;
+        ImageStack stack = original.getStack();
+
+        //virtual stacks read from disk, so the slices are loaded in order.
+        IntStream indexes = IntStream.range(0, slices);
+        if(!stack.isVirtual()){
+            indexes = indexes.parallel();
+        }
+        double[][] ranges = new double[slices][];
+        indexes.forEach(i->{
+            int n = i * CHANNELS + frame*CHANNELS*slices + c + 1;
+            ImageProcessor proc = stack.getProcessor( n );
+            double min = Double.MAX_VALUE;
+            double max = -min;
+            int dex = i*px*py;
             for(int j = 0; j<py; j++){
                 for(int k = 0; k<px; k++){
-                    double v = proc.getPixelValue(k,j);
-                    if(v<MIN_VALUE) MIN_VALUE=v;
-                    else if(v>MAX_VALUE) MAX_VALUE=v;
-                    data[i][j][k] = v;
+                    float v = proc.getPixelValue(k,j);
+                    if(v<min) min=v;
+                    if(v>max) max=v;
+                    values[dex++] = v;
                 }
             }
+            ranges[i] = new double[]{min, max};
+        });
+
+        double min = Double.MAX_VALUE;
+        double max = -min;
+        for(double[] range: ranges){
+            if(range[0]<min) min = range[0];
+            if(range[1]>max) max = range[1];
         }
-
+        //the image might have changed since the statistics were computed.
+        clearStatistics(frame, c);
+        return new FrameCache.Volume(values, min, max);
     }
 
     /**
@@ -240,99 +623,165 @@ public class MeshImageStack {
         int slices = original.getNSlices();
         int py = original.getHeight();
         int px = original.getWidth();
+        gradient = null;
+        pyramid = null;
+        planeSlice = null;
+        foreignValues = true;
+        clearStatistics();
+
+        if(viewPixels){
+            view = PixelView.create(other.getStack(), CURRENT*SLICES + 1, 1, slices);
+            if(view!=null){
+                data = null;
+                return;
+            }
+        }
+        view = null;
+        if(data==null || frameCache!=null){
+            //cached arrays are shared.
+            data = new float[px*py*slices];
+        }
 
         //MIN_VALUE=Double.MAX_VALUE;
         //MAX_VALUE=-MIN_VALUE;
 
+        int dex = 0;
         for(int i = 0;i<slices; i++){
             ImageProcessor proc = other.getStack().getProcessor(i+CURRENT*SLICES + 1);
             for(int j = 0; j<py; j++){
                 for(int k = 0; k<px; k++){
-                    double v = proc.getPixelValue(k,j);
+                    float v = proc.getPixelValue(k,j);
                     if(v<MIN_VALUE) MIN_VALUE=v;
                     else if(v>MAX_VALUE) MAX_VALUE=v;
-                    data[i][j][k] = proc.getPixelValue(k,j);
+                    data[dex++] = v;
                 }
             }
         }
 
     }
 
-    public double getInterpolatedValue(double x, double y, double z){
-        return getInterpolatedValue(new double[]{x,y,z});
+    public double getInterpolatedValue(double[] xyz){
+        return getInterpolatedValue(xyz[0], xyz[1], xyz[2]);
     }
 
     final static double min_interp_value=1e-4;
-    public double getInterpolatedValue(double[] xyz){
-        double[] ndex = new double[3];
-        int[] base = new int[3];
-        double[] f = new double[3];
-        for(int i = 0; i<3; i++){
-            ndex[i] = SCALE*(xyz[i] + offsets[i])*scale_values[i];
-            base[i] = (int)ndex[i];
-
-            //outside of image is the same as the edge value.
-            if(base[i]<0){
-                base[i] = 0;
-            } else if(base[i]>max_dex[i]){
-                base[i] = max_dex[i];
-            }
-            /*
-            outside of image is zero.
-            if(base[i]<0||base[i]>max_dex[i]){
-                //out of range
-                return 0;
-            }
-            */
-
-
-            f[i] = base[i]==max_dex[i]?0:ndex[i] - base[i];
-        }
-
-        double a = getValue(base[0],base[1], base[2]);
-
-        
-        if(f[0]>min_interp_value){
-            double b = getValue(base[0]+1, base[1], base[2]);
-            a = a + (b-a)*f[0];
+    final static int PARALLEL_BLOCK = 4096;
+    public double getInterpolatedValue(double x, double y, double z){
+        //outside of image is the same as the edge value.
+        double nx = SCALE*(x + offsets[0])*scale_values[0];
+        double ny = SCALE*(y + offsets[1])*scale_values[1];
+        double nz = SCALE*(z + offsets[2])*scale_values[2];
+        int bx = clamp((int)nx, max_dex[0]);
+        int by = clamp((int)ny, max_dex[1]);
+        int bz = clamp((int)nz, max_dex[2]);
+        double fx = bx==max_dex[0]?0:nx - bx;
+        double fy = by==max_dex[1]?0:ny - by;
+        double fz = bz==max_dex[2]?0:nz - bz;
+
+        double a = voxel(bx, by, bz);
+
+        if(fx>min_interp_value){
+            double b = voxel(bx + 1, by, bz);
+            a = a + (b-a)*fx;
         }
 
-        if(f[1]>min_interp_value){
-            double c = getValue(base[0],base[1]+1, base[2]);
+        if(fy>min_interp_value){
+            double c = voxel(bx, by + 1, bz);
 
-            if(f[0]>min_interp_value){
-                double d = getValue(base[0]+1, base[1]+1, base[2]);
-                c = c + (d-c)*f[0];
+            if(fx>min_interp_value){
+                double d = voxel(bx + 1, by + 1, bz);
+                c = c + (d-c)*fx;
             }
-            a = a + (c-a)*f[1]; //first plane.
+            a = a + (c-a)*fy; //first plane.
         }
 
         double v = a;
-        if(f[2]>min_interp_value){
-
-            a = getValue(base[0],base[1], base[2]+1);
+        if(fz>min_interp_value){
+            a = voxel(bx, by, bz + 1);
 
-            if(f[0]>min_interp_value){
-                double b = getValue(base[0]+1, base[1], base[2]+1);
-                a = a + (b-a)*f[0];
+            if(fx>min_interp_value){
+                double b = voxel(bx + 1, by, bz + 1);
+                a = a + (b-a)*fx;
             }
 
-            if(f[1]>min_interp_value){
-                double c = getValue(base[0],base[1]+1, base[2]+1);
+            if(fy>min_interp_value){
+                double c = voxel(bx, by + 1, bz + 1);
 
-                if(f[0]>min_interp_value){
-                    double d = getValue(base[0]+1, base[1]+1, base[2]+1);
-                    c = c + (d-c)*f[0];
+                if(fx>min_interp_value){
+                    double d = voxel(bx + 1, by + 1, bz + 1);
+                    c = c + (d-c)*fx;
                 }
-                a = a + (c-a)*f[1];
+                a = a + (c-a)*fy;
             }
 
-            v = v + (a-v)*f[2];
+            v = v + (a-v)*fz;
         }
 
         return v;
     }
 
+    /**
+     * Samples many points at once, the points are packed x, y, z in normalized coordinates.
+     *
+     * @param xyz packed coordinates, 3 values per point.
+     * @param values destination for the interpolated values, at least xyz.length/3 long.
+     */
+    public void getInterpolatedValues(double[] xyz, double[] values){
+        getInterpolatedValues(xyz, 0, values, 0, xyz.length/3);
+    }
+
+    /**
+     * Samples count points, without allocating. The result for the point at xyz[xyzOffset + 3*i] is written to
+     * values[valueOffset + i]. The coordinates and values can share an array, as long as the ranges do not overlap.
+     *
+     * @param xyz packed coordinates.
+     * @param xyzOffset index of the x coordinate of the first point.
+     * @param values destination of the interpolated values.
+     * @param valueOffset index of the first value.
+     * @param count number of points.
+     */
+    public void getInterpolatedValues(double[] xyz, int xyzOffset, double[] values, int valueOffset, int count){
+        for(int i = 0; i<count; i++){
+            int dex = xyzOffset + 3*i;
+            values[valueOffset + i] = getInterpolatedValue(xyz[dex], xyz[dex + 1], xyz[dex + 2]);
+        }
+    }
+
+    /**
+     * Same as {@link #getInterpolatedValues(double[], int, double[], int, int)} but the points are split into
+     * blocks that are sampled on the common fork join pool. Small batches are sampled on the calling thread.
+     */
+    public void getInterpolatedValuesParallel(double[] xyz, int xyzOffset, double[] values, int valueOffset, int count){
+        if(count < 2*PARALLEL_BLOCK){
+            getInterpolatedValues(xyz, xyzOffset, values, valueOffset, count);
+            return;
+        }
+        int blocks = (count + PARALLEL_BLOCK - 1)/PARALLEL_BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(b->{
+            int start = b*PARALLEL_BLOCK;
+            int n = Math.min(PARALLEL_BLOCK, count - start);
+            getInterpolatedValues(xyz, xyzOffset + 3*start, values, valueOffset + start, n);
+        });
+    }
+
+    public void getInterpolatedValuesParallel(double[] xyz, double[] values){
+        getInterpolatedValuesParallel(xyz, 0, values, 0, xyz.length/3);
+    }
+
+    private float voxel(int x, int y, int z){
+        if(data!=null){
+            return data[x + width*(y + height*z)];
+        }
+        if(view!=null){
+            return view.get(x, y, z);
+        }
+        return mapped.get(x, y, z);
+    }
+
+    private static int clamp(int i, int max){
+        return i < 0 ? 0 : i > max ? max : i;
+    }
+
     /**
      * Gets the value at the image coordintes x,y,z doesn't perform any sort of check.
      *
@@ -342,33 +791,107 @@ public class MeshImageStack {
      * @return
      */
     public double getValue(int x, int y, int z){
-        return data[z][y][x];
+        return voxel(x, y, z);
 
     }
 
     public Image createSlice(FurrowTransformer transformer) {
+        PlaneSlice slice = getPlaneSlice(transformer);
+        ImageProcessor proc = new FloatProcessor(slice.width, slice.height, slice.values);
+        return proc.getBufferedImage();
 
-        int xcounts = transformer.getXCounts();
-        int ycounts = transformer.getYCounts();
-        ImageProcessor proc = new FloatProcessor(xcounts, ycounts);
-        double[] pt = new double[2];
-
-        for (int i = 0; i < xcounts; i++) {
-            for (int j = 0; j < ycounts; j++) {
-
-                pt[0] = i;
-                pt[1] = j;
-                double v = getInterpolatedValue(transformer.getVolumeCoordinates(pt));
-                try {
-                    proc.setf(i, j, (float) v);
-                } catch(Exception e){
-                    e.printStackTrace();
-                }
-            }
+    }
+
+    /**
+     * Samples the current frame on the plane of the transformer. Each pixel (i, j) of the result is the
+     * interpolated value at transformer.getVolumeCoordinates({i, j}).
+     *
+     * @param transformer plane to be sampled.
+     * @return a new processor, at least 1x1.
+     */
+    public ImageProcessor createSliceProcessor(FurrowTransformer transformer){
+        PlaneSlice slice = getPlaneSlice(transformer);
+        return new FloatProcessor(slice.width, slice.height, slice.values.clone());
+    }
+
+    /**
+     * Gets the sampled values of a plane, reusing the last plane when the frame, channel and plane are the same.
+     * Pixel view stacks are always sampled because their values can change without a copy.
+     */
+    PlaneSlice getPlaneSlice(FurrowTransformer transformer){
+        double[] key = PlaneSlice.createKey(transformer, CURRENT, channel);
+        PlaneSlice last = planeSlice;
+        if(last != null && view == null && Arrays.equals(last.key, key)){
+            return last;
         }
+        int w = Math.max(1, transformer.getXCounts());
+        int h = Math.max(1, transformer.getYCounts());
+        PlaneSlice slice = new PlaneSlice(key, w, h, samplePlane(transformer, w, h));
+        planeSlice = slice;
+        return slice;
+    }
 
-        return proc.getBufferedImage();
+    /**
+     * Samples a plane one row at a time, in parallel. The points of a row are generated by stepping along the
+     * plane x axis and sampled with the batch interpolation.
+     *
+     * @param transformer describes the plane.
+     * @param w number of samples along the plane x axis.
+     * @param h number of samples along the plane y axis.
+     * @return row major values.
+     */
+    float[] samplePlane(FurrowTransformer transformer, int w, int h){
+        double[] origin = transformer.getOrigin();
+        double[] dx = transformer.getXStep();
+        double[] dy = transformer.getYStep();
+        float[] result = new float[w*h];
+        IntStream.range(0, h).parallel().forEach(j->{
+            double[] xyz = new double[3*w];
+            double[] values = new double[w];
+            double x = origin[0] + j*dy[0];
+            double y = origin[1] + j*dy[1];
+            double z = origin[2] + j*dy[2];
+            for(int i = 0; i<w; i++){
+                xyz[3*i] = x + i*dx[0];
+                xyz[3*i + 1] = y + i*dx[1];
+                xyz[3*i + 2] = z + i*dx[2];
+            }
+            getInterpolatedValues(xyz, values);
+            int offset = j*w;
+            for(int i = 0; i<w; i++){
+                result[offset + i] = (float)values[i];
+            }
+        });
+        return result;
+    }
 
+    /**
+     * Sampled values of a plane, with the geometry they were sampled for.
+     */
+    static class PlaneSlice{
+        final double[] key;
+        final int width;
+        final int height;
+        final float[] values;
+
+        PlaneSlice(double[] key, int width, int height, float[] values){
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.values = values;
+        }
+
+        static double[] createKey(FurrowTransformer transformer, int frame, int channel){
+            double[] origin = transformer.getOrigin();
+            double[] dx = transformer.getXStep();
+            double[] dy = transformer.getYStep();
+            return new double[]{
+                    frame, channel, transformer.getXCounts(), transformer.getYCounts(),
+                    origin[0], origin[1], origin[2],
+                    dx[0], dx[1], dx[2],
+                    dy[0], dy[1], dy[2]
+            };
+        }
     }
 
     public Image createSlice(double[] pos, double[] normal) {
@@ -415,9 +938,9 @@ public class MeshImageStack {
         double sumy = 0;
         double sumz = 0;
         double[] r = new double[3];
-        for(int i = 0; i<data[0][0].length; i++){
-            for(int j = 0; j<data[0].length; j++){
-                for(int k = 0; k<data.length; k++){
+        for(int i = 0; i<width; i++){
+            for(int j = 0; j<height; j++){
+                for(int k = 0; k<depth; k++){
                     r[0] = i;
                     r[1] = j;
                     r[2] = k;
@@ -462,6 +985,66 @@ public class MeshImageStack {
         return PX;
     }
 
+    /**
+     * Gets the Gaussian smoothed gradient of the current frame and channel. The gradient is calculated the first
+     * time it is requested and kept until the frame or channel changes.
+     *
+     * @return gradient with the same smoothing scale as {@link deformablemesh.util.GaussianKernels}, sampled at
+     * the smallest pixel size.
+     */
+    public synchronized GradientVolume getGradientVolume(){
+        GradientVolume g = gradient;
+        if(g == null){
+            g = GradientVolume.create(this, PX);
+            gradient = g;
+        }
+        return g;
+    }
+
+    /**
+     * Gets the range, histogram and percentiles of the current frame and channel. Results are kept for each
+     * frame and channel until its values are loaded again, so changing back to a frame that is still in the frame
+     * cache does not scan it again. In pixel view mode changes to the pixels are visible immediately, so the
+     * statistics are not kept.
+     *
+     * @param nBins number of histogram bins.
+     * @param stride 1 for every voxel, larger values subsample the stack for a quicker preview.
+     * @return statistics of the current values.
+     */
+    public IntensityStatistics getStatistics(int nBins, int stride){
+        if(foreignValues || view != null){
+            return IntensityStatistics.compute(this, nBins, stride);
+        }
+        String key = CURRENT + ":" + channel + ":" + nBins + ":" + stride;
+        synchronized(statistics){
+            IntensityStatistics stats = statistics.get(key);
+            if(stats == null){
+                stats = IntensityStatistics.compute(this, nBins, stride);
+                statistics.put(key, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Removes the cached statistics, for when the values of the image have been changed.
+     */
+    public void clearStatistics(){
+        synchronized(statistics){
+            statistics.clear();
+        }
+    }
+
+    /**
+     * Removes the cached statistics of one frame and channel, for when its values have been loaded again.
+     */
+    void clearStatistics(int frame, int c){
+        String prefix = frame + ":" + c + ":";
+        synchronized(statistics){
+            statistics.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
     public Box3D getLimits() {
         return new Box3D(ORIGIN, offsets[0]*2, offsets[1]*2, offsets[2]*2);
     }
@@ -511,6 +1094,9 @@ public class MeshImageStack {
      * all of the slices and a single time frame. Duplicate processors.
      */
     public ImagePlus getCurrentFrame(){
+        if(original == null){
+            return createFramePlus();
+        }
         int slices = original.getNSlices();
         int py = original.getHeight();
         int px = original.getWidth();
@@ -527,16 +1113,43 @@ public class MeshImageStack {
         return plus;
     }
 
-    public double[] getIntensityValues() {
-        double[] n = new double[data.length*data[0].length*data[0][0].length];
-        final int row = data[0][0].length;
-        final int frame = data[0].length*row;
-
-        for(int slice = 0; slice<data.length; slice++){
-            for(int line = 0; line<data[0].length; line++){
-                System.arraycopy(data[slice][line], 0, n,slice*frame + line*row,  row);
+    /**
+     * For stacks that are not backed by an ImagePlus, eg. pyramid levels, creates a calibrated 32 bit image of
+     * the values.
+     */
+    private ImagePlus createFramePlus(){
+        ImageStack stack = new ImageStack(width, height);
+        for(int z = 0; z<depth; z++){
+            float[] pixels = new float[width*height];
+            for(int y = 0; y<height; y++){
+                for(int x = 0; x<width; x++){
+                    pixels[x + width*y] = voxel(x, y, z);
+                }
             }
+            stack.addSlice(new FloatProcessor(width, height, pixels));
         }
+        ImagePlus plus = new ImagePlus();
+        plus.setStack(stack);
+        plus.setDimensions(1, depth, 1);
+        Calibration cal = plus.getCalibration();
+        cal.pixelWidth = pixel_dimensions[0];
+        cal.pixelHeight = pixel_dimensions[1];
+        cal.pixelDepth = pixel_dimensions[2];
+        return plus;
+    }
+
+    public double[] getIntensityValues() {
+        double[] n = new double[width*height*depth];
+        float[] values = data;
+        IntStream.range(0, depth).parallel().forEach(z->{
+            int dex = z*width*height;
+            for(int y = 0; y<height; y++){
+                for(int x = 0; x<width; x++){
+                    n[dex] = values==null ? voxel(x, y, z) : values[dex];
+                    dex++;
+                }
+            }
+        });
         return n;
     }
 }
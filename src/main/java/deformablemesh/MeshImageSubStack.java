@@ -7,14 +7,113 @@ import ij.ImagePlus;
  * Created by smithm3 on 20/02/18.
  */
 public class MeshImageSubStack extends MeshImageStack{
-    final Box3D region;
+    Box3D region;
     final MeshImageStack backing;
+    /**
+     * Normalized distance kept around the mesh when the region is cropped, 0 for sub stacks created from a sample.
+     */
+    final double padding;
+    /**
+     * While the mesh stays inside of this box, samples near the mesh are inside of the cropped region.
+     */
+    Box3D inner;
 
     public MeshImageSubStack(Box3D region, MeshImageStack backing, ImagePlus sample){
         super(sample);
         this.region = region;
         this.backing = backing;
+        this.padding = 0;
     }
 
+    /**
+     * Creates a contiguous copy of the region around a mesh that uses the same normalized coordinates as the
+     * backing stack, so energies can sample it in place of the full stack. Samples outside of the copied region
+     * get the value at its edge, the padding should be larger than the distance energies sample from the mesh.
+     *
+     * @see #follow(Box3D)
+     * @param backing full stack.
+     * @param meshBox bounding box of the mesh, in normalized coordinates.
+     * @param padding normalized distance copied around the mesh box.
+     */
+    public MeshImageSubStack(MeshImageStack backing, Box3D meshBox, double padding){
+        //geometry of the backing stack, the values are set when cropping.
+        super(backing, new float[0]);
+        this.backing = backing;
+        this.padding = padding;
+        crop(meshBox);
+    }
+
+    /**
+     * Crops again when the mesh has moved more than half of the padding outside of the box it was cropped for.
+     *
+     * @param meshBox current bounding box of the mesh.
+     * @return true if the region was cropped again.
+     */
+    public boolean follow(Box3D meshBox){
+        if(inner.contains(meshBox)){
+            return false;
+        }
+        crop(meshBox);
+        return true;
+    }
+
+    private void crop(Box3D meshBox){
+        double[] low = new double[3];
+        double[] high = new double[3];
+        for(int i = 0; i<3; i++){
+            low[i] = meshBox.low[i] - padding;
+            high[i] = meshBox.high[i] + padding;
+        }
+        double[] lowPx = backing.getImageCoordinates(low);
+        double[] highPx = backing.getImageCoordinates(high);
+        int[] start = new int[3];
+        int[] size = new int[3];
+        for(int i = 0; i<3; i++){
+            int a = Math.max(0, Math.min(backing.max_dex[i], (int)Math.floor(lowPx[i])));
+            int b = Math.max(0, Math.min(backing.max_dex[i], (int)Math.ceil(highPx[i])));
+            start[i] = a;
+            size[i] = b - a + 1;
+        }
+
+        float[] values = new float[size[0]*size[1]*size[2]];
+        int dex = 0;
+        MIN_VALUE=Double.MAX_VALUE;
+        MAX_VALUE=-MIN_VALUE;
+        for(int z = 0; z<size[2]; z++){
+            for(int y = 0; y<size[1]; y++){
+                for(int x = 0; x<size[0]; x++){
+                    float v = (float)backing.getValue(x + start[0], y + start[1], z + start[2]);
+                    if(v<MIN_VALUE) MIN_VALUE=v;
+                    if(v>MAX_VALUE) MAX_VALUE=v;
+                    values[dex++] = v;
+                }
+            }
+        }
+
+        width = size[0];
+        height = size[1];
+        depth = size[2];
+        SLICES = depth;
+        max_dex = new int[]{width - 1, height - 1, depth - 1};
+        for(int i = 0; i<3; i++){
+            offsets[i] = backing.offsets[i] - start[i]*pixel_dimensions[i]/SCALE;
+        }
+        data = values;
+        gradient = null;
+        pyramid = null;
+        planeSlice = null;
+        clearStatistics();
+
+        region = new Box3D(low[0], low[1], low[2], high[0], high[1], high[2]);
+        double half = 0.5*padding;
+        inner = new Box3D(
+                meshBox.low[0] - half, meshBox.low[1] - half, meshBox.low[2] - half,
+                meshBox.high[0] + half, meshBox.high[1] + half, meshBox.high[2] + half
+        );
+    }
+
+    public Box3D getRegion(){
+        return region;
+    }
 
 }
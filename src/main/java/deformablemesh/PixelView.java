@@ -0,0 +1,92 @@
+package deformablemesh;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Reads voxel values directly from the pixel arrays of an ImageStack, without copying them. The calibration table
+ * of each slice is applied when a value is read, which gives the same values as
+ * {@link ImageProcessor#getPixelValue(int, int)}.
+ *
+ * Only 8 bit, 16 bit and 32 bit images are supported.
+ */
+final class PixelView {
+    final int width;
+    final int height;
+    final int depth;
+    final byte[][] bytes;
+    final short[][] shorts;
+    final float[][] floats;
+    final float[][] cTables;
+
+    private PixelView(int width, int height, int depth, byte[][] bytes, short[][] shorts, float[][] floats, float[][] cTables){
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.bytes = bytes;
+        this.shorts = shorts;
+        this.floats = floats;
+        this.cTables = cTables;
+    }
+
+    /**
+     * Creates a view of depth slices from a stack.
+     *
+     * @param stack source of the pixels.
+     * @param first 1 based index of the first slice.
+     * @param stride separation between consecutive slices, eg the number of channels.
+     * @param depth number of slices.
+     * @return the view or null if the pixel type is not supported.
+     */
+    static PixelView create(ImageStack stack, int first, int stride, int depth){
+        int width = stack.getWidth();
+        int height = stack.getHeight();
+        byte[][] bytes = null;
+        short[][] shorts = null;
+        float[][] floats = null;
+        float[][] cTables = new float[depth][];
+        for(int z = 0; z<depth; z++){
+            ImageProcessor proc = stack.getProcessor(first + z*stride);
+            cTables[z] = proc.getCalibrationTable();
+            if(proc instanceof ByteProcessor){
+                if(bytes==null){
+                    if(z>0) return null;
+                    bytes = new byte[depth][];
+                }
+                bytes[z] = (byte[])proc.getPixels();
+            } else if(proc instanceof ShortProcessor){
+                if(shorts==null){
+                    if(z>0) return null;
+                    shorts = new short[depth][];
+                }
+                shorts[z] = (short[])proc.getPixels();
+            } else if(proc instanceof FloatProcessor){
+                if(floats==null){
+                    if(z>0) return null;
+                    floats = new float[depth][];
+                }
+                floats[z] = (float[])proc.getPixels();
+            } else{
+                return null;
+            }
+        }
+        return new PixelView(width, height, depth, bytes, shorts, floats, cTables);
+    }
+
+    float get(int x, int y, int z){
+        int dex = x + y*width;
+        if(shorts!=null){
+            int v = shorts[z][dex]&0xffff;
+            float[] table = cTables[z];
+            return table==null ? v : table[v];
+        } else if(bytes!=null){
+            int v = bytes[z][dex]&0xff;
+            float[] table = cTables[z];
+            return table==null ? v : table[v];
+        }
+        return floats[z][dex];
+    }
+}
@@ -9,9 +9,11 @@ import deformablemesh.gui.PropertySaver;
 import deformablemesh.gui.RingController;
 import deformablemesh.gui.render2d.RenderFrame2D;
 import deformablemesh.io.ImportType;
+import deformablemesh.io.MappedFrames;
 import deformablemesh.io.MeshWriter;
 import deformablemesh.meshview.*;
 import deformablemesh.ringdetection.FurrowTransformer;
+import deformablemesh.solvers.SolverType;
 import deformablemesh.track.Track;
 import deformablemesh.util.*;
 import deformablemesh.util.actions.ActionStack;
@@ -59,6 +61,7 @@ public class SegmentationController {
     ExceptionThrowingService main = new ExceptionThrowingService();
     private double minConnectionLength = 0.005;
     private double maxConnectionLength = 0.02;
+    private boolean reorderMeshNodes = false;
 
     /**
      * Creates a controller for the supplied model.
@@ -487,6 +490,9 @@ public class SegmentationController {
             remesher.setMinAndMaxLengths(minConnectionLength, maxConnectionLength);
 
             DeformableMesh3D newMesh = remesher.remesh(track.getMesh(frame));
+            if(reorderMeshNodes){
+                newMesh = DeformableMesh3DTools.reorderNodes(newMesh);
+            }
             setMesh(track, frame, newMesh);
         });
     }
@@ -556,6 +562,44 @@ public class SegmentationController {
             }
         });
     }
+    /**
+     * When true, meshes that are loaded, imported, remeshed or added through this controller, eg. initialized or
+     * guessed meshes, will have their nodes reordered to reduce the bandwidth of the stiffness matrix. Added meshes
+     * are replaced by a reordered copy.
+     *
+     * @see DeformableMesh3DTools#reorderNodes(DeformableMesh3D)
+     * @param reorder
+     */
+    public void setReorderMeshNodes(boolean reorder){
+        reorderMeshNodes = reorder;
+    }
+
+    public boolean isReorderMeshNodes(){
+        return reorderMeshNodes;
+    }
+
+    /**
+     * @return a reordered copy of the mesh when reordering is enabled, otherwise the mesh.
+     */
+    private DeformableMesh3D prepareNewMesh(DeformableMesh3D mesh){
+        return reorderMeshNodes ? DeformableMesh3DTools.reorderNodes(mesh) : mesh;
+    }
+
+    /**
+     * Replaces all of the meshes in the current frame with copies that have their nodes reordered. This does not
+     * change the shape of the meshes, only the order of the nodes, connections and triangles.
+     */
+    public void reorderMeshNodes(){
+        int f = model.getCurrentFrame();
+        List<Track> tracks = model.getAllTracks().stream().filter(t -> t.containsKey(f)).collect(Collectors.toList());
+        submit( ()->{
+            List<DeformableMesh3D> reordered = tracks.stream().map(
+                    t -> DeformableMesh3DTools.reorderNodes(t.getMesh(f))
+                ).collect(Collectors.toList());
+            setMeshes(tracks, f, reordered);
+        });
+    }
+
     /**
      * Sets the provided mesh to be the mesh for the provided track at the specified frame. This will
      * replace any existing meshes in the provided frame.
@@ -866,7 +910,19 @@ public class SegmentationController {
      * @return an ImagePlus with the thresholded image.
      */
     public ImagePlus guessMeshes(int level) {
+        return guessMeshes(level, 0);
+    }
+
+    /**
+     * Same as {@link #guessMeshes(int)}, but the regions are detected on a coarser level of the image pyramid.
+     *
+     * @param level The value used for thresholding the image.
+     * @param pyramidLevel 0 for the full resolution image, each level is downsampled by 2.
+     * @return an ImagePlus with the thresholded image, at the resolution of the pyramid level.
+     */
+    public ImagePlus guessMeshes(int level, int pyramidLevel) {
         MeshDetector detector = new MeshDetector(getMeshImageStack());
+        detector.setPyramidLevel(pyramidLevel);
 
         int frame = getCurrentFrame();
         List<Box3D> current = getAllTracks().stream().filter(
@@ -903,6 +959,9 @@ public class SegmentationController {
                 DeformableMesh3D rep;
                 try{
                     rep = remesher.remesh(mesh);
+                    if(reorderMeshNodes){
+                        rep = DeformableMesh3DTools.reorderNodes(rep);
+                    }
                 } catch(Exception e){
                     System.err.println(e.getMessage());
                     rep = mesh;
@@ -1098,7 +1157,7 @@ public class SegmentationController {
     public void startNewMeshTrack(int frame, DeformableMesh3D mesh){
 
         actionStack.postAction(new UndoableActions(){
-            final DeformableMesh3D m = mesh;
+            final DeformableMesh3D m = prepareNewMesh(mesh);
             final int f = frame;
             Track track;
             @Override
@@ -1175,7 +1234,7 @@ public class SegmentationController {
         actionStack.postAction(new UndoableActions(){
 
             final DeformableMesh3D old = model.getSelectedMesh(frame);
-            final DeformableMesh3D newer = m;
+            final DeformableMesh3D newer = prepareNewMesh(m);
             Track track = model.getSelectedTrack();
 
             final int f = frame;
@@ -1195,7 +1254,7 @@ public class SegmentationController {
             public void undo() {
                 submit(()->{
                     if(old==null){
-                        model.removeMeshFromTrack(f, m, track);
+                        model.removeMeshFromTrack(f, newer, track);
                     } else{
                         model.addMeshToTrack(f, old, track);
                     }
@@ -1259,13 +1318,14 @@ public class SegmentationController {
     public void startNewMeshTracks(List<DeformableMesh3D> meshes){
         if(meshes.size() == 0 ) return;
 
+        List<DeformableMesh3D> added = meshes.stream().map(this::prepareNewMesh).collect(Collectors.toList());
         actionStack.postAction(new UndoableActions() {
             final int frame = getCurrentFrame();
             final List<Track> tracks = new ArrayList<>(meshes.size());
             @Override
             public void perform() {
                 submit(()->{
-                    for(DeformableMesh3D mesh: meshes){
+                    for(DeformableMesh3D mesh: added){
                         Track track = model.startMeshTrack(frame, mesh);
                         tracks.add(track);
                     }
@@ -1422,6 +1482,85 @@ public class SegmentationController {
         model.setImageEnergyType(selectedItem);
     }
 
+    /**
+     * The backend used to solve the implicit step when deforming meshes. The dense LU decomposition requires
+     * nodes*nodes memory, the sparse direct solver and the conjugate gradient solver are suitable for large meshes.
+     *
+     * @param type enum to select which solver will be used.
+     */
+    public void setSolverType(SolverType type){
+        model.setSolverType(type);
+    }
+
+    public SolverType getSolverType(){
+        return model.getSolverType();
+    }
+
+    /**
+     * Stops deforming meshes once the node displacement per step stays below the tolerance.
+     *
+     * @param measure maximum or rms displacement of the nodes.
+     * @param tolerance displacement in normalized units.
+     * @param patience number of consecutive steps below the tolerance.
+     */
+    public void setConvergenceCriterion(ConvergenceCriterion.Measure measure, double tolerance, int patience){
+        model.setConvergenceCriterion(new ConvergenceCriterion(measure, tolerance, patience));
+    }
+
+    /**
+     * Deformations only stop after the requested number of steps, or when stopped.
+     */
+    public void clearConvergenceCriterion(){
+        model.setConvergenceCriterion(null);
+    }
+
+    /**
+     * Number of threads used when deforming all of the meshes in a frame. The results are the same for any
+     * number of threads.
+     *
+     * @param threads 1 updates the meshes sequentially.
+     */
+    public void setDeformationThreads(int threads){
+        model.setDeformationThreads(threads);
+    }
+
+    public int getDeformationThreads(){
+        return model.getDeformationThreads();
+    }
+
+    /**
+     * Factorizations are shared between meshes with the same topology, such as a mesh that has been tracked
+     * through many frames. This limits the memory used by the shared factorizations.
+     *
+     * @param megabytes approximate memory limit, 0 disables the cache.
+     */
+    public void setFactorizationCacheSize(long megabytes){
+        model.setFactorizationCacheSize(megabytes*1024*1024);
+    }
+
+    /**
+     * Keeps recently used frames of the image in memory and loads the next frame in the background, so that
+     * stepping through a time series does not wait for the frame to be copied.
+     *
+     * @param megabytes approximate memory limit, 0 disables the cache.
+     */
+    public void setFrameCacheSize(long megabytes){
+        model.setFrameCacheSize(megabytes*1024*1024);
+    }
+
+    /**
+     * Deform meshes against a padded copy of the image around each mesh, instead of the full image.
+     *
+     * @param pixels padding around the mesh, eg. 16. 0 samples the full image.
+     */
+    public void setCropPadding(int pixels){
+        model.setCropPadding(pixels);
+    }
+
+    public int getCropPadding(){
+        return model.getCropPadding();
+    }
+
     /**
      * Stops displaying the volume in the meshframe3d.
      *
@@ -1444,7 +1583,7 @@ public class SegmentationController {
     public void showVolumeClippingDialog(){
         VolumeDataObject vdo = meshFrame3D.getVolumeDataObject();
         if(vdo!=null){
-            VolumeContrastSetter setter = new VolumeContrastSetter(vdo);
+            VolumeContrastSetter setter = new VolumeContrastSetter(vdo, meshFrame3D.getVolumeStack());
             setter.setPreviewBackgroundColor(meshFrame3D.getBackgroundColor());
             setter.showDialog(meshFrame3D.getJFrame());
         }
@@ -1460,6 +1599,29 @@ public class SegmentationController {
         }
     }
 
+    /**
+     * Deforms the selected mesh starting from a downsampled image, subdividing the mesh each time the resolution
+     * is increased. The selected mesh is replaced by the result, which has more nodes, so the starting mesh should
+     * be coarse.
+     *
+     * @param levels number of resolution levels, 1 deforms at full resolution only.
+     * @param steps maximum number of steps at each level, negative to only stop on convergence.
+     */
+    public void deformMeshMultiResolution(int levels, int steps){
+        Track track = getSelectedMeshTrack();
+        int frame = getCurrentFrame();
+        if(track==null || !track.containsKey(frame)){
+            return;
+        }
+        main.submit(()->{
+            DeformableMesh3D result = model.deformMeshMultiResolution(track.getMesh(frame), levels, steps);
+            if(reorderMeshNodes){
+                result = DeformableMesh3DTools.reorderNodes(result);
+            }
+            setMesh(track, frame, result);
+        });
+    }
+
     public void splitMesh(){
         Track track = getSelectedMeshTrack();
         int frame = getCurrentFrame();
@@ -1709,6 +1871,16 @@ public class SegmentationController {
         model.setHardBoundaries(v);
     }
 
+    /**
+     * When true, steric forces use a signed distance field of each neighbor instead of casting rays through the
+     * neighbor meshes.
+     *
+     * @param v
+     */
+    public void setStericDistanceField(boolean v){
+        model.setStericDistanceField(v);
+    }
+
     /**
      * Deforms mesh for a set number of iterations.
      *
@@ -1913,6 +2085,29 @@ public class SegmentationController {
         );
     }
 
+    /**
+     * Segments a series that is memory mapped from files, instead of an ImagePlus. Frames are paged in from disk as
+     * they are used, so the series can be larger than the available memory.
+     *
+     * @see deformablemesh.io.MappedFrames#openTiff(java.util.List, int)
+     * @param frames the mapped series.
+     */
+    public void setMappedFrames(MappedFrames frames) {
+        submit(
+                ()->{
+                    boolean volumeShowing = meshFrame3D!=null && meshFrame3D.volumeShowing();
+                    if(volumeShowing){
+                        meshFrame3D.hideVolume();
+                    }
+                    model.setMappedFrames(frames, getCurrentFrame());
+
+                    if(volumeShowing) {
+                        showVolume();
+                    }
+                }
+        );
+    }
+
     public void selectChannel(int c){
         setOriginalPlus(model.original_plus, c);
     }
@@ -1947,6 +2142,9 @@ public class SegmentationController {
     public void loadMeshes(File f) {
         submit(()->{
             List<Track> replacements = MeshWriter.loadMeshes(f);
+            if(reorderMeshNodes){
+                replacements.forEach(DeformableMesh3DTools::reorderNodes);
+            }
             actionStack.postAction(new UndoableActions(){
                 final List<Track> old = new ArrayList<>(model.getAllTracks());
                 @Override
@@ -2007,6 +2205,9 @@ public class SegmentationController {
             int n = getNFrames();
 
             List<Track> imports = MeshWriter.loadMeshes(f);
+            if(reorderMeshNodes){
+                imports.forEach(DeformableMesh3DTools::reorderNodes);
+            }
 
             //the imports is modified to meet the supplied criteria.
             switch(type){
@@ -6,7 +6,10 @@ import deformablemesh.gui.FrameListener;
 import deformablemesh.gui.GuiTools;
 import deformablemesh.gui.RingController;
 import deformablemesh.io.FurrowWriter;
+import deformablemesh.io.MappedFrames;
 import deformablemesh.io.MeshWriter;
+import deformablemesh.solvers.FactorizationCache;
+import deformablemesh.solvers.SolverType;
 import deformablemesh.track.MeshTracker;
 import deformablemesh.track.Track;
 import deformablemesh.util.IntensitySurfacePlot;
@@ -24,6 +27,10 @@ import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +61,16 @@ public class SegmentationModel {
     private int divisions = 2;
     private RingController ringController;
     public ImageEnergyType energyType;
+    SolverType solverType = SolverType.DenseLU;
+    FactorizationCache factorizationCache = new FactorizationCache();
+    ConvergenceCriterion convergence;
+    int deformationThreads = 1;
+    long frameCacheBytes = 0;
+    /**
+     * Padding of the per mesh crops in pixels, 0 to sample the full stack.
+     */
+    int cropPadding = 0;
+    final Map<DeformableMesh3D, MeshImageSubStack> crops = new HashMap<>();
 
     Color backgroundColor = Color.WHITE;
     Color volumeColor = Color.BLUE;
@@ -62,6 +79,17 @@ public class SegmentationModel {
     private double normalize;
     private File lastSavedFile;
     private boolean hardBoundaries = false;
+    private boolean stericDistanceField = false;
+    /**
+     * Margin, in voxels, added to the bounding boxes of meshes when finding steric neighbors.
+     */
+    final static double STERIC_PADDING = 5;
+    /**
+     * Distance fields of steric neighbors, kept for the duration of a deformation so they are only rebuilt when a
+     * neighbor moves. The fields hold their mesh and a full grid, so they are cleared with the crops when a new
+     * deformation starts.
+     */
+    private final Map<DeformableMesh3D, SignedDistanceField> distanceFields = new HashMap<>();
 
     public SegmentationModel(){
 
@@ -74,6 +102,8 @@ public class SegmentationModel {
     }
     public void deformMesh(int count){
         stop = false;
+        crops.clear();
+        distanceFields.clear();
         externalEnergies();
         DeformableMesh3D selectedMesh = tracker.getSelectedMesh(getCurrentFrame());
         if(selectedMesh==null){
@@ -82,6 +112,9 @@ public class SegmentationModel {
         if(selectedMesh.ALPHA!=ALPHA || selectedMesh.BETA!=BETA || selectedMesh.GAMMA!=GAMMA){
             reshape = true;
         }
+        if(selectedMesh.getSolverType()!=solverType){
+            reshape = true;
+        }
 
 
 
@@ -89,6 +122,8 @@ public class SegmentationModel {
             selectedMesh.ALPHA=ALPHA;
             selectedMesh.GAMMA=GAMMA;
             selectedMesh.BETA=BETA;
+            selectedMesh.setSolverType(solverType);
+            selectedMesh.setFactorizationCache(factorizationCache);
             selectedMesh.reshape();
             reshape=false;
         }
@@ -96,18 +131,26 @@ public class SegmentationModel {
         if(count<0){
             count = Integer.MAX_VALUE;
         }
+        ConvergenceCriterion.State state = startConvergence(selectedMesh);
         while(!stop&&deformations<count){
+            followCrop(selectedMesh);
             selectedMesh.update();
             if(hardBoundaries){
                 selectedMesh.confine(getBounds());
             }
             deformations++;
+            if(state!=null && state.update(selectedMesh.positions)){
+                break;
+            }
         }
 
     }
 
     /**
-     * A generic method for deforming all of the meshes provided.
+     * A generic method for deforming all of the meshes provided. When more than one deformation thread is set, the
+     * meshes are updated in parallel on a pool that only lasts for this call.
+     *
+     * @see #setDeformationThreads(int)
      * @param meshes
      */
     public void deformMeshes(List<DeformableMesh3D> meshes, int steps){
@@ -116,11 +159,16 @@ public class SegmentationModel {
         }
         stop = false;
         deformations = 0;
+        crops.clear();
+        distanceFields.clear();
         Map<DeformableMesh3D, List<StericMesh>> stericEnergies = new HashMap<>();
+        StericBroadPhase broadPhase = null;
 
         if(stericNeighborWeight != 0){
+            //only neighbors that can touch get steric energies, the rest are added if they come close.
+            broadPhase = createStericBroadPhase();
             for(DeformableMesh3D mesh: meshes){
-                stericEnergies.put(mesh, generateStericEnergies( mesh ) );
+                stericEnergies.put(mesh, generateStericEnergies( mesh, mesh, broadPhase ) );
             }
         }
 
@@ -149,25 +197,77 @@ public class SegmentationModel {
             mesh.ALPHA=ALPHA;
             mesh.GAMMA=GAMMA;
             mesh.BETA=BETA;
+            mesh.setSolverType(solverType);
+            mesh.setFactorizationCache(factorizationCache);
             mesh.reshape();
         }
 
-        while(!stop){
+        //meshes that have converged are removed from the active list, but still act as steric neighbors.
+        List<DeformableMesh3D> active = new ArrayList<>(meshes);
+        Map<DeformableMesh3D, ConvergenceCriterion.State> states = new HashMap<>();
+        if(convergence!=null){
             for(DeformableMesh3D mesh: meshes){
+                states.put(mesh, startConvergence(mesh));
+            }
+        }
 
-                mesh.update();
-                if(hardBoundaries){
-                    mesh.confine(getBounds());
+        if(stericNeighborWeight!=0){
+            //all neighbor shapes are taken before any mesh moves, otherwise they depend on the update order.
+            for (DeformableMesh3D mesh : meshes) {
+                for (StericMesh sm : stericEnergies.get(mesh)) {
+                    sm.update();
                 }
-                if(stop){
-                    break;
+            }
+        }
+
+        //meshes only interact through steric energies, then none of them move until all have been calculated.
+        boolean together = meshes.size() > 1 && (deformationThreads > 1 || stericNeighborWeight != 0);
+        ForkJoinPool pool = deformationThreads > 1 && meshes.size() > 1 ? new ForkJoinPool(deformationThreads) : null;
+        try{
+            deform(meshes, active, steps, together, pool, states, stericEnergies, broadPhase);
+        } finally{
+            if(pool!=null){
+                pool.shutdown();
+            }
+        }
+
+    }
+
+    private void deform(
+            List<DeformableMesh3D> meshes, List<DeformableMesh3D> active, int steps, boolean together,
+            ForkJoinPool pool, Map<DeformableMesh3D, ConvergenceCriterion.State> states,
+            Map<DeformableMesh3D, List<StericMesh>> stericEnergies, StericBroadPhase broadPhase){
+        while(!stop){
+            if(together){
+                updateTogether(active, pool);
+            } else{
+                for(DeformableMesh3D mesh: active){
+                    followCrop(mesh);
+                    mesh.update();
+                    if(hardBoundaries){
+                        mesh.confine(getBounds());
+                    }
+                    if(stop){
+                        break;
+                    }
                 }
             }
             deformations++;
+            if(convergence!=null){
+                active.removeIf(mesh -> states.get(mesh).update(mesh.positions));
+                if(active.isEmpty()){
+                    break;
+                }
+            }
             if(deformations >= steps){
                 break;
             }
             if(stericNeighborWeight!=0) {
+                if(broadPhase.update()){
+                    for(DeformableMesh3D mesh: meshes){
+                        refreshStericEnergies(mesh, stericEnergies.get(mesh), broadPhase);
+                    }
+                }
                 for (DeformableMesh3D mesh : meshes) {
                     for (StericMesh sm : stericEnergies.get(mesh)) {
                         sm.update();
@@ -178,6 +278,64 @@ public class SegmentationModel {
 
     }
 
+    /**
+     * Calculates the next positions of all of the meshes, then moves them. None of the meshes move until every mesh
+     * has been calculated, so the results do not depend on the number of threads or the order the tasks finish.
+     *
+     * @param meshes meshes to be updated.
+     * @param pool pool the meshes are calculated on, or null to calculate them on this thread.
+     */
+    private void updateTogether(List<DeformableMesh3D> meshes, ForkJoinPool pool){
+        List<Runnable> moves = new ArrayList<>(meshes.size());
+        if(pool == null){
+            for(DeformableMesh3D mesh: meshes){
+                followCrop(mesh);
+                moves.add(mesh.partialUpdate());
+            }
+        } else{
+            List<Callable<Runnable>> tasks = new ArrayList<>(meshes.size());
+            for(DeformableMesh3D mesh: meshes){
+                //each mesh owns its crop, so it can be moved on the worker thread.
+                tasks.add(() -> {
+                    followCrop(mesh);
+                    return mesh.partialUpdate();
+                });
+            }
+            try {
+                for(Future<Runnable> future: pool.invokeAll(tasks)){
+                    moves.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                System.err.println("Interrupted while deforming meshes.");
+                stop = true;
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        for(int i = 0; i<moves.size(); i++){
+            moves.get(i).run();
+            if(hardBoundaries){
+                meshes.get(i).confine(getBounds());
+            }
+        }
+    }
+
+    /**
+     * Sets the number of threads used by {@link #deformMeshes(List, int)}. With one thread the meshes are updated
+     * on the calling thread, the results are the same for any number of threads.
+     *
+     * @param threads number of threads, at least 1.
+     */
+    public void setDeformationThreads(int threads){
+        deformationThreads = threads < 1 ? 1 : threads;
+    }
+
+    public int getDeformationThreads(){
+        return deformationThreads;
+    }
+
     /**
      * Deforms the provided mesh using the prepared energies and values. Will reshape each iteration.
      *
@@ -190,22 +348,30 @@ public class SegmentationModel {
 
 
         stop = false;
+        crops.clear();
+        distanceFields.clear();
         List<ExternalEnergy> energies = getExternalEnergies(mesh);
 
         energies.forEach(mesh::addExternalEnergy);
         mesh.ALPHA=ALPHA;
         mesh.GAMMA=GAMMA;
         mesh.BETA=BETA;
+        mesh.setSolverType(solverType);
+        mesh.setFactorizationCache(factorizationCache);
         mesh.reshape();
         deformations = 0;
         int count = Integer.MAX_VALUE;
-
+        ConvergenceCriterion.State state = startConvergence(mesh);
         while(!stop&&deformations<count){
+            followCrop(mesh);
             mesh.update();
             if(hardBoundaries){
                 mesh.confine(getBounds());
             }
             deformations++;
+            if(state!=null && state.update(mesh.positions)){
+                break;
+            }
         }
 
     }
@@ -214,6 +380,108 @@ public class SegmentationModel {
         stop = true;
     }
 
+    /**
+     * Deforms a copy of the mesh, starting on a downsampled image and refining the mesh as the resolution
+     * increases. At each level the mesh is deformed until it converges, or the step limit is reached, then it is
+     * subdivided with {@link RayCastMesh#subDivideMesh(DeformableMesh3D)} and deformed against an image with
+     * twice the resolution. The coarse images are levels of the {@link MeshImageStack#getPyramidLevel(int)} pyramid,
+     * only the last level uses the full resolution stack.
+     *
+     * The convergence criterion of this model is used when set, otherwise a level is converged when the rms
+     * displacement stays below 1% of a pixel, of that level, for 10 steps.
+     *
+     * @param mesh starting mesh, it is not modified and should be coarse.
+     * @param levels number of resolution levels, the final mesh has 4^(levels - 1) times as many triangles.
+     * @param steps maximum number of steps per level, negative for no limit.
+     * @return the deformed and refined mesh.
+     */
+    public DeformableMesh3D deformMeshMultiResolution(DeformableMesh3D mesh, int levels, int steps){
+        stop = false;
+        deformations = 0;
+        distanceFields.clear();
+        DeformableMesh3D working = DeformableMesh3DTools.copyOf(mesh);
+        working.setSolverType(solverType);
+        working.setFactorizationCache(factorizationCache);
+        int count = steps < 0 ? Integer.MAX_VALUE : steps;
+
+        for(int level = levels - 1; level >= 0; level--){
+            MeshImageStack levelStack = stack.getPyramidLevel(level);
+
+            working.clearEnergies();
+            if(image_weight!=0){
+                working.addExternalEnergy(generateImageEnergy(working, levelStack));
+            }
+            if(pressure!=0){
+                working.addExternalEnergy(new PressureForce(working, pressure));
+            }
+            if(normalize!=0){
+                working.addExternalEnergy(new TriangleAreaDistributor(levelStack, working, normalize));
+            }
+            if(stericNeighborWeight!=0){
+                for(ExternalEnergy eg: generateStericEnergies(working, mesh)){
+                    working.addExternalEnergy(eg);
+                }
+            }
+            working.ALPHA=ALPHA;
+            working.GAMMA=GAMMA;
+            working.BETA=BETA;
+            working.reshape();
+
+            ConvergenceCriterion criterion = convergence != null ? convergence :
+                    new ConvergenceCriterion(ConvergenceCriterion.Measure.RMS, 0.01*levelStack.getMinPx(), 10);
+            ConvergenceCriterion.State state = criterion.createState();
+            state.reset(working.positions);
+            int step = 0;
+            while(!stop && step<count){
+                working.update();
+                if(hardBoundaries){
+                    working.confine(getBounds());
+                }
+                deformations++;
+                step++;
+                if(state.update(working.positions)){
+                    break;
+                }
+            }
+            if(stop){
+                break;
+            }
+            if(level > 0){
+                RayCastMesh.subDivideMesh(working);
+            }
+        }
+        working.clearEnergies();
+        return working;
+    }
+
+    /**
+     * Creates a convergence state starting from the current positions of the mesh.
+     *
+     * @return null if no convergence criterion is set.
+     */
+    private ConvergenceCriterion.State startConvergence(DeformableMesh3D mesh){
+        if(convergence==null){
+            return null;
+        }
+        ConvergenceCriterion.State state = convergence.createState();
+        state.reset(mesh.positions);
+        return state;
+    }
+
+    /**
+     * When set, deformations stop once the meshes have stopped moving, in addition to the step count and
+     * {@link #stopRunning()}. When deforming many meshes, each mesh stops updating once it has converged.
+     *
+     * @param criterion the stopping criterion, or null to only use the step count.
+     */
+    public void setConvergenceCriterion(ConvergenceCriterion criterion){
+        convergence = criterion;
+    }
+
+    public ConvergenceCriterion getConvergenceCriterion(){
+        return convergence;
+    }
+
     public void setGamma(final double gamma){
         if(GAMMA!=gamma){
             reshape=true;
@@ -241,6 +509,56 @@ public class SegmentationModel {
         return BETA;
     }
 
+    /**
+     * Selects the solver used for the implicit step of each deformation.
+     *
+     * @param type
+     */
+    public void setSolverType(SolverType type){
+        if(solverType!=type){
+            reshape=true;
+            solverType=type;
+        }
+    }
+
+    public SolverType getSolverType(){
+        return solverType;
+    }
+
+    /**
+     * Meshes with the same topology and parameters, eg. a mesh tracked through many frames, share their
+     * factorization through this cache.
+     *
+     * @return the cache used when reshaping meshes.
+     */
+    public FactorizationCache getFactorizationCache(){
+        return factorizationCache;
+    }
+
+    /**
+     * Limits the memory used for storing factorizations. 0 disables caching.
+     *
+     * @param bytes estimated maximum number of bytes.
+     */
+    public void setFactorizationCacheSize(long bytes){
+        factorizationCache.setMaxBytes(bytes);
+    }
+
+    /**
+     * Limits the memory used for keeping recent frames of the image, the frame after the current one is loaded in
+     * the background. 0 disables caching.
+     *
+     * @param bytes estimated maximum number of bytes.
+     */
+    public void setFrameCacheSize(long bytes){
+        frameCacheBytes = bytes;
+        stack.setFrameCacheSize(bytes);
+    }
+
+    public long getFrameCacheSize(){
+        return frameCacheBytes;
+    }
+
 
 
     public double getGamma() {
@@ -279,7 +597,9 @@ public class SegmentationModel {
 
     public void setOriginalPlus(ImagePlus plus, int frame, int channel){
         original_plus = plus;
+        stack.setFrameCacheSize(0);
         stack = new MeshImageStack(original_plus, frame, channel);
+        stack.setFrameCacheSize(frameCacheBytes);
 
         if(stack.CURRENT != getCurrentFrame()){
             setFrame(stack.CURRENT);
@@ -288,6 +608,21 @@ public class SegmentationModel {
         }
     }
 
+    /**
+     * Uses a memory mapped series as the backing image, for data that is too large to be opened as an ImagePlus.
+     * There is no original image plus, so functions that need one, eg. creating binary representations, are not
+     * available.
+     *
+     * @param frames series mapped from files.
+     * @param frame starting frame, if it is out of range the first frame is used.
+     */
+    public void setMappedFrames(MappedFrames frames, int frame){
+        original_plus = null;
+        stack.setFrameCacheSize(0);
+        stack = new MeshImageStack(frames, frame >= 0 && frame < frames.getNFrames() ? frame : 0);
+        notifyFrameListeners();
+    }
+
     public void nextFrame(){
         int i = stack.CURRENT;
 
@@ -457,6 +792,64 @@ public class SegmentationModel {
     }
 
     public ExternalEnergy generateImageEnergy(DeformableMesh3D mesh){
+        return generateImageEnergy(mesh, getWorkingStack(mesh));
+    }
+
+    /**
+     * When cropping is enabled, creates a padded crop of the stack around the mesh. The crop is moved with
+     * {@link #followCrop(DeformableMesh3D)} during deformation.
+     *
+     * @param mesh mesh that will sample the stack.
+     * @return the stack image energies of the mesh should sample.
+     */
+    MeshImageStack getWorkingStack(DeformableMesh3D mesh){
+        if(cropPadding <= 0){
+            return stack;
+        }
+        MeshImageSubStack crop = new MeshImageSubStack(stack, mesh.getBoundingBox(), cropPadding*stack.getMinPx());
+        synchronized(crops){
+            crops.put(mesh, crop);
+        }
+        return crop;
+    }
+
+    /**
+     * Crops the working stack of the mesh again if the mesh has left its padding.
+     */
+    void followCrop(DeformableMesh3D mesh){
+        MeshImageSubStack crop;
+        synchronized(crops){
+            crop = crops.get(mesh);
+        }
+        if(crop != null){
+            crop.follow(mesh.getBoundingBox());
+        }
+    }
+
+    /**
+     * Image energies sample a contiguous copy of the region around each mesh, instead of the full stack. This
+     * improves memory locality for small meshes in a large image. The copy is padded, and it is only copied again
+     * when the mesh moves more than half of the padding.
+     *
+     * @param pixels padding in pixels of the smallest dimension, it should be larger than the distance the image
+     *               energy samples from the mesh. 0 disables cropping.
+     */
+    public void setCropPadding(int pixels){
+        cropPadding = pixels < 0 ? 0 : pixels;
+    }
+
+    public int getCropPadding(){
+        return cropPadding;
+    }
+
+    /**
+     * Creates the image energy for the current energy type using the provided image data.
+     *
+     * @param mesh mesh the energy will be applied to.
+     * @param stack image data, eg. a downsampled version of the current stack.
+     * @return the image energy.
+     */
+    public ExternalEnergy generateImageEnergy(DeformableMesh3D mesh, MeshImageStack stack){
         ExternalEnergy erg;
         switch(energyType){
             case PerpendicularIntensity:
@@ -465,6 +858,9 @@ public class SegmentationModel {
             case PerpendicularGradient:
                 erg = new PerpendicularGradientEnergy(stack, mesh, getImageWeight());
                 break;
+            case PrecomputedGradient:
+                erg = new PerpendicularGradientEnergy(stack, mesh, getImageWeight(), true);
+                break;
             case SmoothingForce:
                 erg = new SmoothingForce(mesh, getImageWeight());
                 break;
@@ -590,16 +986,93 @@ public class SegmentationModel {
     }
 
     private List<StericMesh> generateStericEnergies(DeformableMesh3D mesh) {
+        return generateStericEnergies(mesh, mesh);
+    }
+
+    /**
+     * @param mesh mesh the energies are applied to.
+     * @param self the mesh in the tracks that mesh represents, its track is excluded.
+     */
+    private List<StericMesh> generateStericEnergies(DeformableMesh3D mesh, DeformableMesh3D self) {
+        return generateStericEnergies(mesh, self, null);
+    }
+
+    /**
+     * @param mesh mesh the energies are applied to.
+     * @param self the mesh in the tracks that mesh represents, its track is excluded.
+     * @param broadPhase null, or neighbors that cannot touch self are skipped.
+     */
+    private List<StericMesh> generateStericEnergies(DeformableMesh3D mesh, DeformableMesh3D self, StericBroadPhase broadPhase) {
         List<Track> tracks = tracker.getAllMeshTracks();
         List<StericMesh> es = new ArrayList<>(tracks.size());
         for(Track track: tracks){
-            if(!track.containsMesh(mesh) && track.containsKey(stack.CURRENT) ){
+            if(!track.containsMesh(self) && track.containsKey(stack.CURRENT) ){
+                DeformableMesh3D neighbor = track.getMesh(stack.CURRENT);
+                if(broadPhase == null || broadPhase.mayTouch(self, neighbor)){
+                    es.add(createStericEnergy(mesh, neighbor));
+                }
+            }
+        }
+        return es;
+    }
+
+    private StericMesh createStericEnergy(DeformableMesh3D mesh, DeformableMesh3D neighbor){
+        if(stericDistanceField){
+            return new DistanceFieldStericMesh(mesh, getDistanceField(neighbor), neighbor, stericNeighborWeight);
+        }
+        return new SofterStericMesh(mesh, neighbor, stericNeighborWeight);
+    }
 
-                es.add(new SofterStericMesh(mesh, track.getMesh(stack.CURRENT), stericNeighborWeight));
+    /**
+     * Creates a broad phase with every mesh in the current frame.
+     */
+    private StericBroadPhase createStericBroadPhase(){
+        return new StericBroadPhase(tracker.getCurrent(stack.CURRENT), STERIC_PADDING*stack.getMinPx());
+    }
 
+    /**
+     * Removes the steric energies of neighbors that can no longer touch the mesh, and adds energies for neighbors
+     * that now can. Energies for neighbors that are still close are kept.
+     *
+     * @param mesh mesh being deformed.
+     * @param energies the current steric energies of the mesh, modified to reflect the new neighbors.
+     * @param broadPhase neighbors that can touch the mesh.
+     */
+    private void refreshStericEnergies(DeformableMesh3D mesh, List<StericMesh> energies, StericBroadPhase broadPhase){
+        Set<DeformableMesh3D> kept = new HashSet<>();
+        for(Iterator<StericMesh> iter = energies.iterator(); iter.hasNext(); ){
+            StericMesh sm = iter.next();
+            if(broadPhase.mayTouch(mesh, sm.getNeighbor())){
+                kept.add(sm.getNeighbor());
+            } else{
+                mesh.removeExternalEnergy(sm);
+                iter.remove();
+            }
+        }
+        for(DeformableMesh3D neighbor: broadPhase.getNeighbors(mesh)){
+            if(!kept.contains(neighbor)){
+                StericMesh sm = createStericEnergy(mesh, neighbor);
+                mesh.addExternalEnergy(sm);
+                energies.add(sm);
             }
         }
-        return es;
+    }
+
+    /**
+     * Gets the distance field for a neighbor, creating it with a spacing of the smallest voxel dimension.
+     *
+     * @param neighbor mesh the field measures the distance to.
+     * @return a field that is up to date with the neighbor.
+     */
+    private SignedDistanceField getDistanceField(DeformableMesh3D neighbor){
+        SignedDistanceField field = distanceFields.get(neighbor);
+        if(field == null || field.getSpacing() != stack.getMinPx()){
+            field = new SignedDistanceField(neighbor, stack.getMinPx());
+            distanceFields.put(neighbor, field);
+        } else{
+            field.update();
+        }
+        return field;
     }
 
 
@@ -730,7 +1203,7 @@ public class SegmentationModel {
     }
 
     public int[] getOriginalStackDimensions() {
-        return new int[]{original_plus.getWidth(), original_plus.getHeight(), original_plus.getNSlices()};
+        return new int[]{stack.getWidthPx(), stack.getHeightPx(), stack.getNSlices()};
     }
 
     public Box3D getBounds(){
@@ -765,7 +1238,7 @@ public class SegmentationModel {
         builder.append("#\n");
         builder.append("#Frame\tVolume\tArea\t<I>\tc_x\tc_y\tc_z\tdmean\tdmax\tdmin\t");
         builder.append("lambda1\tlambda2\tlambda3\tv1_x\tv1_y\tv1_z\tv2_x\tv2_y\tv2_z\tv3_x\tv3_y\tv3_z\n");
-        for(int j = 0; j<original_plus.getNFrames(); j++){
+        for(int j = 0; j<stack.getNFrames(); j++){
             if(!track.containsKey(j)){
                 continue;
             }
@@ -809,7 +1282,7 @@ public class SegmentationModel {
 
     public boolean hasNextFrame() {
         //internally 0 indexed compared to ij and display, which is 1 based.
-        return original_plus.getNFrames()-1>getCurrentFrame();
+        return stack.getNFrames()-1>getCurrentFrame();
 
     }
 
@@ -823,7 +1296,7 @@ public class SegmentationModel {
        StringBuilder builds = new StringBuilder("#position and normal using the image units.\n");
        builds.append("#frame\tx(unit)\ty(unit)\tz(unit)nx\tny\tnz\n");
 
-       for(int i = 0; i<original_plus.getNFrames(); i++){
+       for(int i = 0; i<stack.getNFrames(); i++){
            Furrow3D f = ringController.getFurrow(i);
 
            if(f==null){continue;}
@@ -860,6 +1333,14 @@ public class SegmentationModel {
         this.hardBoundaries = hardBoundaries;
     }
 
+    public boolean isStericDistanceField() {
+        return stericDistanceField;
+    }
+
+    public void setStericDistanceField(boolean stericDistanceField) {
+        this.stericDistanceField = stericDistanceField;
+    }
+
 
     public void calculateInterfaceLineScan(Track track){
         List<Track> tracks = getAllTracks();
@@ -994,7 +1475,7 @@ public class SegmentationModel {
     }
 
     public int getNChannels() {
-        return original_plus.getNChannels();
+        return original_plus == null ? 1 : original_plus.getNChannels();
     }
 }
 
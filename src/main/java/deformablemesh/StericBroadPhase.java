@@ -0,0 +1,162 @@
+package deformablemesh;
+
+import deformablemesh.geometry.DeformableMesh3D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds which meshes are close enough to need steric energies between them. Each mesh gets its bounding box padded by
+ * a margin, the padded boxes are sorted by their low x value and swept, only meshes with overlapping padded boxes are
+ * paired.
+ *
+ * While every mesh stays inside of its padded box, meshes that were not paired cannot touch. The pairs only need to be
+ * found again when a mesh has left its padded box, which {@link #update()} checks.
+ */
+public class StericBroadPhase {
+    final List<DeformableMesh3D> meshes;
+    final double padding;
+    /**
+     * Padded boxes, low x, y, z then high x, y, z for each mesh.
+     */
+    double[] boxes;
+    final Map<DeformableMesh3D, Set<DeformableMesh3D>> pairs = new HashMap<>();
+    int pairCount;
+    int sweeps = 0;
+
+    /**
+     * Creates the broad phase and finds the initial pairs.
+     *
+     * @param meshes every mesh that can have a steric interaction, moving or not.
+     * @param padding margin added to each side of the bounding boxes, in normalized units.
+     */
+    public StericBroadPhase(List<DeformableMesh3D> meshes, double padding){
+        if(padding < 0){
+            throw new IllegalArgumentException("padding cannot be negative: " + padding);
+        }
+        this.meshes = new ArrayList<>(meshes);
+        this.padding = padding;
+        sweep();
+    }
+
+    /**
+     * Pads the bounding box of every mesh and sweeps along x to find the overlapping boxes.
+     */
+    public void sweep(){
+        int n = meshes.size();
+        boxes = new double[6*n];
+        pairs.clear();
+        pairCount = 0;
+        Integer[] order = new Integer[n];
+        for(int i = 0; i<n; i++){
+            bounds(meshes.get(i).positions, boxes, 6*i);
+            for(int k = 0; k<3; k++){
+                boxes[6*i + k] -= padding;
+                boxes[6*i + 3 + k] += padding;
+            }
+            order[i] = i;
+            pairs.put(meshes.get(i), new HashSet<>());
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(boxes[6*a], boxes[6*b]));
+
+        List<Integer> active = new ArrayList<>();
+        for(Integer i: order){
+            double lowX = boxes[6*i];
+            active.removeIf(j -> boxes[6*j + 3] < lowX);
+            for(Integer j: active){
+                if(overlaps(i, j, 1) && overlaps(i, j, 2)){
+                    pairs.get(meshes.get(i)).add(meshes.get(j));
+                    pairs.get(meshes.get(j)).add(meshes.get(i));
+                    pairCount++;
+                }
+            }
+            active.add(i);
+        }
+        sweeps++;
+    }
+
+    private boolean overlaps(int i, int j, int axis){
+        return boxes[6*i + axis] <= boxes[6*j + 3 + axis] && boxes[6*j + axis] <= boxes[6*i + 3 + axis];
+    }
+
+    /**
+     * Finds the pairs again if any mesh has left its padded box.
+     *
+     * @return true if the pairs were found again.
+     */
+    public boolean update(){
+        double[] box = new double[6];
+        for(int i = 0; i<meshes.size(); i++){
+            bounds(meshes.get(i).positions, box, 0);
+            for(int k = 0; k<3; k++){
+                if(box[k] < boxes[6*i + k] || box[3 + k] > boxes[6*i + 3 + k]){
+                    sweep();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the bounds of the positions, low x, y, z then high x, y, z, to the result.
+     */
+    static void bounds(double[] positions, double[] result, int offset){
+        for(int k = 0; k<3; k++){
+            result[offset + k] = Double.MAX_VALUE;
+            result[offset + 3 + k] = -Double.MAX_VALUE;
+        }
+        for(int i = 0; i<positions.length; i+=3){
+            for(int k = 0; k<3; k++){
+                double v = positions[i + k];
+                if(v < result[offset + k]){
+                    result[offset + k] = v;
+                }
+                if(v > result[offset + 3 + k]){
+                    result[offset + 3 + k] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Meshes that were not part of the broad phase are assumed to touch everything.
+     *
+     * @return false if the meshes cannot touch.
+     */
+    public boolean mayTouch(DeformableMesh3D a, DeformableMesh3D b){
+        Set<DeformableMesh3D> neighbors = pairs.get(a);
+        if(neighbors == null || !pairs.containsKey(b)){
+            return true;
+        }
+        return neighbors.contains(b);
+    }
+
+    /**
+     * @return the meshes that can touch the provided mesh.
+     */
+    public Set<DeformableMesh3D> getNeighbors(DeformableMesh3D mesh){
+        Set<DeformableMesh3D> neighbors = pairs.get(mesh);
+        return neighbors == null ? Collections.emptySet() : Collections.unmodifiableSet(neighbors);
+    }
+
+    /**
+     * @return the number of pairs found by the last sweep.
+     */
+    public int getPairCount(){
+        return pairCount;
+    }
+
+    /**
+     * @return the number of times the pairs have been found.
+     */
+    public int getSweepCount(){
+        return sweeps;
+    }
+}
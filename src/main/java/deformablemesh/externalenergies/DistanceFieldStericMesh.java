@@ -0,0 +1,63 @@
+package deformablemesh.externalenergies;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.MeshWorkspace;
+import deformablemesh.geometry.SignedDistanceField;
+
+/**
+ * Steric energy that uses a signed distance field of the neighbor. Nodes that are inside of the neighbor are pushed
+ * out along the gradient of the field, with a force proportional to how deep they are. Nodes deeper than the band of
+ * the field have no gradient, they are pushed back along their own normal with the depth of the band.
+ *
+ * The field can be shared by every mesh that has the same neighbor.
+ */
+public class DistanceFieldStericMesh extends StericMesh {
+    final SignedDistanceField field;
+
+    public DistanceFieldStericMesh(DeformableMesh3D id, SignedDistanceField field, DeformableMesh3D neighbor, double weight){
+        super(id, neighbor, weight);
+        this.field = field;
+    }
+
+    /**
+     * Rebuilds the field if the neighbor has moved beyond the tolerance of the field.
+     */
+    @Override
+    public void update(){
+        field.update();
+    }
+
+    @Override
+    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace) {
+        double[] pt = workspace.getVector(0);
+        double[] gradient = workspace.getVector(1);
+        for(int i = 0; i<fx.length; i++){
+            pt[0] = positions[3*i];
+            pt[1] = positions[3*i + 1];
+            pt[2] = positions[3*i + 2];
+
+            double d = field.getDistance(pt, gradient);
+            if(d >= 0){
+                continue;
+            }
+            double g = Math.sqrt(gradient[0]*gradient[0] + gradient[1]*gradient[1] + gradient[2]*gradient[2]);
+            if(g == 0){
+                if(getNormal(i, gradient) == 0){
+                    continue;
+                }
+                //the outward normal points into the neighbor.
+                g = -1;
+            }
+            double f = -d*weight*100/g;
+            fx[i] += f*gradient[0];
+            fy[i] += f*gradient[1];
+            fz[i] += f*gradient[2];
+        }
+    }
+
+    @Override
+    public double getEnergy(double[] pt) {
+        double d = field.getDistance(pt);
+        return d < 0 ? d*d : 0;
+    }
+}
@@ -1,5 +1,7 @@
 package deformablemesh.externalenergies;
 
+import deformablemesh.geometry.MeshWorkspace;
+
 /**
  *
  *
@@ -11,6 +13,20 @@ package deformablemesh.externalenergies;
 public interface ExternalEnergy {
 
     void updateForces(double[] positions, double[] fx, double[] fy, double[] fz);
+
+    /**
+     * Called by the mesh during a deformation step. Energies that need temporary storage should override this and
+     * use the buffers in the workspace instead of allocating.
+     *
+     * @param positions current node positions.
+     * @param fx forces to be added to.
+     * @param fy forces to be added to.
+     * @param fz forces to be added to.
+     * @param workspace scratch storage belonging to the mesh being deformed.
+     */
+    default void updateForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace){
+        updateForces(positions, fx, fy, fz);
+    }
     double getEnergy(double[] pos);
 
 }
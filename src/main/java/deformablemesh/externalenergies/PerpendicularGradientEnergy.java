@@ -1,7 +1,9 @@
 package deformablemesh.externalenergies;
 
+import deformablemesh.GradientVolume;
 import deformablemesh.MeshImageStack;
 import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.MeshWorkspace;
 import deformablemesh.geometry.Triangle3D;
 import deformablemesh.util.GaussianKernels;
 import deformablemesh.util.Vector3DOps;
@@ -18,6 +20,15 @@ public class PerpendicularGradientEnergy implements ExternalEnergy {
     double[] kernel = GaussianKernels.firstDerivative1DKernel();
     double weight;
     DeformableMesh3D mesh;
+    /**
+     * When true, the precomputed gradient magnitude is sampled instead of applying the kernel along the normal.
+     */
+    boolean precomputed;
+    /**
+     * Response of the kernel to a unit slope, relates the gradient magnitude to the sampled change magnitude.
+     */
+    double kernelMoment;
+
     public PerpendicularGradientEnergy(MeshImageStack stack, DeformableMesh3D mesh, double weight){
         for(Triangle3D t: mesh.triangles){
             int[] dexs = t.getIndices();
@@ -32,33 +43,157 @@ public class PerpendicularGradientEnergy implements ExternalEnergy {
         this.stack = stack;
         this.weight = weight;
         this.mesh =mesh;
+        double width = kernel.length/2;
+        for(int i = 0; i<kernel.length; i++){
+            kernelMoment += (i - width)*kernel[i];
+        }
+    }
+
+    /**
+     * Creates an energy that uses a precomputed gradient. Each node only needs the gradient at two points, in front
+     * of and behind the node, instead of the kernel samples along the normal. The gradient is projected onto the
+     * normal, so like the sampled version only the change in intensity across the surface contributes.
+     *
+     * The gradient is taken from {@link MeshImageStack#getGradientVolume()} at each update, so it follows
+     * changes to the stack, eg. a new frame.
+     *
+     * @param precomputed false for the same behavior as {@link #PerpendicularGradientEnergy(MeshImageStack, DeformableMesh3D, double)}
+     */
+    public PerpendicularGradientEnergy(MeshImageStack stack, DeformableMesh3D mesh, double weight, boolean precomputed){
+        this(stack, mesh, weight);
+        this.precomputed = precomputed;
     }
 
     @Override
     public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
+        updateForces(positions, fx, fy, fz, new MeshWorkspace(0));
+    }
+
+    @Override
+    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace) {
         mesh.triangles.forEach(Triangle3D::update);
+        if(precomputed){
+            updatePrecomputedForces(positions, fx, fy, fz, workspace);
+            return;
+        }
         int n = positions.length/3;
-        double[] normal = new double[3];
+        int samples = 2*kernel.length;
+
+        //normals, then the packed sample positions, then the sampled values.
+        int pointStart = 3*n;
+        int valueStart = pointStart + 3*n*samples;
+        double[] work = workspace.getScratch(valueStart + n*samples);
+        double[] normal = workspace.getVector(0);
         for(int i = 0; i<n; i++){
+            getNormal(i, normal);
+            int dex = i*3;
+            work[dex] = normal[0];
+            work[dex + 1] = normal[1];
+            work[dex + 2] = normal[2];
+            int p = pointStart + dex*samples;
+            p = samplePoints(positions[dex] + normal[0]*ds, positions[dex+1] + normal[1]*ds, positions[dex + 2] + normal[2]*ds, normal, work, p);
+            samplePoints(positions[dex] - normal[0]*ds, positions[dex+1] - normal[1]*ds, positions[dex + 2] - normal[2]*ds, normal, work, p);
+        }
+
+        stack.getInterpolatedValues(work, pointStart, work, valueStart, n*samples);
 
-            double norm = getNormal(i, normal);
-            if(norm==0){
+        for(int i = 0; i<n; i++){
+            int dex = i*3;
+            if(work[dex]==0 && work[dex + 1]==0 && work[dex + 2]==0){
                 continue;
             }
+            int v = valueStart + i*samples;
+            double f = (convolve(work, v) - convolve(work, v + kernel.length))*weight;
+            fx[i] += f*work[dex];
+            fy[i] += f*work[dex + 1];
+            fz[i] += f*work[dex + 2];
+        }
+    }
+
+    private void updatePrecomputedForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace){
+        int n = positions.length/3;
+
+        //normals, then the points in front and behind each node, then the sampled gradient components.
+        int pointStart = 3*n;
+        int valueStart = pointStart + 6*n;
+        double[] work = workspace.getScratch(valueStart + 6*n);
+        double[] normal = workspace.getVector(0);
+        for(int i = 0; i<n; i++){
+            getNormal(i, normal);
             int dex = i*3;
-            double f = getForce(positions[dex], positions[dex+1], positions[dex + 2], normal)*weight;
-            fx[i] += f*normal[0];
-            fy[i] += f*normal[1];
-            fz[i] += f*normal[2];
+            int p = pointStart + 2*dex;
+            for(int j = 0; j<3; j++){
+                work[dex + j] = normal[j];
+                work[p + j] = positions[dex + j] + normal[j]*ds;
+                work[p + 3 + j] = positions[dex + j] - normal[j]*ds;
+            }
+        }
+
+        GradientVolume gradient = stack.getGradientVolume();
+        for(int j = 0; j<3; j++){
+            gradient.getComponent(j).getInterpolatedValues(work, pointStart, work, valueStart + 2*j*n, 2*n);
+        }
+
+        //the kernel response is the derivative along the normal, scaled by the moment of the kernel.
+        double scale = ds*Math.abs(kernelMoment)*weight;
+        for(int i = 0; i<n; i++){
+            int dex = i*3;
+            double nx = work[dex];
+            double ny = work[dex + 1];
+            double nz = work[dex + 2];
+            if(nx==0 && ny==0 && nz==0){
+                continue;
+            }
+            double front = 0;
+            double back = 0;
+            for(int j = 0; j<3; j++){
+                int v = valueStart + 2*j*n + 2*i;
+                front += work[v]*work[dex + j];
+                back += work[v + 1]*work[dex + j];
+            }
+            double f = (Math.abs(front) - Math.abs(back))*scale;
+            fx[i] += f*nx;
+            fy[i] += f*ny;
+            fz[i] += f*nz;
+        }
+    }
 
+    /**
+     * Writes the positions sampled by the kernel, centered on x, y, z along direction.
+     *
+     * @return the index after the last position written.
+     */
+    int samplePoints(double x, double y, double z, double[] direction, double[] points, int start){
+        double width = kernel.length/2;
+        for(int i = 0; i<kernel.length; i++){
+            points[start++] = (i - width)*ds*direction[0] + x;
+            points[start++] = (i - width)*ds*direction[1] + y;
+            points[start++] = (i - width)*ds*direction[2] + z;
+        }
+        return start;
+    }
 
+    /**
+     * @return the magnitude of the kernel applied to the values starting at start.
+     */
+    double convolve(double[] values, int start){
+        double m = 0;
+        for(int i = 0; i<kernel.length; i++){
+            m += values[start + i]*kernel[i];
         }
+        return m>0? m:-m;
     }
 
     public double getChangeMagnitude(double x, double y, double z, double[] direction){
+        return getChangeMagnitude(x, y, z, direction, new double[3]);
+    }
+
+    /**
+     * @param pos working array for the sample positions, at least length 3.
+     */
+    double getChangeMagnitude(double x, double y, double z, double[] direction, double[] pos){
         double width = kernel.length/2;
         double m = 0;
-        double[] pos = new double[3];
         for(int i = 0; i<kernel.length; i++){
             pos[0] = (i - width)*ds*direction[0] + x;
             pos[1] = (i - width)*ds*direction[1] + y;
@@ -68,9 +203,13 @@ public class PerpendicularGradientEnergy implements ExternalEnergy {
         return m>0? m:-m;
     }
     public double getForce(double x, double y, double z, double[] direction){
-        return getChangeMagnitude(x + direction[0]*ds, y + direction[1]*ds, z+direction[2]*ds, direction)
+        return getForce(x, y, z, direction, new double[3]);
+    }
+
+    double getForce(double x, double y, double z, double[] direction, double[] pos){
+        return getChangeMagnitude(x + direction[0]*ds, y + direction[1]*ds, z+direction[2]*ds, direction, pos)
                 -
-               getChangeMagnitude(x - direction[0]*ds, y - direction[1]*ds, z-direction[2]*ds, direction);
+               getChangeMagnitude(x - direction[0]*ds, y - direction[1]*ds, z-direction[2]*ds, direction, pos);
     }
 
 
@@ -2,6 +2,7 @@ package deformablemesh.externalenergies;
 
 import deformablemesh.MeshImageStack;
 import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.MeshWorkspace;
 import deformablemesh.geometry.Triangle3D;
 import deformablemesh.util.GaussianKernels;
 import deformablemesh.util.Vector3DOps;
@@ -39,29 +40,64 @@ public class PerpendicularIntensityEnergy implements ExternalEnergy {
 
     @Override
     public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
+        updateForces(positions, fx, fy, fz, new MeshWorkspace(0));
+    }
+
+    @Override
+    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace) {
         mesh.triangles.forEach(Triangle3D::update);
         int n = positions.length/3;
-        double[] normal = new double[3];
-        for(int i = 0; i<n; i++){
+        int samples = kernel.length;
+        double width = kernel.length/2;
 
-            double norm = getNormal(i, normal);
-            if(norm==0){
-                continue;
-            }
+        //normals, then the packed sample positions, then the sampled values.
+        int pointStart = 3*n;
+        int valueStart = pointStart + 3*n*samples;
+        double[] work = workspace.getScratch(valueStart + n*samples);
+        double[] normal = workspace.getVector(0);
+        for(int i = 0; i<n; i++){
+            getNormal(i, normal);
             int dex = i*3;
-            double f = getForce(positions[dex], positions[dex+1], positions[dex + 2], normal)*weight;
-            fx[i] += f*normal[0];
-            fy[i] += f*normal[1];
-            fz[i] += f*normal[2];
+            work[dex] = normal[0];
+            work[dex + 1] = normal[1];
+            work[dex + 2] = normal[2];
+            int p = pointStart + dex*samples;
+            for(int k = 0; k<samples; k++){
+                work[p++] = (k - width)*ds*normal[0] + positions[dex];
+                work[p++] = (k - width)*ds*normal[1] + positions[dex + 1];
+                work[p++] = (k - width)*ds*normal[2] + positions[dex + 2];
+            }
+        }
 
+        stack.getInterpolatedValues(work, pointStart, work, valueStart, n*samples);
 
+        for(int i = 0; i<n; i++){
+            int dex = i*3;
+            if(work[dex]==0 && work[dex + 1]==0 && work[dex + 2]==0){
+                continue;
+            }
+            int v = valueStart + i*samples;
+            double m = 0;
+            for(int k = 0; k<samples; k++){
+                m += work[v + k]*kernel[k];
+            }
+            double f = m*weight;
+            fx[i] += f*work[dex];
+            fy[i] += f*work[dex + 1];
+            fz[i] += f*work[dex + 2];
         }
     }
 
     public double getForce(double x, double y, double z, double[] direction){
+        return getForce(x, y, z, direction, new double[3]);
+    }
+
+    /**
+     * @param pos working array for the sample positions, at least length 3.
+     */
+    double getForce(double x, double y, double z, double[] direction, double[] pos){
         double width = kernel.length/2;
         double m = 0;
-        double[] pos = new double[3];
         for(int i = 0; i<kernel.length; i++){
             pos[0] = (i - width)*ds*direction[0] + x;
             pos[1] = (i - width)*ds*direction[1] + y;
@@ -4,6 +4,7 @@ import deformablemesh.geometry.CurvatureCalculator;
 import deformablemesh.geometry.DeformableMesh3D;
 import deformablemesh.geometry.InterceptingMesh3D;
 import deformablemesh.geometry.Intersection;
+import deformablemesh.geometry.MeshWorkspace;
 import deformablemesh.util.Vector3DOps;
 
 import java.util.List;
@@ -44,14 +45,20 @@ public class SofterStericMesh extends StericMesh {
         }
     }
 
+    /**
+     * Pushes nodes that have penetrated the neighbor back along their normal, proportional to the penetration depth.
+     * The 4 argument version in {@link StericMesh} delegates here, so both overloads use the soft force.
+     */
     @Override
-    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
-        if (!staticShape || mesh == null) {
+    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace) {
+        if(mesh == null){
             mesh = new InterceptingMesh3D(deformableMesh);
+        } else if(!staticShape){
+            mesh.refit();
         }
 
 
-        double[] pt = new double[3];
+        double[] pt = workspace.getVector(0);
         //double[] center = mesh.getCenter();
 
         for (int i = 0; i < fx.length; i++) {
@@ -155,8 +162,10 @@ public class SofterStericMesh extends StericMesh {
 
     @Override
     public double getEnergy(double[] pt) {
-        if (!staticShape || mesh == null) {
+        if(mesh == null){
             mesh = new InterceptingMesh3D(deformableMesh);
+        } else if(!staticShape){
+            mesh.refit();
         }
 
         if (mesh.boundsContains(pt)) {
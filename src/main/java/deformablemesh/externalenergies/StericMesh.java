@@ -1,6 +1,7 @@
 package deformablemesh.externalenergies;
 
 import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.MeshWorkspace;
 import deformablemesh.geometry.InterceptingMesh3D;
 import deformablemesh.geometry.Triangle3D;
 import deformablemesh.util.Vector3DOps;
@@ -38,25 +39,47 @@ public class StericMesh implements ExternalEnergy{
             }
         }
     }
+    /**
+     * Brings the neighbor shape up to date. The existing intercepting mesh is refit, it is only rebuilt when the
+     * topology of the neighbor changes.
+     */
     public void update(){
-        mesh = new InterceptingMesh3D(deformableMesh);
+        if(mesh == null){
+            mesh = new InterceptingMesh3D(deformableMesh);
+        } else{
+            mesh.refit();
+        }
+    }
+
+    /**
+     * @return the mesh that this energy keeps the deforming mesh out of.
+     */
+    public DeformableMesh3D getNeighbor(){
+        return deformableMesh;
     }
 
 
     @Override
     public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz) {
-        if(!staticShape || mesh==null) {
+        updateForces(positions, fx, fy, fz, new MeshWorkspace(0));
+    }
+
+    @Override
+    public void updateForces(double[] positions, double[] fx, double[] fy, double[] fz, MeshWorkspace workspace) {
+        if(mesh == null){
             mesh = new InterceptingMesh3D(deformableMesh);
+        } else if(!staticShape){
+            mesh.refit();
         }
 
 
-        double[] pt = new double[3];
+        double[] pt = workspace.getVector(0);
+        double[] normal = workspace.getVector(1);
         double[] center = mesh.getCenter();
         for(int i = 0; i<fx.length; i++){
             pt[0] = positions[3*i];
             pt[1] = positions[3*i + 1];
             pt[2] = positions[3*i + 2];
-            double[] normal = new double[3];
 
             if(mesh.contains(pt)){
                 double dx = pt[0] - center[0];
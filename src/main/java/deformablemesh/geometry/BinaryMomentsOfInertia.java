@@ -5,6 +5,8 @@ import Jama.Matrix;
 import deformablemesh.DeformableMesh3DTools;
 import deformablemesh.MeshImageStack;
 import deformablemesh.gui.meshinitialization.CircularMeshInitializationDialog;
+import deformablemesh.util.MeshVoxelizer;
+import deformablemesh.util.SpanVolume;
 import deformablemesh.util.Vector3DOps;
 import ij.ImageJ;
 import ij.ImagePlus;
@@ -18,7 +20,8 @@ import java.util.Arrays;
 import java.util.List;
 
 /**
- * This class is designed to use the binary representation to calculate the center of mass and moments of inertia
+ * This class is designed to use the binary representation to calculate the center of mass and moments of inertia.
+ * The interior of the mesh is kept as runs of voxels, see {@link SpanVolume}.
  *
  * Created on 23.08.17.
  */
@@ -26,13 +29,13 @@ public class BinaryMomentsOfInertia {
     double[] cm;
     double[] I;
     double size;
-    ImagePlus binary;
+    SpanVolume interior;
     double[] pxSizes;
     MeshImageStack mis;
     public BinaryMomentsOfInertia(DeformableMesh3D mesh, MeshImageStack stack){
         pxSizes = stack.pixel_dimensions;
         pxSizes = new double[]{pxSizes[0]/stack.SCALE, pxSizes[1]/stack.SCALE, pxSizes[2]/stack.SCALE};
-        binary = DeformableMesh3DTools.createBinaryRepresentation(stack, mesh);
+        interior = new MeshVoxelizer(stack, mesh).getSpanVolume();
         mis = stack;
     }
     /**
@@ -47,31 +50,16 @@ public class BinaryMomentsOfInertia {
     }
 
     private void calculateCenterOfMass(){
-        cm = new double[3];
-        ImageStack binaryStack = binary.getStack();
-        int w = binary.getWidth();
-        int h = binary.getHeight();
-        double tally = 0;
-        for(int i = 0; i<binary.getNSlices(); i++){
-            double z = (i+0.5)*pxSizes[2];
-            final byte[] bytes = (byte[]) binaryStack.getPixels(i+1);
-            for(int k = 0; k<bytes.length; k++){
-                if((0xff&(int)bytes[k])>0){
-
-                    double x = (k%w + 0.5)*pxSizes[0];
-                    double y = (k/w + 0.5)*pxSizes[1];
-
-                    tally += 1;
-                    cm[0] += x;
-                    cm[1] += y;
-                    cm[2] += z;
-                }
-            }
-        }
+        double[] sums = new double[4];
+        interior.forEachVoxel((x, y, z) -> {
+            sums[0] += (x + 0.5)*pxSizes[0];
+            sums[1] += (y + 0.5)*pxSizes[1];
+            sums[2] += (z + 0.5)*pxSizes[2];
+            sums[3] += 1;
+        });
+        double tally = sums[3];
         size = tally;
-        cm[0] = cm[0]/tally;
-        cm[1] = cm[1]/tally;
-        cm[2] = cm[2]/tally;
+        cm = new double[]{ sums[0]/tally, sums[1]/tally, sums[2]/tally };
     }
 
     /**
@@ -94,41 +82,27 @@ public class BinaryMomentsOfInertia {
     }
 
     private void calculateInertialMatrix(){
-        double Ixx = 0;
-        double Ixy = 0;
-        double Ixz = 0;
-        double Iyy = 0;
-        double Iyz = 0;
-        double Izz = 0;
-        ImageStack binaryStack = binary.getStack();
-        int w = binary.getWidth();
-        int h = binary.getHeight();
-        double tally = 0;
         double IxxCm = 1.0/12.0*(pxSizes[1]*pxSizes[1] + pxSizes[2]*pxSizes[2]);
         double IyyCm = 1.0/12.0*(pxSizes[0]*pxSizes[0] + pxSizes[2]*pxSizes[2]);
         double IzzCm = 1.0/12.0*(pxSizes[1]*pxSizes[1] + pxSizes[0]*pxSizes[0]);
 
-        for(int i = 0; i<binary.getNSlices(); i++){
-            double z = (i+0.5)*pxSizes[2] - cm[2];
-            final byte[] bytes = (byte[]) binaryStack.getPixels(i+1);
-            for(int k = 0; k<bytes.length; k++){
-                if((0xff&(int)bytes[k])>0){
-                    double x = (k%w + 0.5)*pxSizes[0] - cm[0];
-                    double y = (k/w + 0.5)*pxSizes[1] - cm[1];
-                    tally += 1;
-                    Ixx += (y*y + z*z) + IxxCm;
-                    Ixy += -x*y;
-                    Ixz += -x*z;
-                    Iyy += (x*x + z*z) + IyyCm;
-                    Iyz += -y*z;
-                    Izz += (x*x + y*y) + IzzCm;
-                }
-            }
-        }
+        //Ixx, Ixy, Ixz, Iyy, Iyz, Izz
+        double[] m = new double[6];
+        interior.forEachVoxel((i, j, k) -> {
+            double x = (i + 0.5)*pxSizes[0] - cm[0];
+            double y = (j + 0.5)*pxSizes[1] - cm[1];
+            double z = (k + 0.5)*pxSizes[2] - cm[2];
+            m[0] += (y*y + z*z) + IxxCm;
+            m[1] += -x*y;
+            m[2] += -x*z;
+            m[3] += (x*x + z*z) + IyyCm;
+            m[4] += -y*z;
+            m[5] += (x*x + y*y) + IzzCm;
+        });
         I = new double[]{
-                Ixx, Ixy, Ixz,
-                Ixy, Iyy, Iyz,
-                Ixz, Iyz, Izz
+                m[0], m[1], m[2],
+                m[1], m[3], m[4],
+                m[2], m[4], m[5]
         };
     }
 
@@ -191,7 +165,7 @@ public class BinaryMomentsOfInertia {
         mesh.translate(new double[]{37.5/mis.SCALE, 0, 0});
         BinaryMomentsOfInertia inertia = new BinaryMomentsOfInertia(mesh, mis);
         List<double[]> values = inertia.getEigenVectors();
-        inertia.binary.show();
+        DeformableMesh3DTools.createBinaryRepresentation(mis, mesh).show();
         System.out.println("area: " + DeformableMesh3DTools.calculateSurfaceArea(mesh)*Math.pow(mis.SCALE, 2));
         System.out.println("volume: " + DeformableMesh3DTools.calculateVolume(new double[]{1, 0, 0}, mesh.positions, mesh.triangles)*Math.pow(mis.SCALE, 2));
 
@@ -237,7 +211,7 @@ public class BinaryMomentsOfInertia {
 
         BinaryMomentsOfInertia inertia = new BinaryMomentsOfInertia(mesh, mis);
         List<double[]> values = inertia.getEigenVectors();
-        inertia.binary.show();
+        DeformableMesh3DTools.createBinaryRepresentation(mis, mesh).show();
         System.out.println("area: " + DeformableMesh3DTools.calculateSurfaceArea(mesh)*Math.pow(mis.SCALE, 2));
         System.out.println("volume: " + DeformableMesh3DTools.calculateVolume(new double[]{1, 0, 0}, mesh.positions, mesh.triangles)*Math.pow(mis.SCALE, 2));
 
@@ -258,27 +232,16 @@ public class BinaryMomentsOfInertia {
     }
 
     public double measureAverageIntensity() {
-        ImageStack stack = binary.getStack();
-        double sum = 0;
-        double count = 0;
+        double[] sums = new double[2];
         double[] pxSpace = new double[3];
-        for(int i = 1; i<=binary.getStackSize(); i++){
-            ImageProcessor binProc = stack.getProcessor(i);
-            pxSpace[2] = i;
-            for(int j = 0; j<stack.getWidth(); j++){
-                for(int k = 0; k<stack.getHeight(); k++){
-                    if(binProc.get(j, k)!=0){
-                        pxSpace[0] = j;
-                        pxSpace[1] = k;
-
-                        count++;
-                        sum += mis.getInterpolatedValue(mis.getNormalizedCoordinate(pxSpace));
-
-                    }
-                }
-            }
-        }
-        return sum/count;
+        interior.forEachVoxel((x, y, z) -> {
+            pxSpace[0] = x;
+            pxSpace[1] = y;
+            pxSpace[2] = z;
+            sums[0] += mis.getInterpolatedValue(mis.getNormalizedCoordinate(pxSpace));
+            sums[1]++;
+        });
+        return sums[0]/sums[1];
 
     }
 
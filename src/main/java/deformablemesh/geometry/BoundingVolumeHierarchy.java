@@ -0,0 +1,240 @@
+package deformablemesh.geometry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounding box tree over the triangles of an {@link InterceptingMesh3D}, split at the median centroid along the
+ * longest axis. The nodes are stored depth first in flat arrays, a node's left child directly follows it.
+ *
+ * The queries are for lines, not rays, since the triangle intersections are found in both directions.
+ */
+class BoundingVolumeHierarchy {
+    final static int LEAF_SIZE = 4;
+    /**
+     * Boxes are padded so intersections accepted by the triangle tolerance are not missed.
+     */
+    final static double PADDING = 1e-8;
+
+    /**
+     * low x, y, z and high x, y, z for each node.
+     */
+    double[] bounds;
+    /**
+     * For leaves, the offset into order. For branches, the index of the right child.
+     */
+    int[] first;
+    /**
+     * Number of triangles in a leaf, 0 for branches.
+     */
+    int[] count;
+    /**
+     * triangle indexes, grouped by leaf.
+     */
+    final int[] order;
+    int nodes;
+
+    BoundingVolumeHierarchy(List<InterceptingTriangle3D> triangles){
+        int n = triangles.size();
+        order = new int[n];
+        double[] centroids = new double[3*n];
+        for(int i = 0; i<n; i++){
+            order[i] = i;
+            InterceptingTriangle3D t = triangles.get(i);
+            for(int j = 0; j<3; j++){
+                centroids[3*i + j] = (t.a[j] + t.b[j] + t.c[j])/3;
+            }
+        }
+        int max = Math.max(1, 2*n);
+        bounds = new double[6*max];
+        first = new int[max];
+        count = new int[max];
+        nodes = 0;
+        build(centroids, 0, n);
+
+        bounds = Arrays.copyOf(bounds, 6*nodes);
+        first = Arrays.copyOf(first, nodes);
+        count = Arrays.copyOf(count, nodes);
+        refit(triangles);
+    }
+
+    private int build(double[] centroids, int start, int end){
+        int node = nodes++;
+        if(end - start <= LEAF_SIZE){
+            first[node] = start;
+            count[node] = end - start;
+            return node;
+        }
+
+        double[] low = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] high = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for(int i = start; i<end; i++){
+            for(int j = 0; j<3; j++){
+                double v = centroids[3*order[i] + j];
+                if(v < low[j]) low[j] = v;
+                if(v > high[j]) high[j] = v;
+            }
+        }
+        int axis = 0;
+        for(int j = 1; j<3; j++){
+            if(high[j] - low[j] > high[axis] - low[axis]){
+                axis = j;
+            }
+        }
+
+        int mid = (start + end) >>> 1;
+        select(centroids, axis, start, end - 1, mid);
+        build(centroids, start, mid);
+        first[node] = build(centroids, mid, end);
+        count[node] = 0;
+        return node;
+    }
+
+    /**
+     * Partially sorts order[low..high] so the k'th element is in place and the elements before it have smaller
+     * centroids along the axis.
+     */
+    private void select(double[] centroids, int axis, int low, int high, int k){
+        while(high > low){
+            double pivot = centroids[3*order[(low + high) >>> 1] + axis];
+            int i = low;
+            int j = high;
+            while(i <= j){
+                while(centroids[3*order[i] + axis] < pivot) i++;
+                while(centroids[3*order[j] + axis] > pivot) j--;
+                if(i <= j){
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if(k <= j){
+                high = j;
+            } else if(k >= i){
+                low = i;
+            } else{
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recalculates the boxes for the current triangle positions, the tree structure is kept. Children are stored
+     * after their parents so the nodes are updated in reverse.
+     *
+     * @param triangles the same triangles, in the same order, that were used to build the tree.
+     */
+    void refit(List<InterceptingTriangle3D> triangles){
+        for(int node = nodes - 1; node >= 0; node--){
+            int b = 6*node;
+            if(count[node] > 0){
+                for(int j = 0; j<3; j++){
+                    bounds[b + j] = Double.MAX_VALUE;
+                    bounds[b + j + 3] = -Double.MAX_VALUE;
+                }
+                for(int i = first[node]; i<first[node] + count[node]; i++){
+                    InterceptingTriangle3D t = triangles.get(order[i]);
+                    include(b, t.a);
+                    include(b, t.b);
+                    include(b, t.c);
+                }
+                for(int j = 0; j<3; j++){
+                    bounds[b + j] -= PADDING;
+                    bounds[b + j + 3] += PADDING;
+                }
+            } else if(first[node] > 0){
+                int l = 6*(node + 1);
+                int r = 6*first[node];
+                for(int j = 0; j<3; j++){
+                    bounds[b + j] = Math.min(bounds[l + j], bounds[r + j]);
+                    bounds[b + j + 3] = Math.max(bounds[l + j + 3], bounds[r + j + 3]);
+                }
+            } else{
+                //empty tree.
+                for(int j = 0; j<3; j++){
+                    bounds[b + j] = Double.MAX_VALUE;
+                    bounds[b + j + 3] = -Double.MAX_VALUE;
+                }
+            }
+        }
+    }
+
+    private void include(int b, double[] pt){
+        for(int j = 0; j<3; j++){
+            if(pt[j] < bounds[b + j]) bounds[b + j] = pt[j];
+            if(pt[j] > bounds[b + j + 3]) bounds[b + j + 3] = pt[j];
+        }
+    }
+
+    /**
+     * Finds the triangles in leaves whose boxes are crossed by the line.
+     *
+     * @param origin point on the line.
+     * @param direction direction of the line.
+     * @return triangle indexes in ascending order.
+     */
+    int[] getCandidates(double[] origin, double[] direction){
+        int[] result = new int[16];
+        int found = 0;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0){
+            int node = stack[--top];
+            if(!crosses(node, origin, direction)){
+                continue;
+            }
+            if(count[node] > 0){
+                if(found + count[node] > result.length){
+                    result = Arrays.copyOf(result, 2*(found + count[node]));
+                }
+                for(int i = first[node]; i<first[node] + count[node]; i++){
+                    result[found++] = order[i];
+                }
+            } else if(first[node] > 0){
+                if(top + 2 > stack.length){
+                    stack = Arrays.copyOf(stack, 2*stack.length);
+                }
+                stack[top++] = first[node];
+                stack[top++] = node + 1;
+            }
+        }
+        result = Arrays.copyOf(result, found);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Slab test for an infinite line.
+     */
+    boolean crosses(int node, double[] origin, double[] direction){
+        int b = 6*node;
+        double near = -Double.MAX_VALUE;
+        double far = Double.MAX_VALUE;
+        for(int j = 0; j<3; j++){
+            double low = bounds[b + j];
+            double high = bounds[b + j + 3];
+            if(direction[j] == 0){
+                if(origin[j] < low || origin[j] > high){
+                    return false;
+                }
+            } else{
+                double t0 = (low - origin[j])/direction[j];
+                double t1 = (high - origin[j])/direction[j];
+                if(t0 > t1){
+                    double t = t0;
+                    t0 = t1;
+                    t1 = t;
+                }
+                near = t0 > near ? t0 : near;
+                far = t1 < far ? t1 : far;
+                if(near > far){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
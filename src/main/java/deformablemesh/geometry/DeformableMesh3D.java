@@ -1,19 +1,19 @@
 package deformablemesh.geometry;
 
-import Jama.LUDecomposition;
-import Jama.Matrix;
 import deformablemesh.DeformableMesh3DTools;
 import deformablemesh.MeshImageStack;
 import deformablemesh.externalenergies.ExternalEnergy;
 import deformablemesh.meshview.DeformableMeshDataObject;
+import deformablemesh.solvers.FactorizationCache;
+import deformablemesh.solvers.MatrixAccumulator;
+import deformablemesh.solvers.MeshSolver;
+import deformablemesh.solvers.SolverType;
+import deformablemesh.solvers.SparseMatrix;
+import deformablemesh.solvers.StiffnessKey;
 import deformablemesh.util.Vector3DOps;
 
 import java.awt.Color;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -30,7 +30,11 @@ public class DeformableMesh3D{
     public double GAMMA;
     public double ALPHA;
     public double BETA;
-    LUDecomposition decomp;
+    MeshSolver solver;
+    private SolverType solverType = SolverType.DenseLU;
+    private FactorizationCache factorizationCache;
+    private MeshWorkspace workspace;
+    private MeshTopology topology;
 
     List<ExternalEnergy> energies = new ArrayList<>();
 
@@ -42,7 +46,6 @@ public class DeformableMesh3D{
     public int[] triangle_index;
 
     public DeformableMeshDataObject data_object;
-    private final static ExecutorService pool = Executors.newFixedThreadPool(3);
     public static final double[] ORIGIN = {0,0,0};
 
     private boolean showSurface;
@@ -152,6 +155,7 @@ public class DeformableMesh3D{
     }
 
     public void syncConnectionIndices(){
+        topology = null;
         connection_index = connection_index.length!=2*connections.size()?new int[2*connections.size()]:connection_index;
         for(int i = 0; i<connections.size();i++){
             Connection3D con = connections.get(i);
@@ -166,6 +170,7 @@ public class DeformableMesh3D{
     }
 
     public void syncTriangleIndices(){
+        topology = null;
 
         if(triangle_index.length!=3*triangles.size()){
             triangle_index = new int[3*triangles.size()];
@@ -187,7 +192,74 @@ public class DeformableMesh3D{
     }
 
     public void reshape(){
-        double[][] data = new double[nodes.size()][nodes.size()];
+        if(factorizationCache!=null){
+            solver = factorizationCache.getSolver(getStiffnessKey(), this::createSolver);
+        } else{
+            solver = createSolver();
+        }
+    }
+
+    /**
+     * Assembles the stiffness matrix and prepares a new solver for it.
+     *
+     * @return a solver ready for updating this mesh.
+     */
+    MeshSolver createSolver(){
+        SparseMatrix.Assembler assembler = new SparseMatrix.Assembler(nodes.size());
+        assembleStiffness(assembler);
+        MeshSolver s = solverType.createSolver();
+        s.setMatrix(assembler.build());
+        return s;
+    }
+
+    /**
+     * Creates a key representing everything the stiffness matrix depends on. Meshes with equal keys, such as a
+     * mesh that has been copied to the next frame, can share a solver.
+     *
+     * @return key for looking up a shared solver.
+     */
+    public StiffnessKey getStiffnessKey(){
+        int[] cons = new int[2*connections.size()];
+        for(int i = 0; i<connections.size(); i++){
+            Connection3D c = connections.get(i);
+            cons[2*i] = c.A.index;
+            cons[2*i + 1] = c.B.index;
+        }
+        int[] tris = new int[3*triangles.size()];
+        for(int i = 0; i<triangles.size(); i++){
+            Triangle3D t = triangles.get(i);
+            tris[3*i] = t.A.index;
+            tris[3*i + 1] = t.B.index;
+            tris[3*i + 2] = t.C.index;
+        }
+        double[] factors = new double[nodes.size()];
+        for(Node3D n: nodes){
+            factors[n.index] = n.gammaFactor;
+        }
+        return new StiffnessKey(solverType, ALPHA, BETA, GAMMA, cons, tris, factors);
+    }
+
+    /**
+     * When set, reshape will look for a solver from another mesh with the same topology and parameters before
+     * factoring the stiffness matrix.
+     *
+     * @param cache shared cache, or null to always create a new solver.
+     */
+    public void setFactorizationCache(FactorizationCache cache){
+        factorizationCache = cache;
+    }
+
+    public FactorizationCache getFactorizationCache(){
+        return factorizationCache;
+    }
+
+    /**
+     * Adds the terms of the stiffness matrix, ALPHA, BETA and GAMMA, to the provided accumulator. The matrix only
+     * depends on the topology of the mesh and the parameters, not on the node positions.
+     *
+     * @param data receives the matrix terms.
+     */
+    void assembleStiffness(MatrixAccumulator data){
         if(BETA>0){
             updateBetaMatrix(data);
         }
@@ -196,112 +268,127 @@ public class DeformableMesh3D{
 
             c.update();
             int[] dex = c.getIndices();
-            data[dex[0]][dex[0]] += ALPHA;
-            data[dex[0]][dex[1]] += -ALPHA;
-            data[dex[1]][dex[0]] += -ALPHA;
-            data[dex[1]][dex[1]] += ALPHA;
+            data.add(dex[0], dex[0], ALPHA);
+            data.add(dex[0], dex[1], -ALPHA);
+            data.add(dex[1], dex[0], -ALPHA);
+            data.add(dex[1], dex[1], ALPHA);
 
         }
 
 
         for(Node3D n: nodes){
-            data[n.index][n.index] += n.getGamma(GAMMA);
+            data.add(n.index, n.index, n.getGamma(GAMMA));
         }
-
-        Matrix M = new Matrix(data);
-
-        decomp = M.lu();
     }
 
-    private void updateBetaMatrix(double[][] data){
-        Map<Node3D, List<Connection3D>> noder = getCurvatureMap();
-        Map<Connection3D, Set<Connection3D>> conner = getAdjacencyMap(noder);
-        for(Node3D n: nodes){
-            List<Connection3D> cons = noder.get(n);
+    private void updateBetaMatrix(MatrixAccumulator data){
+        MeshTopology topo = getTopology();
+        int[] nodeOffsets = topo.nodeOffsets;
+        int[] neighbors = topo.slotNeighbors;
+        for(int n = 0; n<topo.nodeCount; n++){
             double small_factor = 1.0;
-            for(int i = 0; i<cons.size(); i++){
-                Connection3D a = cons.get(i);
-                Node3D other = a.A.equals(n)?a.B:a.A;
-                Set<Connection3D> adjacent = conner.get(a);
-                for(int j = i+1; j<cons.size(); j++){
+            for(int s = nodeOffsets[n]; s<nodeOffsets[n+1]; s++){
+                int other = neighbors[s];
+                for(int k = topo.firstOrderOffsets[s]; k<topo.firstOrderOffsets[s+1]; k++){
                     //pairs of first order connections.
-                    Connection3D b = cons.get(j);
-                    if(adjacent.contains(b)){
-                        continue;
-                    }
-                    Node3D another = b.A.equals(n)?b.B:b.A;
-
-                    data[n.index][another.index] += -BETA*small_factor;
-                    data[n.index][other.index] += -BETA*small_factor;
-                    data[n.index][n.index] += 2*BETA*small_factor;
+                    int another = topo.firstOrder[k];
+                    data.add(n, another, -BETA*small_factor);
+                    data.add(n, other, -BETA*small_factor);
+                    data.add(n, n, 2*BETA*small_factor);
                 }
 
-                List<Connection3D> secondOrder = noder.get(other);
-
-
                 double f = 1.0;
-                for(Connection3D con: secondOrder){
-                    if(con.equals(a) || adjacent.contains(con)){
-                        continue;
-                    }
-                    Node3D another = con.A.equals(other)?con.B:con.A;
-                    data[n.index][n.index] += BETA*f;
-                    data[n.index][another.index] += BETA*f;
-                    data[n.index][other.index] -= 2*BETA*f;
+                for(int k = topo.secondOrderOffsets[s]; k<topo.secondOrderOffsets[s+1]; k++){
+                    int another = topo.secondOrder[k];
+                    data.add(n, n, BETA*f);
+                    data.add(n, another, BETA*f);
+                    data.add(n, other, -2*BETA*f);
                 }
-
-
             }
+        }
+    }
 
+    /**
+     * The connectivity used for the curvature terms. It is created when first needed, and again if the
+     * connections or triangles have been changed.
+     *
+     * @return the topology for the current connections and triangles.
+     */
+    public MeshTopology getTopology(){
+        if(topology==null || !topology.matches(this)){
+            topology = MeshTopology.create(this);
         }
+        return topology;
     }
 
     /**
-     * Performs the bulk of calculations for doing an update. Creates a runnable that represents
-     * finally changing the positions
-     * @return
+     * Selects the backend used for the implicit step. The mesh needs to be reshaped for this to take effect.
+     *
+     * @param type
      */
-    public Runnable partialUpdate(){
-        if(decomp==null){
-            reshape();
+    public void setSolverType(SolverType type){
+        if(type != solverType){
+            solverType = type;
+            solver = null;
         }
+    }
 
-        final double[] fx = new double[nodes.size()];
-        final double[] fy = new double[nodes.size()];
-        final double[] fz = new double[nodes.size()];
+    public SolverType getSolverType(){
+        return solverType;
+    }
 
-        double[] pt;
-        for(Node3D n: nodes){
+    /**
+     * Scratch buffers used while deforming this mesh. A new workspace is created when the number of nodes changes.
+     *
+     * @return the workspace for the current topology.
+     */
+    public MeshWorkspace getWorkspace(){
+        if(workspace==null || workspace.getNodeCount()!=nodes.size()){
+            workspace = new MeshWorkspace(nodes.size());
+        }
+        return workspace;
+    }
+
+    /**
+     * Fills the force arrays of the workspace with the gamma term and the external energies.
+     */
+    private void calculateForces(MeshWorkspace work){
+        final double[] fx = work.fx;
+        final double[] fy = work.fy;
+        final double[] fz = work.fz;
+
+        for(int i = 0; i<nodes.size(); i++){
+            Node3D n = nodes.get(i);
             n.update();
-            pt = n.getCoordinates();
             double gamma = n.getGamma(GAMMA);
-            fx[n.index] += gamma*pt[0];
-            fy[n.index] += gamma*pt[1];
-            fz[n.index] += gamma*pt[2];
+            fx[n.index] = gamma*n.getCoordinate(0);
+            fy[n.index] = gamma*n.getCoordinate(1);
+            fz[n.index] = gamma*n.getCoordinate(2);
         }
 
-        for(ExternalEnergy external: energies) {
-            external.updateForces(positions, fx, fy, fz);
+        for(int i = 0; i<energies.size(); i++) {
+            energies.get(i).updateForces(positions, fx, fy, fz, work);
         }
+    }
 
-        final Matrix FX = new Matrix(fx,nodes.size());
-        Matrix deltax = decomp.solve(FX);
-        double[] nx = deltax.getRowPackedCopy();
+    /**
+     * Performs the bulk of calculations for doing an update. Creates a runnable that represents
+     * finally changing the positions
+     * @return
+     */
+    public Runnable partialUpdate(){
+        if(solver==null){
+            reshape();
+        }
 
-        final Matrix FY = new Matrix(fy,nodes.size());
-        Matrix deltay = decomp.solve(FY);
-        double[] ny = deltay.getRowPackedCopy();
+        final MeshWorkspace work = getWorkspace();
+        calculateForces(work);
 
-        final Matrix FZ = new Matrix(fz,nodes.size());
-        Matrix deltaz = decomp.solve(FZ);
-        double[] nz = deltaz.getRowPackedCopy();
+        final double[] next = work.solution;
+        System.arraycopy(positions, 0, next, 0, positions.length);
+        solver.solve(work.fx, work.fy, work.fz, next);
         return ()-> {
-            for (int i = 0; i < nodes.size(); i++) {
-                positions[3 * i] = nx[i];
-                positions[3 * i + 1] = ny[i];
-                positions[3 * i + 2] = nz[i];
-
-            }
+            System.arraycopy(next, 0, positions, 0, positions.length);
             if(data_object!=null){
                 data_object.updateGeometry(positions);
             }
@@ -311,65 +398,15 @@ public class DeformableMesh3D{
 
 
     public void update(){
-        if(decomp==null){
+        if(solver==null){
             reshape();
         }
 
-        final double[] fx = new double[nodes.size()];
-        final double[] fy = new double[nodes.size()];
-        final double[] fz = new double[nodes.size()];
+        final MeshWorkspace work = getWorkspace();
+        calculateForces(work);
 
-        double[] pt;
-        for(Node3D n: nodes){
-            n.update();
-            pt = n.getCoordinates();
-            double gamma = n.getGamma(GAMMA);
-            fx[n.index] += gamma*pt[0];
-            fy[n.index] += gamma*pt[1];
-            fz[n.index] += gamma*pt[2];
-        }
-
-        for(ExternalEnergy external: energies) {
-            external.updateForces(positions, fx, fy, fz);
-        }
-
-        Future<double[]> xfuture = pool.submit(() -> {
-            final Matrix FX = new Matrix(fx,nodes.size());
-            Matrix deltax = decomp.solve(FX);
-            return deltax.getRowPackedCopy();
-        });
-
-        Future<double[]> yfuture = pool.submit(() -> {
-            final Matrix FY = new Matrix(fy,nodes.size());
-            Matrix deltay = decomp.solve(FY);
-            return deltay.getRowPackedCopy();
-        });
-
-        Future<double[]> zfuture = pool.submit(() -> {
-            final Matrix FZ = new Matrix(fz,nodes.size());
-            Matrix deltaz = decomp.solve(FZ);
-            return deltaz.getRowPackedCopy();
-        });
-
-
-        try {
-            double[] nx = xfuture.get();
-            double[] ny = yfuture.get();
-            double[] nz = zfuture.get();
-            for(int i = 0; i<nodes.size(); i++){
-                positions[3*i] = nx[i];
-                positions[3*i+1] = ny[i];
-                positions[3*i+2] = nz[i];
-
-            }
-
-        } catch (InterruptedException e) {
-            System.err.println("Program was interrupted during calculations!");
-            e.printStackTrace();
-        } catch (ExecutionException e) {
-            System.err.println("Exception Occurred During update");
-            e.printStackTrace();
-        }
+        //all three axes are solved together, the current positions are the initial guess.
+        solver.solve(work.fx, work.fy, work.fz, positions);
 
         if(data_object!=null){
             data_object.updateGeometry(positions);
@@ -411,12 +448,20 @@ public class DeformableMesh3D{
         int[] count = new int[positions.length/3];
         float[] colors = new float[positions.length];
         double max = 0.0;
+        double[] points = new double[3*steps];
+        double[] samples = new double[steps];
         for(Triangle3D tri: triangles){
             tri.update();
+            for(int i = 0; i<steps; i++){
+                points[3*i] = tri.center[0]-ds*i*tri.normal[0];
+                points[3*i + 1] = tri.center[1]-ds*i*tri.normal[1];
+                points[3*i + 2] = tri.center[2]-ds*i*tri.normal[2];
+            }
+            stack.getInterpolatedValues(points, samples);
             double s = 0;
             double mx = 0;
             for(int i = 0; i<steps; i++){
-                double px = stack.getInterpolatedValue(tri.center[0]-ds*i*tri.normal[0], tri.center[1]-ds*i*tri.normal[1], tri.center[2]-ds*i*tri.normal[2]);
+                double px = samples[i];
                 s += px;
                 if(px>mx)mx = px;
             }
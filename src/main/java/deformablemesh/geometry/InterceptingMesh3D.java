@@ -3,6 +3,7 @@ package deformablemesh.geometry;
 import deformablemesh.util.Vector3DOps;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -17,11 +18,52 @@ public class InterceptingMesh3D implements Interceptable{
     List<InterceptingTriangle3D> triangles;
     double[] center;
     Box3D bounds;
+    BoundingVolumeHierarchy hierarchy;
+    /**
+     * Triangle indexes the hierarchy was built for.
+     */
+    int[] topology;
     public InterceptingMesh3D(DeformableMesh3D mesh){
         mesh.triangles.forEach(Triangle3D::update);
         this.mesh = mesh;
-        triangles = mesh.triangles.stream().map(InterceptingTriangle3D::new).collect(Collectors.toList());
+        build();
         center= new double[3];
+        updateCenter();
+    }
+
+    /**
+     * Updates the triangles, bounds and center to the current positions of the mesh. The bounding volume
+     * hierarchy is refit instead of rebuilt, which is much cheaper while the mesh deforms but the queries slow
+     * down if the triangles move far from where they were when it was built.
+     *
+     * If the topology of the mesh has changed, eg. it was remeshed, everything is rebuilt.
+     */
+    public void refit(){
+        mesh.triangles.forEach(Triangle3D::update);
+        if(mesh.triangles.size() != triangles.size() || !Arrays.equals(topology, mesh.triangle_index)){
+            build();
+        } else{
+            for(int i = 0; i<triangles.size(); i++){
+                Triangle3D triangle = mesh.triangles.get(i);
+                triangles.get(i).set(
+                        triangle.A.getCoordinates(),
+                        triangle.B.getCoordinates(),
+                        triangle.C.getCoordinates()
+                );
+            }
+            hierarchy.refit(triangles);
+        }
+        center = new double[3];
+        updateCenter();
+    }
+
+    private void build(){
+        triangles = mesh.triangles.stream().map(InterceptingTriangle3D::new).collect(Collectors.toList());
+        hierarchy = new BoundingVolumeHierarchy(triangles);
+        topology = mesh.triangle_index.clone();
+    }
+
+    private void updateCenter(){
         double[] a;
         double sum = 0;
         bounds = mesh.getBoundingBox();
@@ -59,20 +101,19 @@ public class InterceptingMesh3D implements Interceptable{
     public boolean boundsContains(double[] pt){
         return bounds.contains(pt);
     }
+    /**
+     * Finds where the line crosses the mesh, in both directions from the origin. Only the triangles in the
+     * bounding boxes crossed by the line are checked, the results are in the same order as the triangles.
+     *
+     * @param origin point on the line.
+     * @param direction direction of the line.
+     * @return intersections
+     */
     @Override
     public List<Intersection> getIntersections(double[] origin, double[] direction) {
         List<Intersection> sections = new ArrayList<>();
-        for(InterceptingTriangle3D triangle: triangles){
-            List<Intersection> old = new ArrayList(sections);
-            triangle.getIntersection(origin, direction, sections);
-            /*for(int j = 0; j<old.size(); j++) {
-                for (int i = old.size(); i < sections.size(); i++) {
-                    double m = Vector3DOps.mag(Vector3DOps.difference(sections.get(i).location, sections.get(j).location));
-                    if (m <= 0) {
-                        System.out.println("borked " + m);
-                    }
-                }
-            }*/
+        for(int i: hierarchy.getCandidates(origin, direction)){
+            triangles.get(i).getIntersection(origin, direction, sections);
         }
         return sections;
     }
@@ -128,6 +169,10 @@ class InterceptingTriangle3D{
 
     }
     public InterceptingTriangle3D(double[] a, double[] b, double[] c){
+        set(a, b, c);
+    }
+
+    void set(double[] a, double[] b, double[] c){
         u = Vector3DOps.difference(b, a);
         v = Vector3DOps.difference(c, a);
         //three points define a triangle and a plain
@@ -0,0 +1,263 @@
+package deformablemesh.geometry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable connectivity of a mesh stored as primitive int arrays. This replaces the maps from
+ * {@link DeformableMesh3D#getCurvatureMap()} and {@link DeformableMesh3D#getAdjacencyMap(java.util.Map)} for the
+ * curvature (BETA) terms.
+ *
+ * The connections of node n are stored in slots nodeOffsets[n] to nodeOffsets[n+1]-1, in the same order as the
+ * curvature map. For each slot, the pair table holds the nodes used by the curvature terms of that connection, so
+ * the terms can be visited without any lookups.
+ *
+ * Connections are identified by their end points, as with {@link Connection3D#equals(Object)}, duplicate
+ * connections share the index of the first one.
+ */
+public final class MeshTopology {
+    final int nodeCount;
+    final int connectionCount;
+    final int triangleCount;
+
+    /**
+     * start of the connections for each node, length nodes + 1.
+     */
+    final int[] nodeOffsets;
+    /**
+     * connection index for each slot.
+     */
+    final int[] slotConnections;
+    /**
+     * the node at the other end of the connection for each slot.
+     */
+    final int[] slotNeighbors;
+
+    /**
+     * start of the connections that share a triangle with each connection, length connections + 1.
+     */
+    final int[] edgeOffsets;
+    final int[] edgeAdjacent;
+
+    /**
+     * For each slot (node n, connection to other), the nodes of the later connections of n that do not share a
+     * triangle with it. Indexed by firstOrderOffsets[slot] to firstOrderOffsets[slot+1]-1.
+     */
+    final int[] firstOrderOffsets;
+    final int[] firstOrder;
+
+    /**
+     * For each slot (node n, connection to other), the far nodes of the connections of other that are neither the
+     * connection itself nor share a triangle with it.
+     */
+    final int[] secondOrderOffsets;
+    final int[] secondOrder;
+
+    private MeshTopology(int nodeCount, int[][] connectionNodes, int[][] triangleNodes){
+        this.nodeCount = nodeCount;
+        connectionCount = connectionNodes.length;
+        triangleCount = triangleNodes.length;
+
+        nodeOffsets = new int[nodeCount + 1];
+        for(int[] c: connectionNodes){
+            nodeOffsets[c[0] + 1]++;
+            nodeOffsets[c[1] + 1]++;
+        }
+        for(int i = 0; i<nodeCount; i++){
+            nodeOffsets[i + 1] += nodeOffsets[i];
+        }
+        int slots = nodeOffsets[nodeCount];
+        slotConnections = new int[slots];
+        slotNeighbors = new int[slots];
+        int[] fill = Arrays.copyOf(nodeOffsets, nodeCount);
+        int[] canonical = new int[connectionCount];
+        for(int i = 0; i<connectionCount; i++){
+            int a = connectionNodes[i][0];
+            int b = connectionNodes[i][1];
+            int existing = findConnection(a, b, fill[a]);
+            canonical[i] = existing < 0 ? i : existing;
+
+            slotConnections[fill[a]] = canonical[i];
+            slotNeighbors[fill[a]++] = b;
+            slotConnections[fill[b]] = canonical[i];
+            slotNeighbors[fill[b]++] = a;
+        }
+
+        //connections sharing a triangle.
+        int[][] adjacent = new int[connectionCount][4];
+        int[] adjacentCounts = new int[connectionCount];
+        for(int[] t: triangleNodes){
+            int ab = findConnection(t[0], t[1], nodeOffsets[t[0] + 1]);
+            int ac = findConnection(t[0], t[2], nodeOffsets[t[0] + 1]);
+            int bc = findConnection(t[1], t[2], nodeOffsets[t[1] + 1]);
+            if(ab < 0 || ac < 0 || bc < 0){
+                throw new RuntimeException("BROKEN ADJACENCY MAP: triangle " + Arrays.toString(t) + " is missing connections");
+            }
+            addAdjacent(adjacent, adjacentCounts, ab, ac);
+            addAdjacent(adjacent, adjacentCounts, ab, bc);
+            addAdjacent(adjacent, adjacentCounts, ac, bc);
+        }
+        edgeOffsets = new int[connectionCount + 1];
+        for(int i = 0; i<connectionCount; i++){
+            edgeOffsets[i + 1] = edgeOffsets[i] + adjacentCounts[i];
+        }
+        edgeAdjacent = new int[edgeOffsets[connectionCount]];
+        for(int i = 0; i<connectionCount; i++){
+            System.arraycopy(adjacent[i], 0, edgeAdjacent, edgeOffsets[i], adjacentCounts[i]);
+        }
+
+        //curvature pairs, counted first then filled.
+        firstOrderOffsets = new int[slots + 1];
+        secondOrderOffsets = new int[slots + 1];
+        int[] counts = curvaturePairs(null, null);
+        firstOrder = new int[counts[0]];
+        secondOrder = new int[counts[1]];
+        curvaturePairs(firstOrder, secondOrder);
+    }
+
+    /**
+     * Visits the curvature terms in the same order as the original map based loops.
+     *
+     * @param first destination of the first order nodes, when null only the offsets are calculated.
+     * @param second destination of the second order nodes.
+     * @return {first order count, second order count}
+     */
+    private int[] curvaturePairs(int[] first, int[] second){
+        int firstCount = 0;
+        int secondCount = 0;
+        for(int n = 0; n<nodeCount; n++){
+            for(int s = nodeOffsets[n]; s<nodeOffsets[n + 1]; s++){
+                int a = slotConnections[s];
+                int other = slotNeighbors[s];
+                for(int t = s + 1; t<nodeOffsets[n + 1]; t++){
+                    if(areAdjacent(a, slotConnections[t])){
+                        continue;
+                    }
+                    if(first != null){
+                        first[firstCount] = slotNeighbors[t];
+                    }
+                    firstCount++;
+                }
+                for(int t = nodeOffsets[other]; t<nodeOffsets[other + 1]; t++){
+                    int con = slotConnections[t];
+                    if(con == a || areAdjacent(a, con)){
+                        continue;
+                    }
+                    if(second != null){
+                        second[secondCount] = slotNeighbors[t];
+                    }
+                    secondCount++;
+                }
+                firstOrderOffsets[s + 1] = firstCount;
+                secondOrderOffsets[s + 1] = secondCount;
+            }
+        }
+        return new int[]{firstCount, secondCount};
+    }
+
+    /**
+     * Creates the topology for the current connections and triangles of a mesh.
+     *
+     * @param mesh source of the connectivity, positions are not used.
+     * @return a new topology.
+     */
+    public static MeshTopology create(DeformableMesh3D mesh){
+        return create(mesh.nodes.size(), mesh.connections, mesh.triangles);
+    }
+
+    public static MeshTopology create(int nodeCount, List<Connection3D> connections, List<Triangle3D> triangles){
+        int[][] cons = new int[connections.size()][];
+        for(int i = 0; i<cons.length; i++){
+            Connection3D c = connections.get(i);
+            cons[i] = new int[]{c.A.index, c.B.index};
+        }
+        int[][] tris = new int[triangles.size()][];
+        for(int i = 0; i<tris.length; i++){
+            tris[i] = triangles.get(i).getIndices();
+        }
+        return new MeshTopology(nodeCount, cons, tris);
+    }
+
+    /**
+     * Finds the first connection between a and b in the slots of a, before end.
+     *
+     * @return connection index or -1.
+     */
+    private int findConnection(int a, int b, int end){
+        for(int s = nodeOffsets[a]; s<end; s++){
+            if(slotNeighbors[s] == b){
+                return slotConnections[s];
+            }
+        }
+        return -1;
+    }
+
+    private static void addAdjacent(int[][] adjacent, int[] counts, int a, int b){
+        add(adjacent, counts, a, b);
+        add(adjacent, counts, b, a);
+    }
+
+    private static void add(int[][] adjacent, int[] counts, int row, int value){
+        int[] values = adjacent[row];
+        for(int i = 0; i<counts[row]; i++){
+            if(values[i] == value){
+                return;
+            }
+        }
+        if(counts[row] == values.length){
+            adjacent[row] = values = Arrays.copyOf(values, 2*values.length);
+        }
+        values[counts[row]++] = value;
+    }
+
+    /**
+     * @return true if the two connections are sides of the same triangle.
+     */
+    public boolean areAdjacent(int connectionA, int connectionB){
+        for(int k = edgeOffsets[connectionA]; k<edgeOffsets[connectionA + 1]; k++){
+            if(edgeAdjacent[k] == connectionB){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that this topology was created from a mesh with the same number of elements, meshes that are modified
+     * in place need a new topology.
+     */
+    public boolean matches(DeformableMesh3D mesh){
+        return mesh.nodes.size() == nodeCount
+                && mesh.connections.size() == connectionCount
+                && mesh.triangles.size() == triangleCount;
+    }
+
+    public int getNodeCount(){
+        return nodeCount;
+    }
+
+    /**
+     * @return number of connections that end on the node.
+     */
+    public int getDegree(int node){
+        return nodeOffsets[node + 1] - nodeOffsets[node];
+    }
+
+    /**
+     * @param node node index.
+     * @param k 0 to degree - 1
+     * @return index of the node at the other end of the kth connection.
+     */
+    public int getNeighbor(int node, int k){
+        return slotNeighbors[nodeOffsets[node] + k];
+    }
+
+    /**
+     * @return approximate number of bytes used.
+     */
+    public long getMemoryUsage(){
+        return 4L*(nodeOffsets.length + slotConnections.length + slotNeighbors.length + edgeOffsets.length
+                + edgeAdjacent.length + firstOrderOffsets.length + firstOrder.length + secondOrderOffsets.length
+                + secondOrder.length);
+    }
+}
@@ -0,0 +1,63 @@
+package deformablemesh.geometry;
+
+/**
+ * Scratch buffers owned by a single mesh, they are reused for every deformation step so that a steady state
+ * update does not allocate. The force arrays are sized to the number of nodes, when the mesh changes size
+ * a new workspace is created by {@link DeformableMesh3D#getWorkspace()}.
+ *
+ * The contents are only valid during a single call, energies cannot keep values between steps and should not
+ * hand the buffers to another thread.
+ */
+public class MeshWorkspace {
+    final static int VECTORS = 8;
+
+    public final double[] fx;
+    public final double[] fy;
+    public final double[] fz;
+    /**
+     * interleaved x,y,z, the same layout as the mesh positions.
+     */
+    public final double[] solution;
+
+    private final double[][] vectors;
+    private double[] scratch = new double[0];
+
+    /**
+     * @param nodes number of nodes in the mesh, zero creates a workspace that only has the small vectors.
+     */
+    public MeshWorkspace(int nodes){
+        fx = new double[nodes];
+        fy = new double[nodes];
+        fz = new double[nodes];
+        solution = new double[3*nodes];
+        vectors = new double[VECTORS][3];
+    }
+
+    public int getNodeCount(){
+        return fx.length;
+    }
+
+    /**
+     * Three element vectors for use while calculating forces, eg a point and a normal. Each slot is a distinct
+     * array.
+     *
+     * @param slot 0 to 7
+     * @return the reusable vector for the slot, the contents are left over from the last use.
+     */
+    public double[] getVector(int slot){
+        return vectors[slot];
+    }
+
+    /**
+     * A larger buffer that grows as needed.
+     *
+     * @param length minimum length.
+     * @return an array of at least length values, the contents are left over from the last use.
+     */
+    public double[] getScratch(int length){
+        if(scratch.length < length){
+            scratch = new double[length];
+        }
+        return scratch;
+    }
+}
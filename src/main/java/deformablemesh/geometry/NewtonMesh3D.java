@@ -1,12 +1,7 @@
 package deformablemesh.geometry;
 
-import deformablemesh.externalenergies.ExternalEnergy;
-import deformablemesh.util.Vector3DOps;
-
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * Created by msmith on 3/4/16.
@@ -23,94 +18,116 @@ public class NewtonMesh3D extends DeformableMesh3D {
         super(mesh.positions, mesh.connection_index, mesh.triangle_index);
     }
 
-    private Map<Node3D, List<Connection3D>> noder;
-    private Map<Connection3D, Set<Connection3D>> conner;
+    /**
+     * There is no stiffness matrix, only the topology used by the curvature terms is prepared.
+     */
     @Override
     public void reshape(){
-        noder = getCurvatureMap();
-        conner = getAdjacencyMap(noder);
+        getTopology();
     }
 
     @Override
     public void update(){
-        if(decomp==null){
-            reshape();
-        }
-
-        final double[] fx = new double[nodes.size()];
-        final double[] fy = new double[nodes.size()];
-        final double[] fz = new double[nodes.size()];
-
-        for(ExternalEnergy external: energies) {
-            external.updateForces(positions, fx, fy, fz);
+        //the topology is cleared whenever the connections or triangles are synchronized.
+        MeshTopology topology = getTopology();
+
+        //the workspace is kept between steps, so updating does not allocate.
+        final MeshWorkspace work = getWorkspace();
+        final double[] fx = work.fx;
+        final double[] fy = work.fy;
+        final double[] fz = work.fz;
+        Arrays.fill(fx, 0);
+        Arrays.fill(fy, 0);
+        Arrays.fill(fz, 0);
+
+        for(int i = 0; i<energies.size(); i++) {
+            energies.get(i).updateForces(positions, fx, fy, fz, work);
         }
         if(ALPHA!=0) {
-            for (Connection3D c : connections) {
-
-                double[] r = Vector3DOps.difference(c.A.getCoordinates(), c.B.getCoordinates());
-                double l = Vector3DOps.normalize(r);
+            for(int i = 0; i<connections.size(); i++){
+                Connection3D c = connections.get(i);
+                int a = c.A.index;
+                int b = c.B.index;
+                double rx = positions[3*a] - positions[3*b];
+                double ry = positions[3*a + 1] - positions[3*b + 1];
+                double rz = positions[3*a + 2] - positions[3*b + 2];
+                double l = Math.sqrt(rx*rx + ry*ry + rz*rz);
                 if (l == 0) {
                     continue;
                 }
+                rx /= l;
+                ry /= l;
+                rz /= l;
 
                 //node A
-                fx[c.A.index] += -l * ALPHA * r[0];
-                fy[c.A.index] += -l * ALPHA * r[1];
-                fz[c.A.index] += -l * ALPHA * r[2];
+                fx[a] += -l * ALPHA * rx;
+                fy[a] += -l * ALPHA * ry;
+                fz[a] += -l * ALPHA * rz;
 
                 //node B
-                fx[c.B.index] += l * ALPHA * r[0];
-                fy[c.B.index] += l * ALPHA * r[1];
-                fz[c.B.index] += l * ALPHA * r[2];
+                fx[b] += l * ALPHA * rx;
+                fy[b] += l * ALPHA * ry;
+                fz[b] += l * ALPHA * rz;
 
 
             }
         }
 
         if(BETA!=0){
-            for(Node3D n: nodes){
-                List<Connection3D> cons = noder.get(n);
-                for(int i = 0; i<cons.size(); i++){
-                    Connection3D a = cons.get(i);
-                    Node3D other = a.A.equals(n)?a.B:a.A;
-                    Set<Connection3D> adjacent = conner.get(a);
-                    for(int j = i+1; j<cons.size(); j++){
+            int[] nodeOffsets = topology.nodeOffsets;
+            int[] neighbors = topology.slotNeighbors;
+            int[] pairOffsets = topology.firstOrderOffsets;
+            int[] pairs = topology.firstOrder;
+            for(int n = 0; n<topology.nodeCount; n++){
+                double nx = positions[3*n];
+                double ny = positions[3*n + 1];
+                double nz = positions[3*n + 2];
+                for(int slot = nodeOffsets[n]; slot<nodeOffsets[n+1]; slot++){
+                    int other = neighbors[slot];
+                    double s1x = nx - positions[3*other];
+                    double s1y = ny - positions[3*other + 1];
+                    double s1z = nz - positions[3*other + 2];
+                    double l1 = Math.sqrt(s1x*s1x + s1y*s1y + s1z*s1z);
+                    s1x /= l1; s1y /= l1; s1z /= l1;
+
+                    for(int k = pairOffsets[slot]; k<pairOffsets[slot+1]; k++){
                         //pairs of first order connections.
-                        Connection3D b = cons.get(j);
-                        if(adjacent.contains(b)){
-                            continue;
-                        }
-                        Node3D another = b.A.equals(n)?b.B:b.A;
-                        double[] s1 = Vector3DOps.difference(n.getCoordinates(), other.getCoordinates());
-                        double l1 = Vector3DOps.normalize(s1);
-
-                        double[] s2 = Vector3DOps.difference(another.getCoordinates(), n.getCoordinates());
-                        double l2 = Vector3DOps.normalize(s2);
+                        int another = pairs[k];
+                        double s2x = positions[3*another] - nx;
+                        double s2y = positions[3*another + 1] - ny;
+                        double s2z = positions[3*another + 2] - nz;
+                        double l2 = Math.sqrt(s2x*s2x + s2y*s2y + s2z*s2z);
+                        s2x /= l2; s2y /= l2; s2z /= l2;
 
                         if(l1==0||l2==0){
                             continue;
                         }
 
-                        double[] sum = Vector3DOps.add(s2, s1, 1);
-                        double dot = Vector3DOps.dot(s1, s2);
+                        double dot = s1x*s2x + s1y*s2y + s1z*s2z;
                         if(dot+1==0){
                             continue;
                         }
-                            double factor = 0.5*(dot - 1)/(dot+1);
+                        double factor = 0.5*(dot - 1)/(dot+1);
+
+                        double sumX = s2x + s1x;
+                        double sumY = s2y + s1y;
+                        double sumZ = s2z + s1z;
 
-                        double[] delta = Vector3DOps.difference(s2, s1);
+                        double deltaX = s2x - s1x;
+                        double deltaY = s2y - s1y;
+                        double deltaZ = s2z - s1z;
 
-                        fx[n.index] += BETA*delta[0];
-                        fy[n.index] += BETA*delta[1];
-                        fz[n.index] += BETA*delta[2];
+                        fx[n] += BETA*deltaX;
+                        fy[n] += BETA*deltaY;
+                        fz[n] += BETA*deltaZ;
 
-                        fx[other.index] += BETA*(sum[0]*factor - 0.5*delta[0]);
-                        fy[other.index] += BETA*(sum[1]*factor - 0.5*delta[1]);
-                        fz[other.index] += BETA*(sum[2]*factor - 0.5*delta[2]);
+                        fx[other] += BETA*(sumX*factor - 0.5*deltaX);
+                        fy[other] += BETA*(sumY*factor - 0.5*deltaY);
+                        fz[other] += BETA*(sumZ*factor - 0.5*deltaZ);
 
-                        fx[another.index] -= BETA*(sum[0]*factor + 0.5*delta[0]);
-                        fy[another.index] -= BETA*(sum[1]*factor + 0.5*delta[1]);
-                        fz[another.index] -= BETA*(sum[2]*factor + 0.5*delta[2]);
+                        fx[another] -= BETA*(sumX*factor + 0.5*deltaX);
+                        fy[another] -= BETA*(sumY*factor + 0.5*deltaY);
+                        fz[another] -= BETA*(sumZ*factor + 0.5*deltaZ);
 
                     }
 
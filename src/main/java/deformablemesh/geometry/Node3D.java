@@ -36,6 +36,21 @@ public class Node3D {
         return new double[]{positions[3*index], positions[3*index+1], positions[3*index+2]};
     }
 
+    /**
+     * Copies the position of this node without creating a new array.
+     *
+     * @param pt at least length 3, x,y,z will be written to the first 3 elements.
+     */
+    public void getCoordinates(double[] pt){
+        pt[0] = positions[3*index];
+        pt[1] = positions[3*index+1];
+        pt[2] = positions[3*index+2];
+    }
+
+    double getCoordinate(int axis){
+        return positions[3*index + axis];
+    }
+
     /**
      * Updates the array backing this position.
      *
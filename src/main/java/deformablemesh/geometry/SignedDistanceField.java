@@ -0,0 +1,340 @@
+package deformablemesh.geometry;
+
+import deformablemesh.util.MeshVoxelizer;
+import deformablemesh.util.SpanVolume;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A narrow band signed distance field of a mesh, sampled on an isotropic grid that covers the bounding box of the mesh
+ * plus the band. Grid points within the band of the surface have the exact distance to the nearest triangle, points
+ * further away are clamped to the width of the band. Distances are negative inside of the mesh, the inside is
+ * determined by voxelizing the mesh on the same grid.
+ *
+ * Lookups are trilinear, so the distance and its gradient can be evaluated anywhere, points outside of the grid are
+ * outside of the band. The field is only rebuilt when a node of the mesh has moved more than one grid spacing since the
+ * last build, or the mesh has been remeshed.
+ */
+public class SignedDistanceField {
+    /**
+     * Width of the band in grid spacings.
+     */
+    final static int BAND = 4;
+    final DeformableMesh3D mesh;
+    final double spacing;
+    final double band;
+    /**
+     * The current grid, replaced as a whole when the field is rebuilt so lookups never see a partially built grid.
+     */
+    volatile Grid grid;
+    double[] builtPositions;
+    int builds = 0;
+
+    static final class Grid{
+        final double[] origin;
+        final int nx, ny, nz;
+        final float[] distances;
+
+        Grid(double[] origin, int nx, int ny, int nz, float[] distances){
+            this.origin = origin;
+            this.nx = nx;
+            this.ny = ny;
+            this.nz = nz;
+            this.distances = distances;
+        }
+    }
+
+    /**
+     * Creates and builds the distance field.
+     *
+     * @param mesh mesh that the distance is measured to, it is not copied, changes are picked up by {@link #update()}
+     * @param spacing distance between grid points in normalized units.
+     */
+    public SignedDistanceField(DeformableMesh3D mesh, double spacing){
+        if(spacing <= 0){
+            throw new IllegalArgumentException("Grid spacing must be positive: " + spacing);
+        }
+        this.mesh = mesh;
+        this.spacing = spacing;
+        band = BAND*spacing;
+        build();
+    }
+
+    /**
+     * Rebuilds the field if the mesh has moved further than the tolerance since it was last built.
+     *
+     * @return true if the field was rebuilt.
+     */
+    public synchronized boolean update(){
+        if(moved()){
+            build();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean moved(){
+        double[] positions = mesh.positions;
+        if(positions.length != builtPositions.length){
+            return true;
+        }
+        double tolerance = spacing*spacing;
+        for(int i = 0; i<positions.length; i+=3){
+            double dx = positions[i] - builtPositions[i];
+            double dy = positions[i + 1] - builtPositions[i + 1];
+            double dz = positions[i + 2] - builtPositions[i + 2];
+            if(dx*dx + dy*dy + dz*dz > tolerance){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void build(){
+        builtPositions = mesh.positions.clone();
+        Box3D box = mesh.getBoundingBox();
+        double[] origin = {box.low[0] - band, box.low[1] - band, box.low[2] - band};
+        int nx = (int)Math.ceil((box.high[0] - box.low[0])/spacing) + 2*BAND + 1;
+        int ny = (int)Math.ceil((box.high[1] - box.low[1])/spacing) + 2*BAND + 1;
+        int nz = (int)Math.ceil((box.high[2] - box.low[2])/spacing) + 2*BAND + 1;
+
+        SpanVolume inside = new MeshVoxelizer(mesh, origin, spacing, nx, ny, nz).getSpanVolume();
+        float[] field = new float[nx*ny*nz];
+        Arrays.fill(field, (float)band);
+        inside.forEachSpan((z, y, x0, x1) -> {
+            int offset = (z*ny + y)*nx;
+            Arrays.fill(field, offset + x0, offset + x1, (float)-band);
+        });
+
+        int triangles = mesh.triangle_index.length/3;
+        double[] vertices = new double[9*triangles];
+        for(int t = 0; t<triangles; t++){
+            for(int k = 0; k<3; k++){
+                System.arraycopy(mesh.positions, 3*mesh.triangle_index[3*t + k], vertices, 9*t + 3*k, 3);
+            }
+        }
+
+        //bin the triangles by the slices within the band of them, sliceTriangles[sliceOffsets[z]] onwards.
+        int[] sliceOffsets = new int[nz + 1];
+        for(int t = 0; t<triangles; t++){
+            int high = highIndex(vertices, 9*t, origin, 2, nz);
+            for(int z = lowIndex(vertices, 9*t, origin, 2); z<=high; z++){
+                sliceOffsets[z + 1]++;
+            }
+        }
+        for(int z = 0; z<nz; z++){
+            sliceOffsets[z + 1] += sliceOffsets[z];
+        }
+        int[] sliceTriangles = new int[sliceOffsets[nz]];
+        int[] fill = Arrays.copyOf(sliceOffsets, nz);
+        for(int t = 0; t<triangles; t++){
+            int high = highIndex(vertices, 9*t, origin, 2, nz);
+            for(int z = lowIndex(vertices, 9*t, origin, 2); z<=high; z++){
+                sliceTriangles[fill[z]++] = t;
+            }
+        }
+
+        //each slice is only written by one thread.
+        IntStream.range(0, nz).parallel().forEach(z -> {
+            double[] pt = new double[3];
+            pt[2] = origin[2] + z*spacing;
+            for(int i = sliceOffsets[z]; i<sliceOffsets[z + 1]; i++){
+                int o = 9*sliceTriangles[i];
+                int y1 = highIndex(vertices, o, origin, 1, ny);
+                int x0 = lowIndex(vertices, o, origin, 0);
+                int x1 = highIndex(vertices, o, origin, 0, nx);
+                for(int y = lowIndex(vertices, o, origin, 1); y<=y1; y++){
+                    pt[1] = origin[1] + y*spacing;
+                    int offset = (z*ny + y)*nx;
+                    for(int x = x0; x<=x1; x++){
+                        pt[0] = origin[0] + x*spacing;
+                        float current = field[offset + x];
+                        double d2 = distanceSquared(pt, vertices, o);
+                        if(d2 < current*current){
+                            float d = (float)Math.sqrt(d2);
+                            field[offset + x] = current < 0 ? -d : d;
+                        }
+                    }
+                }
+            }
+        });
+        grid = new Grid(origin, nx, ny, nz, field);
+        builds++;
+    }
+
+    /**
+     * The first grid point along an axis that is within the band of the triangle.
+     *
+     * @param o offset of the triangle, 9 values.
+     */
+    private int lowIndex(double[] vertices, int o, double[] origin, int axis){
+        double low = Math.min(vertices[o + axis], Math.min(vertices[o + 3 + axis], vertices[o + 6 + axis]));
+        return Math.max(0, (int)Math.ceil((low - band - origin[axis])/spacing));
+    }
+
+    /**
+     * The last grid point along an axis that is within the band of the triangle, inclusive.
+     *
+     * @param o offset of the triangle, 9 values.
+     */
+    private int highIndex(double[] vertices, int o, double[] origin, int axis, int size){
+        double high = Math.max(vertices[o + axis], Math.max(vertices[o + 3 + axis], vertices[o + 6 + axis]));
+        return Math.min(size - 1, (int)Math.floor((high + band - origin[axis])/spacing));
+    }
+
+    /**
+     * Squared distance from a point to the closest point on a triangle, by finding which Voronoi region of the
+     * triangle the point is in.
+     *
+     * @param p point
+     * @param v array of vertex coordinates.
+     * @param o offset of the triangle, 9 values.
+     */
+    static double distanceSquared(double[] p, double[] v, int o){
+        double ax = v[o], ay = v[o + 1], az = v[o + 2];
+        double abx = v[o + 3] - ax, aby = v[o + 4] - ay, abz = v[o + 5] - az;
+        double acx = v[o + 6] - ax, acy = v[o + 7] - ay, acz = v[o + 8] - az;
+        double apx = p[0] - ax, apy = p[1] - ay, apz = p[2] - az;
+
+        double d1 = abx*apx + aby*apy + abz*apz;
+        double d2 = acx*apx + acy*apy + acz*apz;
+        double s, t;
+        if(d1 <= 0 && d2 <= 0){
+            s = 0;
+            t = 0;
+        } else{
+            double bpx = p[0] - v[o + 3], bpy = p[1] - v[o + 4], bpz = p[2] - v[o + 5];
+            double d3 = abx*bpx + aby*bpy + abz*bpz;
+            double d4 = acx*bpx + acy*bpy + acz*bpz;
+            double cpx = p[0] - v[o + 6], cpy = p[1] - v[o + 7], cpz = p[2] - v[o + 8];
+            double d5 = abx*cpx + aby*cpy + abz*cpz;
+            double d6 = acx*cpx + acy*cpy + acz*cpz;
+            double vc = d1*d4 - d3*d2;
+            double vb = d5*d2 - d1*d6;
+            double va = d3*d6 - d5*d4;
+            if(d3 >= 0 && d4 <= d3){
+                s = 1;
+                t = 0;
+            } else if(d6 >= 0 && d5 <= d6){
+                s = 0;
+                t = 1;
+            } else if(vc <= 0 && d1 >= 0 && d3 <= 0){
+                s = d1/(d1 - d3);
+                t = 0;
+            } else if(vb <= 0 && d2 >= 0 && d6 <= 0){
+                s = 0;
+                t = d2/(d2 - d6);
+            } else if(va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0){
+                t = (d4 - d3)/((d4 - d3) + (d5 - d6));
+                s = 1 - t;
+            } else{
+                double denom = 1/(va + vb + vc);
+                s = vb*denom;
+                t = vc*denom;
+            }
+        }
+        double dx = apx - s*abx - t*acx;
+        double dy = apy - s*aby - t*acy;
+        double dz = apz - s*abz - t*acz;
+        return dx*dx + dy*dy + dz*dz;
+    }
+
+    /**
+     * @param pt normalized coordinates.
+     * @return the interpolated signed distance, negative inside of the mesh.
+     */
+    public double getDistance(double[] pt){
+        return getDistance(pt, null);
+    }
+
+    /**
+     * Trilinear interpolation of the distance and its gradient. Points outside of the grid are at the edge of the band
+     * and have no gradient.
+     *
+     * @param pt normalized coordinates.
+     * @param gradient null, or an array that the gradient of the interpolated distance is written to.
+     * @return the signed distance, negative inside of the mesh.
+     */
+    public double getDistance(double[] pt, double[] gradient){
+        //a concurrent rebuild replaces the grid, this lookup keeps using the one it started with.
+        Grid g = grid;
+        float[] field = g.distances;
+        double[] o = g.origin;
+        int sx = g.nx;
+        int sy = g.ny;
+        int sz = g.nz;
+        double gx = (pt[0] - o[0])/spacing;
+        double gy = (pt[1] - o[1])/spacing;
+        double gz = (pt[2] - o[2])/spacing;
+        if(!(gx >= 0 && gy >= 0 && gz >= 0 && gx <= sx - 1 && gy <= sy - 1 && gz <= sz - 1)){
+            if(gradient != null){
+                gradient[0] = 0;
+                gradient[1] = 0;
+                gradient[2] = 0;
+            }
+            return band;
+        }
+        int x = Math.min((int)gx, sx - 2);
+        int y = Math.min((int)gy, sy - 2);
+        int z = Math.min((int)gz, sz - 2);
+        double fx = gx - x;
+        double fy = gy - y;
+        double fz = gz - z;
+
+        int i000 = (z*sy + y)*sx + x;
+        int i010 = i000 + sx;
+        int i001 = i000 + sx*sy;
+        int i011 = i001 + sx;
+        double c000 = field[i000], c100 = field[i000 + 1];
+        double c010 = field[i010], c110 = field[i010 + 1];
+        double c001 = field[i001], c101 = field[i001 + 1];
+        double c011 = field[i011], c111 = field[i011 + 1];
+
+        double c00 = c000 + fx*(c100 - c000);
+        double c10 = c010 + fx*(c110 - c010);
+        double c01 = c001 + fx*(c101 - c001);
+        double c11 = c011 + fx*(c111 - c011);
+        double c0 = c00 + fy*(c10 - c00);
+        double c1 = c01 + fy*(c11 - c01);
+
+        if(gradient != null){
+            double dx00 = c100 - c000;
+            double dx10 = c110 - c010;
+            double dx01 = c101 - c001;
+            double dx11 = c111 - c011;
+            double dx0 = dx00 + fy*(dx10 - dx00);
+            double dx1 = dx01 + fy*(dx11 - dx01);
+            gradient[0] = (dx0 + fz*(dx1 - dx0))/spacing;
+            gradient[1] = ((c10 - c00) + fz*((c11 - c01) - (c10 - c00)))/spacing;
+            gradient[2] = (c1 - c0)/spacing;
+        }
+
+        return c0 + fz*(c1 - c0);
+    }
+
+    /**
+     * @return true if the interpolated distance is negative.
+     */
+    public boolean contains(double[] pt){
+        return getDistance(pt) < 0;
+    }
+
+    /**
+     * @return distance that points outside of the band are clamped to.
+     */
+    public double getBand(){
+        return band;
+    }
+
+    public double getSpacing(){
+        return spacing;
+    }
+
+    /**
+     * @return the number of times the field has been built.
+     */
+    public int getBuildCount(){
+        return builds;
+    }
+}
@@ -30,27 +30,28 @@ public class Triangle3D {
     //cacluates the area the normal and the center.
     final static double one_third = 1.0/3.0;
     public void update(){
-        //calculate area
-        double[] a = A.getCoordinates();
-        double[] b = B.getCoordinates();
-        double[] c = C.getCoordinates();
-
-        double[] ab = new double[3];
-        double[] ac = new double[3];
-        for(int i = 0; i<3; i++){
-            ab[i] = b[i] - a[i];
-            ac[i] = c[i] - a[i];
-        }
+        //calculate area, reads the backing positions directly to avoid creating arrays.
+        double ax = A.getCoordinate(0);
+        double ay = A.getCoordinate(1);
+        double az = A.getCoordinate(2);
+
+        double abx = B.getCoordinate(0) - ax;
+        double aby = B.getCoordinate(1) - ay;
+        double abz = B.getCoordinate(2) - az;
+
+        double acx = C.getCoordinate(0) - ax;
+        double acy = C.getCoordinate(1) - ay;
+        double acz = C.getCoordinate(2) - az;
 
-        normal[0] = (ab[1]*ac[2] - ab[2]*ac[1]);
-        normal[1] = (ab[2]*ac[0] - ab[0]*ac[2]);
-        normal[2] = (ab[0]*ac[1] - ab[1]*ac[0]);
+        normal[0] = (aby*acz - abz*acy);
+        normal[1] = (abz*acx - abx*acz);
+        normal[2] = (abx*acy - aby*acx);
 
         area = 0.5*Math.sqrt(normal[0]*normal[0] + normal[1]*normal[1] + normal[2]*normal[2]);
         if(area>0){
             for(int i = 0; i<3; i++){
                 normal[i] = normal[i]/area;
-                center[i] = (a[i] + b[i] + c[i])*one_third;
+                center[i] = (A.getCoordinate(i) + B.getCoordinate(i) + C.getCoordinate(i))*one_third;
             }
         }
 
@@ -1,5 +1,6 @@
 package deformablemesh.gui;
 
+import deformablemesh.IntensityStatistics;
 import ij.process.ImageProcessor;
 
 import javax.swing.JPanel;
@@ -143,32 +144,12 @@ class Histogram{
         bins = new int[nBins];
         values = new double[nBins];
 
-        minValue = Double.MAX_VALUE;
-        maxValue = -Double.MAX_VALUE;
-        final int w = proc.getWidth();
-        final int h = proc.getHeight();
-        for(int i = 0; i<w*h; i++){
-            float v = proc.getf(i);
-            if(v<minValue) minValue = v;
-            if(v> maxValue) maxValue = v;
-
-        }
-
+        IntensityStatistics stats = IntensityStatistics.compute(proc, nBins);
+        minValue = stats.getMin();
+        maxValue = stats.getMax();
         for(int i = 0; i<bins.length; i++){
-            bins[i] = 0;
-            values[i] = minValue + (i + 0.5)*(maxValue -minValue)/bins.length;
-        }
-
-        double range = nBins/(maxValue - minValue);
-        int maxBin = 0;
-        for(int i = 0; i<w*h; i++){
-            float v = proc.getf(i);
-            int dex = (int)((v - minValue)*range);
-            dex = dex>nBins-1?nBins-1:dex;
-            bins[dex]++;
-            if(bins[dex]>maxBin){
-                maxBin=bins[dex];
-            }
+            bins[i] = (int)stats.getBin(i);
+            values[i] = stats.getBinCenter(i);
         }
 
     }
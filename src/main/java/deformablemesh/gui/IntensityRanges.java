@@ -1,5 +1,7 @@
 package deformablemesh.gui;
 
+import deformablemesh.IntensityStatistics;
+import deformablemesh.MeshImageStack;
 import ij.ImageStack;
 import ij.process.ImageProcessor;
 
@@ -14,6 +16,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class IntensityRanges {
+    final static int BINS = 120;
     private final Histogram histogram;
     HistogramPanel panel;
     double lowIntensity = 0;
@@ -25,7 +28,21 @@ public class IntensityRanges {
     }
 
     public IntensityRanges(double[][][] intensityValues){
-        histogram = new Histogram(intensityValues);
+        this(IntensityStatistics.compute(intensityValues, BINS, 1));
+    }
+
+    /**
+     * Uses the statistics of the current frame and channel, which the stack keeps so showing the dialog again does
+     * not scan the frame again.
+     *
+     * @param stack source of the values.
+     */
+    public IntensityRanges(MeshImageStack stack){
+        this(stack.getStatistics(BINS, 1));
+    }
+
+    public IntensityRanges(IntensityStatistics stats){
+        histogram = new Histogram(stats);
         panel = new HistogramPanel(histogram);
     }
 
@@ -103,48 +120,20 @@ public class IntensityRanges {
         double minValue, maxValue;
         final int[] bins; //elements per bin.
         final double[] values; //value per bin
-        final double[][][] backingValues; //full values represented by histogram.
         double binMax = 0;
 
-        public Histogram(double[][][] inputValues){
-            this(120, inputValues);
-        }
-
-        public Histogram(int nBins, double[][][] inputValues){
+        public Histogram(IntensityStatistics stats){
+            int nBins = stats.getNBins();
             bins = new int[nBins];
             values = new double[nBins];
-            backingValues = inputValues;
-
-            minValue = Double.MAX_VALUE;
-            maxValue = -Double.MAX_VALUE;
-            for(double[][] slice: backingValues) {
-                for(double[] row: slice) {
-                    for (double v : row) {
-                        minValue = v < minValue ? v : minValue;
-                        maxValue = v > maxValue ? v : maxValue;
-                    }
-                }
-            }
 
+            minValue = stats.getMin();
+            maxValue = stats.getMax();
             for(int i = 0; i<bins.length; i++){
-                //bins[i] = 0;
-                values[i] = minValue + (i + 0.5)*(maxValue - minValue)/bins.length;
-            }
-
-            double range = nBins/(maxValue - minValue);
-
-            for(double[][] slice: backingValues) {
-                for(double[] row: slice) {
-                    for (double v : row) {
-                        int dex = (int) ((v - minValue) * range);
-                        dex = dex >= bins.length ? bins.length - 1 : dex;
-                        int bin = ++bins[dex];
-                        if (bin > binMax) {
-                            binMax = bin;
-                        }
-                    }
-                }
+                values[i] = stats.getBinCenter(i);
+                bins[i] = (int)stats.getBin(i);
             }
+            binMax = stats.getMaxBin();
 
             System.out.println(binMax + " of bins, from " + minValue + " to " + maxValue);
             lowIntensity = 0.1*(maxValue - minValue) + minValue;
@@ -0,0 +1,245 @@
+package deformablemesh.io;
+
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A time series that stays on disk. Each frame is memory mapped from raw or uncompressed tiff files when it is
+ * requested, so series that are much larger than the heap, or the available memory, can be segmented one frame at
+ * a time. Only a single channel is used.
+ *
+ * A file can hold one or more complete frames, the frames of all of the files are concatenated in order.
+ */
+public class MappedFrames {
+    final int width;
+    final int height;
+    final int depth;
+    final int fileType;
+    final ByteOrder order;
+    final double[] pixelDimensions;
+    final String unit;
+    final List<File> frameFiles = new ArrayList<>();
+    /**
+     * byte offset of each slice, for each frame.
+     */
+    final List<long[]> frameOffsets = new ArrayList<>();
+
+    private MappedFrames(int width, int height, int depth, int fileType, boolean littleEndian, double[] pixelDimensions, String unit){
+        if(fileType != FileInfo.GRAY8 && fileType != FileInfo.GRAY16_UNSIGNED
+                && fileType != FileInfo.GRAY16_SIGNED && fileType != FileInfo.GRAY32_FLOAT){
+            throw new IllegalArgumentException("Only 8 bit, 16 bit and 32 bit float images can be mapped.");
+        }
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.fileType = fileType;
+        this.order = littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        this.pixelDimensions = pixelDimensions.clone();
+        this.unit = unit;
+    }
+
+    static int bytesPerPixel(int fileType){
+        switch(fileType){
+            case FileInfo.GRAY8:
+                return 1;
+            case FileInfo.GRAY16_SIGNED:
+            case FileInfo.GRAY16_UNSIGNED:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    long getSliceBytes(){
+        return (long)width*height*bytesPerPixel(fileType);
+    }
+
+    /**
+     * Opens raw files, each file is a header followed by whole frames of contiguous slices.
+     *
+     * @param files files in time order.
+     * @param width pixels along x.
+     * @param height pixels along y.
+     * @param depth slices per frame.
+     * @param fileType one of FileInfo.GRAY8, GRAY16_UNSIGNED, GRAY16_SIGNED or GRAY32_FLOAT
+     * @param littleEndian byte order of multibyte values.
+     * @param headerBytes bytes skipped at the start of each file.
+     * @param pixelDimensions calibrated size of a voxel, x, y, z.
+     * @param unit unit of the pixel dimensions.
+     * @return frames ready to be mapped.
+     * @throws IOException if a file cannot be read.
+     */
+    public static MappedFrames openRaw(List<File> files, int width, int height, int depth, int fileType,
+                                       boolean littleEndian, long headerBytes, double[] pixelDimensions, String unit) throws IOException {
+        MappedFrames frames = new MappedFrames(width, height, depth, fileType, littleEndian, pixelDimensions, unit);
+        long sliceBytes = frames.getSliceBytes();
+        long frameBytes = sliceBytes*depth;
+        for(File file: files){
+            if(!file.canRead()){
+                throw new IOException("Cannot read: " + file);
+            }
+            long count = (file.length() - headerBytes)/frameBytes;
+            if(count < 1){
+                throw new IOException(file + " does not contain a complete frame.");
+            }
+            for(int f = 0; f<count; f++){
+                long[] offsets = new long[depth];
+                for(int z = 0; z<depth; z++){
+                    offsets[z] = headerBytes + f*frameBytes + z*sliceBytes;
+                }
+                frames.add(file, offsets);
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Opens uncompressed tiff files. ImageJ hyperstacks are split into frames using the slices, frames and
+     * channels from the image description, other files are treated as one frame per file. The calibration is taken
+     * from the first file.
+     *
+     * @param files files in time order.
+     * @param channel channel to use, 0 based.
+     * @return frames ready to be mapped.
+     * @throws IOException if a file cannot be read, is compressed, or does not match the first file.
+     */
+    public static MappedFrames openTiff(List<File> files, int channel) throws IOException {
+        MappedFrames frames = null;
+        for(File file: files){
+            FileInfo[] infos = new TiffDecoder(file.getParent() + File.separator, file.getName()).getTiffInfo();
+            if(infos == null || infos.length == 0){
+                throw new IOException("Not a tiff file: " + file);
+            }
+            FileInfo first = infos[0];
+            if(first.compression > FileInfo.COMPRESSION_NONE){
+                throw new IOException("Compressed tiff files cannot be mapped: " + file);
+            }
+
+            List<Long> sliceOffsets = new ArrayList<>();
+            if(infos.length == 1 && first.nImages > 1){
+                //ImageJ stack, the images are stored one after another.
+                long sliceBytes = (long)first.width*first.height*bytesPerPixel(first.fileType);
+                for(int i = 0; i<first.nImages; i++){
+                    sliceOffsets.add(first.getOffset() + i*(sliceBytes + first.gapBetweenImages));
+                }
+            } else{
+                for(FileInfo info: infos){
+                    if(info.compression > FileInfo.COMPRESSION_NONE){
+                        throw new IOException("Compressed tiff files cannot be mapped: " + file);
+                    }
+                    sliceOffsets.add(info.getOffset());
+                }
+            }
+
+            int channels = getDescriptionValue(first.description, "channels", 1);
+            int slices = getDescriptionValue(first.description, "slices", sliceOffsets.size()/channels);
+            if(channel >= channels){
+                throw new IOException(file + " has " + channels + " channels, channel " + channel + " requested.");
+            }
+
+            if(frames == null){
+                double[] dimensions = {first.pixelWidth, first.pixelHeight, first.pixelDepth};
+                String unit = first.unit == null ? "pixel" : first.unit;
+                frames = new MappedFrames(first.width, first.height, slices, first.fileType, first.intelByteOrder, dimensions, unit);
+            } else if(first.width != frames.width || first.height != frames.height || slices != frames.depth
+                    || first.fileType != frames.fileType){
+                throw new IOException(file + " does not have the same dimensions or type as the first file.");
+            }
+
+            int count = sliceOffsets.size()/(slices*channels);
+            for(int f = 0; f<count; f++){
+                long[] offsets = new long[slices];
+                for(int z = 0; z<slices; z++){
+                    offsets[z] = sliceOffsets.get((f*slices + z)*channels + channel);
+                }
+                frames.add(file, offsets);
+            }
+        }
+        if(frames == null){
+            throw new IOException("No files provided.");
+        }
+        return frames;
+    }
+
+    /**
+     * Reads an integer from an ImageJ image description, eg "slices=10".
+     */
+    static int getDescriptionValue(String description, String key, int defaultValue){
+        if(description == null){
+            return defaultValue;
+        }
+        for(String line: description.split("\n")){
+            if(line.startsWith(key + "=")){
+                try{
+                    return Integer.parseInt(line.substring(key.length() + 1).trim());
+                } catch(NumberFormatException e){
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private void add(File file, long[] offsets){
+        frameFiles.add(file);
+        frameOffsets.add(offsets);
+    }
+
+    /**
+     * Maps the slices of a frame. The returned volume holds the mappings, they are released when it is garbage
+     * collected.
+     *
+     * @param frame 0 based frame index.
+     * @return a volume that reads from the file.
+     */
+    public MappedVolume map(int frame){
+        File file = frameFiles.get(frame);
+        long[] offsets = frameOffsets.get(frame);
+        long sliceBytes = getSliceBytes();
+        ByteBuffer[] slices = new ByteBuffer[depth];
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            for(int z = 0; z<depth; z++){
+                slices[z] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[z], sliceBytes).order(order);
+            }
+        } catch(IOException e){
+            throw new RuntimeException("Could not map frame " + frame + " from " + file, e);
+        }
+        return new MappedVolume(width, height, fileType, slices);
+    }
+
+    public int getNFrames(){
+        return frameFiles.size();
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getNSlices(){
+        return depth;
+    }
+
+    /**
+     * @return calibrated voxel size, x, y, z.
+     */
+    public double[] getPixelDimensions(){
+        return pixelDimensions.clone();
+    }
+
+    public String getUnits(){
+        return unit;
+    }
+}
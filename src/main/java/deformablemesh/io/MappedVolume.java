@@ -0,0 +1,60 @@
+package deformablemesh.io;
+
+import ij.io.FileInfo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single frame of voxels that are read from memory mapped file regions. Nothing is copied onto the heap, the
+ * operating system pages the data in as it is read and can drop it again when memory is needed.
+ *
+ * Values are the raw stored values, 16 bit signed values are not offset like ImageJ does.
+ */
+public final class MappedVolume {
+    final int width;
+    final int height;
+    final int depth;
+    final int fileType;
+    final ByteBuffer[] slices;
+
+    MappedVolume(int width, int height, int fileType, ByteBuffer[] slices){
+        this.width = width;
+        this.height = height;
+        this.depth = slices.length;
+        this.fileType = fileType;
+        this.slices = slices;
+    }
+
+    /**
+     * @param x 0 to width - 1
+     * @param y 0 to height - 1
+     * @param z 0 to depth - 1, no bounds checking is done beyond that of the buffers.
+     * @return the value of the voxel.
+     */
+    public float get(int x, int y, int z){
+        int dex = x + y*width;
+        ByteBuffer slice = slices[z];
+        switch(fileType){
+            case FileInfo.GRAY8:
+                return slice.get(dex)&0xff;
+            case FileInfo.GRAY16_UNSIGNED:
+                return slice.getShort(2*dex)&0xffff;
+            case FileInfo.GRAY16_SIGNED:
+                return slice.getShort(2*dex);
+            default:
+                return slice.getFloat(4*dex);
+        }
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getDepth(){
+        return depth;
+    }
+}
@@ -53,6 +53,13 @@ public class    MeshFrame3D {
         return vdo;
     }
 
+    /**
+     * @return the stack shown by the volume data object, or null if the volume shows other values.
+     */
+    public MeshImageStack getVolumeStack(){
+        return volumeStack;
+    }
+
     public DataCanvas getCanvas() {
         return canvas;
     }
@@ -68,6 +75,10 @@ public class    MeshFrame3D {
 
     boolean showingVolume = false;
     VolumeDataObject vdo;
+    /**
+     * Stack shown by the volume, null when the volume shows something else, such as an energy.
+     */
+    MeshImageStack volumeStack;
 
     RingController ringController;
 
@@ -163,7 +174,7 @@ public class    MeshFrame3D {
 
         if(option instanceof ChannelVolume) {
             ChannelVolume volume = (ChannelVolume) option;
-            VolumeContrastSetter setter = new VolumeContrastSetter(volume.vdo);
+            VolumeContrastSetter setter = new VolumeContrastSetter(volume.vdo, volume.stack);
             setter.setPreviewBackgroundColor(getBackgroundColor());
             setter.showDialog(getJFrame());
         }
@@ -588,6 +599,7 @@ public class    MeshFrame3D {
         } else{
             vdo.setTextureData(stack);
         }
+        volumeStack = stack;
 
 
     }
@@ -596,6 +608,7 @@ public class    MeshFrame3D {
 
     public void showEnergy(MeshImageStack stack, ExternalEnergy erg) {
         showingVolume = true;
+        volumeStack = null;
         int d = stack.getNSlices();
         int h = stack.getHeightPx();
         int w = stack.getWidthPx();
@@ -641,6 +654,7 @@ public class    MeshFrame3D {
             removeDataObject(vdo);
             vdo = null;
         }
+        volumeStack = null;
         showingVolume=false;
     }
 
@@ -18,6 +18,7 @@ public class VolumeContrastSetter{
     VolumeSamplerPanel preview;
     IntensityRanges range;
     VolumeDataObject vdo;
+    MeshImageStack stack;
     JDialog dialog;
     Color previewBackgroundColor = Color.BLACK;
     Color volumeColor = Color.WHITE;
@@ -26,6 +27,15 @@ public class VolumeContrastSetter{
         this.vdo = vdo;
     }
 
+    /**
+     * @param vdo volume that the contrast is applied to.
+     * @param stack stack the volume shows, the histogram uses its statistics instead of scanning the texture.
+     */
+    public VolumeContrastSetter(VolumeDataObject vdo, MeshImageStack stack){
+        this.vdo = vdo;
+        this.stack = stack;
+    }
+
     public void setPreviewBackgroundColor(Color c){
         previewBackgroundColor = c;
         if(preview != null){
@@ -39,7 +49,7 @@ public class VolumeContrastSetter{
         JPanel content = new JPanel(new BorderLayout());
         content.setBackground(Color.BLACK);
         content.setOpaque(true);
-        range = new IntensityRanges(vdo.texture_data);
+        range = stack == null ? new IntensityRanges(vdo.texture_data) : new IntensityRanges(stack);
 
 
         JPanel flow = new JPanel();
@@ -2,7 +2,6 @@ package deformablemesh.ringdetection;
 
 import deformablemesh.MeshImageStack;
 import deformablemesh.geometry.Furrow3D;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
 
@@ -62,27 +61,7 @@ public class ContractileRingDetector implements Iterable<Integer>{
         if(!furrows.containsKey(frame)) return;
         Furrow3D f = furrows.get(frame);
         FurrowTransformer transformer = new FurrowTransformer(f, stack);
-
-        int xcounts = transformer.getXCounts();
-        int ycounts = transformer.getYCounts();
-        if(xcounts<1){xcounts =1;}
-        if(ycounts<1){ycounts =1;}
-        ImageProcessor proc = new FloatProcessor(xcounts, ycounts);
-        double[] pt = new double[2];
-
-        for (int i = 0; i < xcounts; i++) {
-            for (int j = 0; j < ycounts; j++) {
-
-                pt[0] = i;
-                pt[1] = j;
-                double v = stack.getInterpolatedValue(transformer.getVolumeCoordinates(pt));
-                try {
-                    proc.setf(i, j, (float) v);
-                } catch(Exception e){
-                    e.printStackTrace();
-                }
-            }
-        }
+        ImageProcessor proc = stack.createSliceProcessor(transformer);
         currentSlice=proc;
 
     }
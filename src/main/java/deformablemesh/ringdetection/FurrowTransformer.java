@@ -120,6 +120,27 @@ public class FurrowTransformer{
 
 
 
+    /**
+     * @return normalized coordinates of the plane pixel (0, 0).
+     */
+    public double[] getOrigin(){
+        return vOffset.clone();
+    }
+
+    /**
+     * @return change in normalized coordinates for one pixel along the plane x axis.
+     */
+    public double[] getXStep(){
+        return new double[]{xn[0]*invScale, xn[1]*invScale, xn[2]*invScale};
+    }
+
+    /**
+     * @return change in normalized coordinates for one pixel along the plane y axis.
+     */
+    public double[] getYStep(){
+        return new double[]{yn[0]*invScale, yn[1]*invScale, yn[2]*invScale};
+    }
+
     public int getXCounts(){
         return px[0];
     }
@@ -0,0 +1,229 @@
+package deformablemesh.solvers;
+
+import java.util.Arrays;
+
+/**
+ * Iterative solver with a Jacobi (diagonal) preconditioner. There is no factorization, and the solve starts from the
+ * provided initial guess. The meshes only move a little each step, so starting from the current positions a few
+ * iterations are sufficient.
+ *
+ * Conjugate gradient requires a symmetric matrix. When BETA is non-zero the stiffness matrix is not symmetric and
+ * the stabilized bi-conjugate gradient method is used instead, with the same preconditioner.
+ */
+public class ConjugateGradientSolver implements MeshSolver {
+    SparseMatrix matrix;
+    double[] inverseDiagonal;
+    boolean symmetric;
+
+    double tolerance = 1e-10;
+    int maxIterations = 1000;
+    volatile int lastIterations;
+    /**
+     * Vectors used by the iterations, kept between solves so each step does not allocate them again.
+     */
+    final ThreadLocal<double[][]> work = ThreadLocal.withInitial(() -> new double[9][0]);
+
+    public ConjugateGradientSolver(){
+
+    }
+
+    /**
+     * @param tolerance iterations stop when |b - A x| < tolerance*|b|
+     * @param maxIterations maximum number of iterations per solve.
+     */
+    public ConjugateGradientSolver(double tolerance, int maxIterations){
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    @Override
+    public void setMatrix(SparseMatrix matrix){
+        this.matrix = matrix;
+        symmetric = matrix.isSymmetric();
+        double[] diagonal = matrix.getDiagonal();
+        inverseDiagonal = new double[diagonal.length];
+        for(int i = 0; i<diagonal.length; i++){
+            inverseDiagonal[i] = diagonal[i] == 0 ? 1 : 1/diagonal[i];
+        }
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        return matrix.getMemoryUsage() + 8L*inverseDiagonal.length;
+    }
+
+    @Override
+    public void solve(double[] b, double[] x){
+        if(symmetric){
+            lastIterations = conjugateGradient(b, x);
+        } else{
+            lastIterations = biConjugateGradientStabilized(b, x);
+        }
+    }
+
+    @Override
+    public void solve(double[] fx, double[] fy, double[] fz, double[] positions){
+        int n = fx.length;
+        double[] x = getVector(8, n);
+        double[][] rhs = {fx, fy, fz};
+        int most = 0;
+        for(int axis = 0; axis<3; axis++){
+            for(int i = 0; i<n; i++){
+                x[i] = positions[3*i + axis];
+            }
+            solve(rhs[axis], x);
+            most = Math.max(most, lastIterations);
+            for(int i = 0; i<n; i++){
+                positions[3*i + axis] = x[i];
+            }
+        }
+        lastIterations = most;
+    }
+
+    int conjugateGradient(double[] b, double[] x){
+        int n = b.length;
+        double[] r = getVector(0, n);
+        double[] z = getVector(1, n);
+        double[] p = getVector(2, n);
+        double[] ap = getVector(3, n);
+
+        matrix.multiply(x, r);
+        double bb = 0;
+        double rz = 0;
+        for(int i = 0; i<n; i++){
+            r[i] = b[i] - r[i];
+            z[i] = r[i]*inverseDiagonal[i];
+            p[i] = z[i];
+            rz += r[i]*z[i];
+            bb += b[i]*b[i];
+        }
+        double limit = tolerance*tolerance*bb;
+
+        for(int iteration = 0; iteration<maxIterations; iteration++){
+            if(dot(r, r) <= limit){
+                return iteration;
+            }
+            matrix.multiply(p, ap);
+            double pap = dot(p, ap);
+            if(pap == 0){
+                return iteration;
+            }
+            double alpha = rz/pap;
+            double rzNext = 0;
+            for(int i = 0; i<n; i++){
+                x[i] += alpha*p[i];
+                r[i] -= alpha*ap[i];
+                z[i] = r[i]*inverseDiagonal[i];
+                rzNext += r[i]*z[i];
+            }
+            double beta = rzNext/rz;
+            rz = rzNext;
+            for(int i = 0; i<n; i++){
+                p[i] = z[i] + beta*p[i];
+            }
+        }
+        return maxIterations;
+    }
+
+    int biConjugateGradientStabilized(double[] b, double[] x){
+        int n = b.length;
+        double[] r = getVector(0, n);
+        double[] r0 = getVector(1, n);
+        double[] p = getVector(2, n);
+        double[] v = getVector(3, n);
+        double[] y = getVector(4, n);
+        double[] s = getVector(5, n);
+        double[] t = getVector(6, n);
+        double[] z = getVector(7, n);
+        Arrays.fill(p, 0);
+        Arrays.fill(v, 0);
+
+        matrix.multiply(x, r);
+        for(int i = 0; i<n; i++){
+            r[i] = b[i] - r[i];
+            r0[i] = r[i];
+        }
+        double limit = tolerance*tolerance*dot(b, b);
+        double rho = 1;
+        double alpha = 1;
+        double omega = 1;
+
+        for(int iteration = 0; iteration<maxIterations; iteration++){
+            if(dot(r, r) <= limit){
+                return iteration;
+            }
+            double rhoNext = dot(r0, r);
+            if(rhoNext == 0){
+                return iteration;
+            }
+            double beta = (rhoNext/rho)*(alpha/omega);
+            rho = rhoNext;
+            for(int i = 0; i<n; i++){
+                p[i] = r[i] + beta*(p[i] - omega*v[i]);
+                y[i] = p[i]*inverseDiagonal[i];
+            }
+            matrix.multiply(y, v);
+            alpha = rho/dot(r0, v);
+            for(int i = 0; i<n; i++){
+                s[i] = r[i] - alpha*v[i];
+            }
+            if(dot(s, s) <= limit){
+                for(int i = 0; i<n; i++){
+                    x[i] += alpha*y[i];
+                }
+                return iteration + 1;
+            }
+            for(int i = 0; i<n; i++){
+                z[i] = s[i]*inverseDiagonal[i];
+            }
+            matrix.multiply(z, t);
+            double tt = dot(t, t);
+            omega = tt == 0 ? 0 : dot(t, s)/tt;
+            for(int i = 0; i<n; i++){
+                x[i] += alpha*y[i] + omega*z[i];
+                r[i] = s[i] - omega*t[i];
+            }
+            if(omega == 0){
+                return iteration + 1;
+            }
+        }
+        return maxIterations;
+    }
+
+    /**
+     * A vector from the work space of the current thread, the contents are left over from previous solves.
+     *
+     * @param slot index of the vector, 0 to 8.
+     * @param n length of the vector.
+     */
+    double[] getVector(int slot, int n){
+        double[][] vectors = work.get();
+        if(vectors[slot].length != n){
+            vectors[slot] = new double[n];
+        }
+        return vectors[slot];
+    }
+
+    static double dot(double[] a, double[] b){
+        double s = 0;
+        for(int i = 0; i<a.length; i++){
+            s += a[i]*b[i];
+        }
+        return s;
+    }
+
+    /**
+     * @return the number of iterations used by the most recent solve.
+     */
+    public int getLastIterations(){
+        return lastIterations;
+    }
+
+    public void setTolerance(double tolerance){
+        this.tolerance = tolerance;
+    }
+
+    public void setMaxIterations(int maxIterations){
+        this.maxIterations = maxIterations;
+    }
+}
@@ -0,0 +1,154 @@
+package deformablemesh.solvers;
+
+/**
+ * The original solver, the stiffness matrix is stored as a dense matrix and factored with an LU decomposition with
+ * partial pivoting, the same decomposition Jama performs. This requires nodes*nodes storage.
+ *
+ * The matrix is factored in place, and solving substitutes directly into the output array, so no other n*n storage
+ * is created.
+ */
+public class DenseLUSolver implements MeshSolver {
+    /**
+     * L below the diagonal, with an implicit unit diagonal, and U on and above the diagonal.
+     */
+    double[][] lu;
+    int[] pivot;
+    boolean nonsingular;
+    int n;
+
+    @Override
+    public void setMatrix(SparseMatrix matrix){
+        n = matrix.size();
+        double[][] data = new double[n][n];
+        for(int i = 0; i<n; i++){
+            for(int k = matrix.rowStart[i]; k<matrix.rowStart[i+1]; k++){
+                data[i][matrix.columns[k]] = matrix.values[k];
+            }
+        }
+        pivot = new int[n];
+        for(int i = 0; i<n; i++){
+            pivot[i] = i;
+        }
+        nonsingular = true;
+        for(int k = 0; k<n; k++){
+            int p = k;
+            double largest = Math.abs(data[k][k]);
+            for(int i = k + 1; i<n; i++){
+                double v = Math.abs(data[i][k]);
+                if(v > largest){
+                    largest = v;
+                    p = i;
+                }
+            }
+            if(p != k){
+                double[] swap = data[p];
+                data[p] = data[k];
+                data[k] = swap;
+                int t = pivot[p];
+                pivot[p] = pivot[k];
+                pivot[k] = t;
+            }
+            double[] rowK = data[k];
+            double d = rowK[k];
+            if(d == 0){
+                nonsingular = false;
+                continue;
+            }
+            for(int i = k + 1; i<n; i++){
+                double[] row = data[i];
+                double l = row[k]/d;
+                row[k] = l;
+                if(l != 0){
+                    for(int j = k + 1; j<n; j++){
+                        row[j] -= l*rowK[j];
+                    }
+                }
+            }
+        }
+        lu = data;
+    }
+
+    @Override
+    public void solve(double[] b, double[] x){
+        checkSingular();
+        if(b == x){
+            b = b.clone();
+        }
+        for(int i = 0; i<n; i++){
+            x[i] = b[pivot[i]];
+        }
+        for(int i = 1; i<n; i++){
+            double[] row = lu[i];
+            double s = x[i];
+            for(int j = 0; j<i; j++){
+                s -= row[j]*x[j];
+            }
+            x[i] = s;
+        }
+        for(int i = n - 1; i>=0; i--){
+            double[] row = lu[i];
+            double s = x[i];
+            for(int j = i + 1; j<n; j++){
+                s -= row[j]*x[j];
+            }
+            x[i] = s/row[i];
+        }
+    }
+
+    @Override
+    public void solve(double[] fx, double[] fy, double[] fz, double[] positions){
+        checkSingular();
+        for(int i = 0; i<n; i++){
+            int p = pivot[i];
+            positions[3*i] = fx[p];
+            positions[3*i + 1] = fy[p];
+            positions[3*i + 2] = fz[p];
+        }
+        for(int i = 1; i<n; i++){
+            double[] row = lu[i];
+            double sx = positions[3*i];
+            double sy = positions[3*i + 1];
+            double sz = positions[3*i + 2];
+            for(int j = 0; j<i; j++){
+                double l = row[j];
+                if(l != 0){
+                    sx -= l*positions[3*j];
+                    sy -= l*positions[3*j + 1];
+                    sz -= l*positions[3*j + 2];
+                }
+            }
+            positions[3*i] = sx;
+            positions[3*i + 1] = sy;
+            positions[3*i + 2] = sz;
+        }
+        for(int i = n - 1; i>=0; i--){
+            double[] row = lu[i];
+            double sx = positions[3*i];
+            double sy = positions[3*i + 1];
+            double sz = positions[3*i + 2];
+            for(int j = i + 1; j<n; j++){
+                double u = row[j];
+                if(u != 0){
+                    sx -= u*positions[3*j];
+                    sy -= u*positions[3*j + 1];
+                    sz -= u*positions[3*j + 2];
+                }
+            }
+            double d = row[i];
+            positions[3*i] = sx/d;
+            positions[3*i + 1] = sy/d;
+            positions[3*i + 2] = sz/d;
+        }
+    }
+
+    private void checkSingular(){
+        if(!nonsingular){
+            throw new RuntimeException("Matrix is singular.");
+        }
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        return 8L*n*n + 4L*n;
+    }
+}
@@ -0,0 +1,114 @@
+package deformablemesh.solvers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Shares prepared solvers between meshes with identical stiffness matrices. When a mesh is tracked to the next frame
+ * it is copied with the same topology, so the factorization from the previous frame can be reused.
+ *
+ * Entries are evicted in least recently used order when either the number of entries or the estimated memory
+ * exceeds the limits. This is only valid because the stiffness matrix does not depend on the node positions, if
+ * that changes the positions need to be part of the {@link StiffnessKey}.
+ */
+public class FactorizationCache {
+    private final LinkedHashMap<StiffnessKey, MeshSolver> solvers = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private int maxEntries;
+    private long bytes;
+    private long hits, misses;
+
+    /**
+     * Creates a cache with a 512 MB limit and at most 32 solvers.
+     */
+    public FactorizationCache(){
+        this(512L*1024*1024, 32);
+    }
+
+    /**
+     * @param maxBytes estimated memory limit for all of the cached solvers.
+     * @param maxEntries maximum number of solvers.
+     */
+    public FactorizationCache(long maxBytes, int maxEntries){
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Finds the solver for the provided key, or creates one using the factory. The factory is called without holding
+     * the lock, so independent meshes can be factored at the same time.
+     *
+     * @param key identifies the stiffness matrix.
+     * @param factory creates a solver with the matrix already set.
+     * @return a prepared solver.
+     */
+    public MeshSolver getSolver(StiffnessKey key, Supplier<MeshSolver> factory){
+        synchronized (this){
+            MeshSolver solver = solvers.get(key);
+            if(solver != null){
+                hits++;
+                return solver;
+            }
+            misses++;
+        }
+
+        MeshSolver created = factory.get();
+
+        synchronized (this){
+            MeshSolver existing = solvers.get(key);
+            if(existing != null){
+                return existing;
+            }
+            long size = created.getMemoryUsage() + key.getMemoryUsage();
+            if(size > maxBytes || maxEntries <= 0){
+                return created;
+            }
+            solvers.put(key, created);
+            bytes += size;
+            evict();
+            return created;
+        }
+    }
+
+    private void evict(){
+        Iterator<Map.Entry<StiffnessKey, MeshSolver>> iter = solvers.entrySet().iterator();
+        while(iter.hasNext() && (bytes > maxBytes || solvers.size() > maxEntries)){
+            Map.Entry<StiffnessKey, MeshSolver> eldest = iter.next();
+            bytes -= eldest.getValue().getMemoryUsage() + eldest.getKey().getMemoryUsage();
+            iter.remove();
+        }
+    }
+
+    public synchronized void clear(){
+        solvers.clear();
+        bytes = 0;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes){
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized void setMaxEntries(int maxEntries){
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    public synchronized int size(){
+        return solvers.size();
+    }
+
+    public synchronized long getMemoryUsage(){
+        return bytes;
+    }
+
+    public synchronized long getHits(){
+        return hits;
+    }
+
+    public synchronized long getMisses(){
+        return misses;
+    }
+}
@@ -0,0 +1,8 @@
+package deformablemesh.solvers;
+
+/**
+ * Receives the terms of a matrix as it is being assembled. Repeated calls for the same location are summed.
+ */
+public interface MatrixAccumulator {
+    void add(int row, int column, double value);
+}
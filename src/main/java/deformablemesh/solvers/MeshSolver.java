@@ -0,0 +1,43 @@
+package deformablemesh.solvers;
+
+/**
+ * Solves the implicit step of a deformable mesh, A x = b, where A is the stiffness matrix of the mesh and b contains
+ * the forces along one axis.
+ *
+ * The matrix is provided once, when the mesh is reshaped, and then the solver is used for each axis of every step.
+ * Solve can be called from multiple threads at the same time.
+ */
+public interface MeshSolver {
+
+    /**
+     * Prepares the solver for the supplied matrix, this is where direct solvers perform their factorization.
+     *
+     * @param matrix stiffness matrix of the mesh.
+     */
+    void setMatrix(SparseMatrix matrix);
+
+    /**
+     * Solves A x = b.
+     *
+     * @param b right hand side, not modified.
+     * @param x on input the initial guess, typically the current positions. Overwritten with the solution.
+     */
+    void solve(double[] b, double[] x);
+
+    /**
+     * Solves all three axes in a single pass over the prepared solver, A x = fx, A y = fy, A z = fz.
+     *
+     * @param fx right hand side for the x axis, not modified.
+     * @param fy right hand side for the y axis, not modified.
+     * @param fz right hand side for the z axis, not modified.
+     * @param positions interleaved {x0, y0, z0, x1, ...}. On input the initial guess, typically the current
+     *                  positions, overwritten with the solution.
+     */
+    void solve(double[] fx, double[] fy, double[] fz, double[] positions);
+
+    /**
+     * @return approximate number of bytes used by the prepared solver.
+     */
+    long getMemoryUsage();
+
+}
@@ -0,0 +1,325 @@
+package deformablemesh.solvers;
+
+/**
+ * Direct factorization of a sparse matrix using a symmetric profile (skyline) storage. The rows and columns are first
+ * permuted with a {@link ReverseCuthillMcKee} ordering, so only the envelope of the reordered matrix is stored. Fill in
+ * can only happen inside of the envelope.
+ *
+ * If the matrix is symmetric, an LDL^T decomposition is used and only the lower half is stored. Otherwise the
+ * structure is symmetrized and an LU decomposition without pivoting is performed. The stiffness matrices of a mesh
+ * are diagonally dominant through the GAMMA term, so pivoting is not required. If a pivot vanishes anyways the
+ * decomposition reports that it is singular, {@link #isNonsingular()}, and should not be used.
+ *
+ */
+public class ProfileDecomposition {
+    final static double TINY = 1e-12;
+
+    final int n;
+    final boolean symmetric;
+    /**
+     * permutation[newIndex] = oldIndex
+     */
+    final int[] permutation;
+    /**
+     * first column of the envelope for each reordered row.
+     */
+    final int[] first;
+    /**
+     * start of each row of L, and each column of U, in the lower/upper arrays.
+     */
+    final int[] envelopeStart;
+
+    final double[] lower;
+    final double[] upper;
+    final double[] diagonal;
+
+    boolean nonsingular = true;
+
+    public ProfileDecomposition(SparseMatrix matrix){
+        this(matrix, matrix.isSymmetric());
+    }
+
+    /**
+     *
+     * @param matrix sparse square matrix
+     * @param symmetric when true only the lower half of the matrix is used.
+     */
+    public ProfileDecomposition(SparseMatrix matrix, boolean symmetric){
+        n = matrix.size();
+        this.symmetric = symmetric;
+        int[][] adjacency = matrix.getSymmetricAdjacency();
+        permutation = ReverseCuthillMcKee.ordering(adjacency[0], adjacency[1]);
+        int[] inverse = ReverseCuthillMcKee.invert(permutation);
+
+        first = new int[n];
+        envelopeStart = new int[n + 1];
+        for(int i = 0; i<n; i++){
+            int old = permutation[i];
+            int f = i;
+            for(int k = adjacency[0][old]; k<adjacency[0][old + 1]; k++){
+                f = Math.min(f, inverse[adjacency[1][k]]);
+            }
+            first[i] = f;
+            envelopeStart[i + 1] = envelopeStart[i] + i - f;
+        }
+
+        lower = new double[envelopeStart[n]];
+        upper = symmetric ? lower : new double[envelopeStart[n]];
+        diagonal = new double[n];
+
+        double scale = 0;
+        for(int row = 0; row<n; row++){
+            int pr = inverse[row];
+            for(int k = matrix.rowStart[row]; k<matrix.rowStart[row + 1]; k++){
+                int pc = inverse[matrix.columns[k]];
+                double v = matrix.values[k];
+                if(pr == pc){
+                    diagonal[pr] += v;
+                    scale = Math.max(scale, Math.abs(v));
+                } else if(pc < pr){
+                    lower[envelopeStart[pr] + pc - first[pr]] = v;
+                } else if(!symmetric){
+                    upper[envelopeStart[pc] + pr - first[pc]] = v;
+                }
+            }
+        }
+
+        if(symmetric){
+            factorLDLT(scale*TINY);
+        } else{
+            factorLU(scale*TINY);
+        }
+    }
+
+    private void factorLU(double tolerance){
+        for(int i = 0; i<n; i++){
+            int fi = first[i];
+            int si = envelopeStart[i] - fi;
+            for(int j = fi; j<i; j++){
+                int fj = first[j];
+                int sj = envelopeStart[j] - fj;
+                int k0 = fi > fj ? fi : fj;
+
+                double l = lower[si + j];
+                double u = upper[si + j];
+                for(int k = k0; k<j; k++){
+                    l -= lower[si + k]*upper[sj + k];
+                    u -= lower[sj + k]*upper[si + k];
+                }
+                lower[si + j] = l/diagonal[j];
+                upper[si + j] = u;
+            }
+            double d = diagonal[i];
+            for(int k = fi; k<i; k++){
+                d -= lower[si + k]*upper[si + k];
+            }
+            diagonal[i] = d;
+            if(!(Math.abs(d) > tolerance)){
+                nonsingular = false;
+                return;
+            }
+        }
+    }
+
+    private void factorLDLT(double tolerance){
+        for(int i = 0; i<n; i++){
+            int fi = first[i];
+            int si = envelopeStart[i] - fi;
+            //first pass stores g_j = L_ij*D_j
+            for(int j = fi; j<i; j++){
+                int fj = first[j];
+                int sj = envelopeStart[j] - fj;
+                int k0 = fi > fj ? fi : fj;
+                double g = lower[si + j];
+                for(int k = k0; k<j; k++){
+                    g -= lower[si + k]*lower[sj + k];
+                }
+                lower[si + j] = g;
+            }
+            double d = diagonal[i];
+            for(int j = fi; j<i; j++){
+                double g = lower[si + j];
+                double l = g/diagonal[j];
+                d -= g*l;
+                lower[si + j] = l;
+            }
+            diagonal[i] = d;
+            if(!(Math.abs(d) > tolerance)){
+                nonsingular = false;
+                return;
+            }
+        }
+    }
+
+    public boolean isNonsingular(){
+        return nonsingular;
+    }
+
+    public boolean isSymmetric(){
+        return symmetric;
+    }
+
+    /**
+     * @return number of values stored in the envelope, off of the diagonal.
+     */
+    public int getProfileSize(){
+        return envelopeStart[n];
+    }
+
+    public int size(){
+        return n;
+    }
+
+    /**
+     * @return approximate number of bytes used by the factors.
+     */
+    public long getMemoryUsage(){
+        long values = symmetric ? envelopeStart[n] : 2L*envelopeStart[n];
+        return 8L*(values + n) + 4L*(3L*n + 1);
+    }
+
+    /**
+     * Solves A x = b.
+     *
+     * @param b right hand side, it is not modified.
+     * @return a new array containing the solution.
+     */
+    public double[] solve(double[] b){
+        double[] x = new double[n];
+        solve(b, x, new double[n]);
+        return x;
+    }
+
+    /**
+     * Solves A x = b.
+     *
+     * @param b right hand side, it is not modified.
+     * @param x where the solution is written, can be the same array as b.
+     * @param work temporary storage, at least length n.
+     */
+    public void solve(double[] b, double[] x, double[] work){
+        if(!nonsingular){
+            throw new RuntimeException("Matrix is singular.");
+        }
+        double[] y = work;
+        for(int i = 0; i<n; i++){
+            y[i] = b[permutation[i]];
+        }
+
+        //forward substitution, L is unit lower triangular.
+        for(int i = 0; i<n; i++){
+            int si = envelopeStart[i] - first[i];
+            double s = y[i];
+            for(int k = first[i]; k<i; k++){
+                s -= lower[si + k]*y[k];
+            }
+            y[i] = s;
+        }
+
+        if(symmetric){
+            for(int i = 0; i<n; i++){
+                y[i] = y[i]/diagonal[i];
+            }
+            for(int i = n-1; i>=0; i--){
+                int si = envelopeStart[i] - first[i];
+                double xi = y[i];
+                for(int k = first[i]; k<i; k++){
+                    y[k] -= lower[si + k]*xi;
+                }
+            }
+        } else{
+            for(int i = n-1; i>=0; i--){
+                int si = envelopeStart[i] - first[i];
+                double xi = y[i]/diagonal[i];
+                y[i] = xi;
+                for(int k = first[i]; k<i; k++){
+                    y[k] -= upper[si + k]*xi;
+                }
+            }
+        }
+
+        for(int i = 0; i<n; i++){
+            x[permutation[i]] = y[i];
+        }
+    }
+
+    /**
+     * Solves all three axes with a single forward and backward pass over the factors. The three right hand sides are
+     * interleaved in the work array, so each factor value is loaded once for all three axes.
+     *
+     * @param bx right hand side, not modified.
+     * @param by right hand side, not modified.
+     * @param bz right hand side, not modified.
+     * @param out interleaved solution {x0, y0, z0, x1, ...}, length 3n.
+     * @param work temporary storage, at least length 3n.
+     */
+    public void solve(double[] bx, double[] by, double[] bz, double[] out, double[] work){
+        if(!nonsingular){
+            throw new RuntimeException("Matrix is singular.");
+        }
+        double[] y = work;
+        for(int i = 0; i<n; i++){
+            int p = permutation[i];
+            y[3*i] = bx[p];
+            y[3*i + 1] = by[p];
+            y[3*i + 2] = bz[p];
+        }
+
+        for(int i = 0; i<n; i++){
+            int si = envelopeStart[i] - first[i];
+            double s0 = y[3*i];
+            double s1 = y[3*i + 1];
+            double s2 = y[3*i + 2];
+            for(int k = first[i]; k<i; k++){
+                double l = lower[si + k];
+                s0 -= l*y[3*k];
+                s1 -= l*y[3*k + 1];
+                s2 -= l*y[3*k + 2];
+            }
+            y[3*i] = s0;
+            y[3*i + 1] = s1;
+            y[3*i + 2] = s2;
+        }
+
+        double[] u = upper;
+        if(symmetric){
+            for(int i = 0; i<n; i++){
+                double d = diagonal[i];
+                y[3*i] = y[3*i]/d;
+                y[3*i + 1] = y[3*i + 1]/d;
+                y[3*i + 2] = y[3*i + 2]/d;
+            }
+        }
+        for(int i = n-1; i>=0; i--){
+            int si = envelopeStart[i] - first[i];
+            double x0, x1, x2;
+            if(symmetric){
+                x0 = y[3*i];
+                x1 = y[3*i + 1];
+                x2 = y[3*i + 2];
+            } else{
+                double d = diagonal[i];
+                x0 = y[3*i]/d;
+                x1 = y[3*i + 1]/d;
+                x2 = y[3*i + 2]/d;
+                y[3*i] = x0;
+                y[3*i + 1] = x1;
+                y[3*i + 2] = x2;
+            }
+            for(int k = first[i]; k<i; k++){
+                double v = u[si + k];
+                y[3*k] -= v*x0;
+                y[3*k + 1] -= v*x1;
+                y[3*k + 2] -= v*x2;
+            }
+        }
+
+        for(int i = 0; i<n; i++){
+            int p = permutation[i];
+            out[3*p] = y[3*i];
+            out[3*p + 1] = y[3*i + 1];
+            out[3*p + 2] = y[3*i + 2];
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package deformablemesh.solvers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bandwidth reducing ordering of an undirected graph. The graph is supplied as csr adjacency lists, where the
+ * neighbors of node i are neighbors[offsets[i]] ... neighbors[offsets[i+1] - 1].
+ *
+ * Each connected component is started from a pseudo-peripheral node, found by repeated breadth first searches,
+ * and nodes within a level are visited in order of increasing degree.
+ */
+public class ReverseCuthillMcKee {
+
+    /**
+     * Calculates the ordering.
+     *
+     * @param offsets start of the neighbors for each node, length n + 1.
+     * @param neighbors the concatenated neighbor lists.
+     * @return permutation such that permutation[newIndex] = oldIndex.
+     */
+    public static int[] ordering(int[] offsets, int[] neighbors){
+        int n = offsets.length - 1;
+        int[] order = new int[n];
+        boolean[] placed = new boolean[n];
+        int[] levels = new int[n];
+        int count = 0;
+
+        for(int seed = 0; seed<n; seed++){
+            if(placed[seed]){
+                continue;
+            }
+            int start = peripheralNode(seed, offsets, neighbors, levels);
+
+            int head = count;
+            order[count++] = start;
+            placed[start] = true;
+            while(head < count){
+                int node = order[head++];
+                int first = count;
+                for(int k = offsets[node]; k<offsets[node+1]; k++){
+                    int other = neighbors[k];
+                    if(!placed[other]){
+                        placed[other] = true;
+                        order[count++] = other;
+                    }
+                }
+                //insertion sort of the newly added nodes by degree, the lists are short.
+                for(int i = first + 1; i<count; i++){
+                    int v = order[i];
+                    int d = degree(v, offsets);
+                    int j = i - 1;
+                    while(j >= first && degree(order[j], offsets) > d){
+                        order[j+1] = order[j];
+                        j--;
+                    }
+                    order[j+1] = v;
+                }
+            }
+        }
+
+        for(int i = 0; i<n/2; i++){
+            int swap = order[i];
+            order[i] = order[n - 1 - i];
+            order[n - 1 - i] = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Inverts a permutation.
+     *
+     * @param permutation permutation[newIndex] = oldIndex
+     * @return inverse[oldIndex] = newIndex
+     */
+    public static int[] invert(int[] permutation){
+        int[] inverse = new int[permutation.length];
+        for(int i = 0; i<permutation.length; i++){
+            inverse[permutation[i]] = i;
+        }
+        return inverse;
+    }
+
+    /**
+     * The bandwidth of the graph when it is labelled according to the provided permutation.
+     *
+     * @param offsets csr offsets.
+     * @param neighbors csr neighbors.
+     * @param permutation permutation[newIndex] = oldIndex, or null for the current labels.
+     * @return largest difference in labels between two connected nodes.
+     */
+    public static int bandwidth(int[] offsets, int[] neighbors, int[] permutation){
+        int n = offsets.length - 1;
+        int[] inverse = permutation == null ? null : invert(permutation);
+        int band = 0;
+        for(int i = 0; i<n; i++){
+            int a = inverse == null ? i : inverse[i];
+            for(int k = offsets[i]; k<offsets[i+1]; k++){
+                int b = inverse == null ? neighbors[k] : inverse[neighbors[k]];
+                band = Math.max(band, Math.abs(a - b));
+            }
+        }
+        return band;
+    }
+
+    static int degree(int node, int[] offsets){
+        return offsets[node+1] - offsets[node];
+    }
+
+    /**
+     * George-Liu heuristic. Starting from the seed a breadth first search is performed, then a node of minimum degree
+     * in the last level is used as the next start until the eccentricity stops growing.
+     */
+    static int peripheralNode(int seed, int[] offsets, int[] neighbors, int[] levels){
+        int start = seed;
+        int eccentricity = -1;
+        for(int attempt = 0; attempt<8; attempt++){
+            int[] result = breadthFirst(start, offsets, neighbors, levels);
+            int depth = result[0];
+            int candidate = result[1];
+            if(depth <= eccentricity){
+                break;
+            }
+            eccentricity = depth;
+            start = candidate;
+        }
+        return start;
+    }
+
+    /**
+     * @return {depth, node of minimum degree in the deepest level}
+     */
+    private static int[] breadthFirst(int start, int[] offsets, int[] neighbors, int[] levels){
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        List<Integer> visited = new ArrayList<>();
+        levels[start] = 1;
+        queue.add(start);
+        visited.add(start);
+        int depth = 1;
+        int best = start;
+        while(!queue.isEmpty()){
+            int node = queue.poll();
+            int level = levels[node];
+            if(level > depth || (level == depth && degree(node, offsets) < degree(best, offsets))){
+                depth = level;
+                best = node;
+            }
+            for(int k = offsets[node]; k<offsets[node+1]; k++){
+                int other = neighbors[k];
+                if(levels[other] == 0){
+                    levels[other] = level + 1;
+                    queue.add(other);
+                    visited.add(other);
+                }
+            }
+        }
+        for(Integer i: visited){
+            levels[i] = 0;
+        }
+        return new int[]{depth, best};
+    }
+}
@@ -0,0 +1,35 @@
+package deformablemesh.solvers;
+
+/**
+ * The available backends for solving the implicit step of a deformable mesh.
+ */
+public enum SolverType {
+    DenseLU("dense LU"), SparseDirect("sparse direct"), ConjugateGradient("preconditioned CG");
+
+    String title;
+    SolverType(String t){
+        title = t;
+    }
+
+    /**
+     * Creates a new solver, each mesh needs its own instance.
+     *
+     * @return a solver of this type.
+     */
+    public MeshSolver createSolver(){
+        switch(this){
+            case SparseDirect:
+                return new SparseDirectSolver();
+            case ConjugateGradient:
+                return new ConjugateGradientSolver();
+            case DenseLU:
+            default:
+                return new DenseLUSolver();
+        }
+    }
+
+    @Override
+    public String toString(){
+        return title;
+    }
+}
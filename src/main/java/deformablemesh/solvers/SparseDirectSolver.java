@@ -0,0 +1,69 @@
+package deformablemesh.solvers;
+
+/**
+ * Direct solver using a {@link ProfileDecomposition}. If the factorization encounters a vanishing pivot, the dense
+ * LU decomposition is used instead, which can be checked with {@link #isDense()}.
+ */
+public class SparseDirectSolver implements MeshSolver {
+    ProfileDecomposition decomposition;
+    MeshSolver fallback;
+    /**
+     * The solver can be shared between meshes that are deformed on different threads.
+     */
+    final ThreadLocal<double[]> work = ThreadLocal.withInitial(() -> new double[0]);
+
+    @Override
+    public void setMatrix(SparseMatrix matrix){
+        ProfileDecomposition profile = new ProfileDecomposition(matrix);
+        if(profile.isNonsingular()){
+            decomposition = profile;
+            fallback = null;
+        } else{
+            decomposition = null;
+            fallback = new DenseLUSolver();
+            fallback.setMatrix(matrix);
+        }
+    }
+
+    @Override
+    public void solve(double[] b, double[] x){
+        if(fallback != null){
+            fallback.solve(b, x);
+        } else{
+            decomposition.solve(b, x, getWork(b.length));
+        }
+    }
+
+    @Override
+    public void solve(double[] fx, double[] fy, double[] fz, double[] positions){
+        if(fallback != null){
+            fallback.solve(fx, fy, fz, positions);
+        } else{
+            decomposition.solve(fx, fy, fz, positions, getWork(3*fx.length));
+        }
+    }
+
+    /**
+     * @return true if the sparse factorization failed and the dense decomposition is used.
+     */
+    public boolean isDense(){
+        return fallback != null;
+    }
+
+    private double[] getWork(int length){
+        double[] w = work.get();
+        if(w.length < length){
+            w = new double[length];
+            work.set(w);
+        }
+        return w;
+    }
+
+    @Override
+    public long getMemoryUsage(){
+        if(fallback != null){
+            return fallback.getMemoryUsage();
+        }
+        return decomposition.getMemoryUsage();
+    }
+}
@@ -0,0 +1,211 @@
+package deformablemesh.solvers;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix stored in compressed sparse row (CSR) format. The columns of each row are sorted in ascending
+ * order and there are no duplicate entries.
+ *
+ * Use a {@link SparseMatrix.Assembler} to accumulate the values, then call {@link Assembler#build()}.
+ */
+public class SparseMatrix {
+    final int n;
+    final int[] rowStart;
+    final int[] columns;
+    final double[] values;
+
+    SparseMatrix(int n, int[] rowStart, int[] columns, double[] values){
+        this.n = n;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * @return number of rows, which is the same as the number of columns.
+     */
+    public int size(){
+        return n;
+    }
+
+    /**
+     * @return number of stored entries.
+     */
+    public int nonZeros(){
+        return rowStart[n];
+    }
+
+    /**
+     * @return approximate number of bytes used by this matrix.
+     */
+    public long getMemoryUsage(){
+        return 12L*rowStart[n] + 4L*(n + 1);
+    }
+
+    public double get(int row, int column){
+        int dex = Arrays.binarySearch(columns, rowStart[row], rowStart[row + 1], column);
+        return dex < 0 ? 0 : values[dex];
+    }
+
+    /**
+     * @return a new array containing the diagonal of this matrix.
+     */
+    public double[] getDiagonal(){
+        double[] diagonal = new double[n];
+        for(int i = 0; i<n; i++){
+            diagonal[i] = get(i, i);
+        }
+        return diagonal;
+    }
+
+    /**
+     * Calculates out = A x.
+     *
+     * @param x vector of length n
+     * @param out vector of length n, the results will be written here.
+     */
+    public void multiply(double[] x, double[] out){
+        for(int i = 0; i<n; i++){
+            double s = 0;
+            for(int k = rowStart[i]; k<rowStart[i+1]; k++){
+                s += values[k]*x[columns[k]];
+            }
+            out[i] = s;
+        }
+    }
+
+    /**
+     * Checks if this matrix is exactly symmetric, both in structure and in value.
+     *
+     * @return true if A[i][j] == A[j][i] for all i, j.
+     */
+    public boolean isSymmetric(){
+        for(int i = 0; i<n; i++){
+            for(int k = rowStart[i]; k<rowStart[i+1]; k++){
+                int j = columns[k];
+                if(j != i && get(j, i) != values[k]){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the adjacency structure of A + A^T without the diagonal, this is the graph used for ordering and
+     * for determining the profile of the factorization.
+     *
+     * @return {offsets, neighbors} in csr format, where the neighbors of i are
+     *         neighbors[offsets[i]] to neighbors[offsets[i+1] - 1].
+     */
+    public int[][] getSymmetricAdjacency(){
+        int[] counts = new int[n + 1];
+        for(int i = 0; i<n; i++){
+            for(int k = rowStart[i]; k<rowStart[i+1]; k++){
+                int j = columns[k];
+                if(j == i){
+                    continue;
+                }
+                counts[i]++;
+                if(!contains(j, i)){
+                    counts[j]++;
+                }
+            }
+        }
+        int[] offsets = new int[n + 1];
+        for(int i = 0; i<n; i++){
+            offsets[i+1] = offsets[i] + counts[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] neighbors = new int[offsets[n]];
+        for(int i = 0; i<n; i++){
+            for(int k = rowStart[i]; k<rowStart[i+1]; k++){
+                int j = columns[k];
+                if(j == i){
+                    continue;
+                }
+                neighbors[fill[i]++] = j;
+                if(!contains(j, i)){
+                    neighbors[fill[j]++] = i;
+                }
+            }
+        }
+        return new int[][]{offsets, neighbors};
+    }
+
+    /**
+     * @return true if there is a stored entry at row, column. The entry can be an explicit zero.
+     */
+    boolean contains(int row, int column){
+        return Arrays.binarySearch(columns, rowStart[row], rowStart[row + 1], column) >= 0;
+    }
+
+    /**
+     * For accumulating the values of a sparse matrix. Values added to the same location are summed.
+     */
+    public static class Assembler implements MatrixAccumulator{
+        final int n;
+        int[][] rowColumns;
+        double[][] rowValues;
+        int[] rowCounts;
+
+        public Assembler(int n){
+            this.n = n;
+            rowColumns = new int[n][8];
+            rowValues = new double[n][8];
+            rowCounts = new int[n];
+        }
+
+        @Override
+        public void add(int row, int column, double value){
+            int[] cols = rowColumns[row];
+            int count = rowCounts[row];
+            for(int k = 0; k<count; k++){
+                if(cols[k] == column){
+                    rowValues[row][k] += value;
+                    return;
+                }
+            }
+            if(count == cols.length){
+                rowColumns[row] = Arrays.copyOf(cols, 2*count);
+                rowValues[row] = Arrays.copyOf(rowValues[row], 2*count);
+            }
+            rowColumns[row][count] = column;
+            rowValues[row][count] = value;
+            rowCounts[row] = count + 1;
+        }
+
+        /**
+         * Creates the matrix from the accumulated values. Entries that have been added are kept, even if
+         * they sum to zero.
+         *
+         * @return a new sparse matrix.
+         */
+        public SparseMatrix build(){
+            int[] rowStart = new int[n + 1];
+            for(int i = 0; i<n; i++){
+                rowStart[i + 1] = rowStart[i] + rowCounts[i];
+            }
+            int[] columns = new int[rowStart[n]];
+            double[] values = new double[rowStart[n]];
+            Integer[] order = new Integer[0];
+            for(int i = 0; i<n; i++){
+                int count = rowCounts[i];
+                if(order.length < count){
+                    order = new Integer[count];
+                }
+                for(int k = 0; k<count; k++){
+                    order[k] = k;
+                }
+                final int[] cols = rowColumns[i];
+                Arrays.sort(order, 0, count, (a, b)->Integer.compare(cols[a], cols[b]));
+                for(int k = 0; k<count; k++){
+                    columns[rowStart[i] + k] = cols[order[k]];
+                    values[rowStart[i] + k] = rowValues[i][order[k]];
+                }
+            }
+            return new SparseMatrix(n, rowStart, columns, values);
+        }
+    }
+
+}
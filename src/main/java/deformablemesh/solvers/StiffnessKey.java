@@ -0,0 +1,69 @@
+package deformablemesh.solvers;
+
+import java.util.Arrays;
+
+/**
+ * Identifies a stiffness matrix by everything used to assemble it: the solver type, the ALPHA, BETA, GAMMA
+ * parameters, the connections, the triangles and the per node gamma factors. Node positions are not part of the
+ * key because the stiffness matrix does not depend on them.
+ *
+ * The full topology is stored so that two keys with the same fingerprint are compared exactly.
+ */
+public final class StiffnessKey {
+    final SolverType type;
+    final double alpha, beta, gamma;
+    final int[] connections;
+    final int[] triangles;
+    final double[] gammaFactors;
+    final int hash;
+
+    public StiffnessKey(SolverType type, double alpha, double beta, double gamma,
+                        int[] connections, int[] triangles, double[] gammaFactors){
+        this.type = type;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.connections = connections;
+        this.triangles = triangles;
+        this.gammaFactors = gammaFactors;
+
+        int h = type.hashCode();
+        h = 31*h + Double.hashCode(alpha);
+        h = 31*h + Double.hashCode(beta);
+        h = 31*h + Double.hashCode(gamma);
+        h = 31*h + Arrays.hashCode(connections);
+        h = 31*h + Arrays.hashCode(triangles);
+        h = 31*h + Arrays.hashCode(gammaFactors);
+        hash = h;
+    }
+
+    /**
+     * @return approximate number of bytes used by this key.
+     */
+    long getMemoryUsage(){
+        return 4L*connections.length + 4L*triangles.length + 8L*gammaFactors.length;
+    }
+
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(o == this){
+            return true;
+        }
+        if(!(o instanceof StiffnessKey)){
+            return false;
+        }
+        StiffnessKey k = (StiffnessKey)o;
+        return hash == k.hash && type == k.type &&
+                Double.compare(alpha, k.alpha) == 0 &&
+                Double.compare(beta, k.beta) == 0 &&
+                Double.compare(gamma, k.gamma) == 0 &&
+                Arrays.equals(connections, k.connections) &&
+                Arrays.equals(triangles, k.triangles) &&
+                Arrays.equals(gammaFactors, k.gammaFactors);
+    }
+}
@@ -57,4 +57,56 @@ public class GaussianKernels {
         }
         return kernel1;
     }
+
+    /**
+     * @return the standard deviation of the kernels, in samples.
+     */
+    public static double getSigma(){
+        return sigma;
+    }
+
+    /**
+     * Gaussian sampled at integer offsets, normalized to sum to 1. The kernel extends 3 sigma on each side.
+     *
+     * @param sigma standard deviation in samples, eg pixels along one axis.
+     * @return an odd length kernel.
+     */
+    public static double[] blurred1DKernel(double sigma){
+        int half = Math.max(1, (int)Math.ceil(3*sigma));
+        double[] kernel = new double[2*half + 1];
+        double s = 1.0/sigma/sigma/2;
+        double sum = 0;
+        for(int i = 0; i<kernel.length; i++){
+            double x = i - half;
+            kernel[i] = Math.exp(-x*x*s);
+            sum += kernel[i];
+        }
+        for(int i = 0; i<kernel.length; i++){
+            kernel[i] = kernel[i]/sum;
+        }
+        return kernel;
+    }
+
+    /**
+     * First derivative of a Gaussian sampled at integer offsets. The kernel is scaled so that applying it to a
+     * ramp with a slope of 1 gives 1, when value[i] is multiplied by kernel[i] for i from -half to half.
+     *
+     * @param sigma standard deviation in samples.
+     * @return an odd length kernel.
+     */
+    public static double[] firstDerivative1DKernel(double sigma){
+        int half = Math.max(1, (int)Math.ceil(3*sigma));
+        double[] kernel = new double[2*half + 1];
+        double s = 1.0/sigma/sigma/2;
+        double sum = 0;
+        for(int i = 0; i<kernel.length; i++){
+            double x = i - half;
+            kernel[i] = x*Math.exp(-x*x*s);
+            sum += x*kernel[i];
+        }
+        for(int i = 0; i<kernel.length; i++){
+            kernel[i] = kernel[i]/sum;
+        }
+        return kernel;
+    }
 }
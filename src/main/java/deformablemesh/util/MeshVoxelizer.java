@@ -0,0 +1,305 @@
+package deformablemesh.util;
+
+import deformablemesh.MeshImageStack;
+import deformablemesh.geometry.DeformableMesh3D;
+import ij.ImageStack;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the voxels inside of a mesh by scan converting its triangles. Each row of voxels is a line along x, at the
+ * y and z of the row in image coordinates. The triangles are binned by the slices and rows they cover, then where
+ * each triangle crosses the row is calculated directly from the projection of the triangle onto the y-z plane.
+ *
+ * Points on an edge shared by two triangles are assigned to exactly one of the triangles, so rows that pass through
+ * edges or vertices are not counted twice. A voxel x is inside when it is after an entering crossing and at or before
+ * the matching exiting crossing, which is the convention the ray casting version used.
+ *
+ * Slices are scanned in parallel.
+ */
+public class MeshVoxelizer {
+    final int width;
+    final int height;
+    final int depth;
+    /**
+     * Triangle vertexes in image coordinates, 9 values per triangle.
+     */
+    final double[] vertices;
+    final int triangles;
+    /**
+     * Triangles that cover each slice, sliceTriangles[sliceOffsets[z]] to sliceTriangles[sliceOffsets[z+1]].
+     */
+    final int[] sliceOffsets;
+    final int[] sliceTriangles;
+
+    /**
+     * Voxelizes the mesh with the dimensions of the stack.
+     */
+    public MeshVoxelizer(MeshImageStack stack, DeformableMesh3D mesh){
+        this(stack, mesh, stack.getWidthPx(), stack.getHeightPx(), stack.getNSlices());
+    }
+
+    /**
+     * @param stack geometry used to convert the mesh into image coordinates.
+     * @param mesh mesh to be voxelized, the positions are copied.
+     * @param width voxels along x.
+     * @param height rows.
+     * @param depth slices.
+     */
+    public MeshVoxelizer(MeshImageStack stack, DeformableMesh3D mesh, int width, int height, int depth){
+        this(mesh, toImage(mesh, pt -> stack.getImageCoordinates(pt)), width, height, depth);
+    }
+
+    /**
+     * Voxelizes the mesh on an isotropic grid, independent of an image.
+     *
+     * @param mesh mesh to be voxelized, the positions are copied.
+     * @param origin normalized coordinates of voxel (0, 0, 0).
+     * @param spacing normalized distance between voxels.
+     * @param width voxels along x.
+     * @param height rows.
+     * @param depth slices.
+     */
+    public MeshVoxelizer(DeformableMesh3D mesh, double[] origin, double spacing, int width, int height, int depth){
+        this(mesh, toImage(mesh, pt -> new double[]{
+                (pt[0] - origin[0])/spacing,
+                (pt[1] - origin[1])/spacing,
+                (pt[2] - origin[2])/spacing
+        }), width, height, depth);
+    }
+
+    private static double[] toImage(DeformableMesh3D mesh, UnaryOperator<double[]> transform){
+        int nodes = mesh.positions.length/3;
+        double[] image = new double[3*nodes];
+        double[] pt = new double[3];
+        for(int i = 0; i<nodes; i++){
+            System.arraycopy(mesh.positions, 3*i, pt, 0, 3);
+            System.arraycopy(transform.apply(pt), 0, image, 3*i, 3);
+        }
+        return image;
+    }
+
+    private MeshVoxelizer(DeformableMesh3D mesh, double[] image, int width, int height, int depth){
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+
+        triangles = mesh.triangle_index.length/3;
+        vertices = new double[9*triangles];
+        for(int t = 0; t<triangles; t++){
+            for(int k = 0; k<3; k++){
+                System.arraycopy(image, 3*mesh.triangle_index[3*t + k], vertices, 9*t + 3*k, 3);
+            }
+        }
+
+        int[] counts = new int[depth + 1];
+        for(int t = 0; t<triangles; t++){
+            int[] range = range(t, 2, depth);
+            for(int z = range[0]; z<=range[1]; z++){
+                counts[z + 1]++;
+            }
+        }
+        for(int z = 0; z<depth; z++){
+            counts[z + 1] += counts[z];
+        }
+        sliceOffsets = counts;
+        sliceTriangles = new int[counts[depth]];
+        int[] fill = Arrays.copyOf(counts, depth);
+        for(int t = 0; t<triangles; t++){
+            int[] range = range(t, 2, depth);
+            for(int z = range[0]; z<=range[1]; z++){
+                sliceTriangles[fill[z]++] = t;
+            }
+        }
+    }
+
+    /**
+     * The integer coordinates, along an axis, that a triangle covers.
+     *
+     * @return {low, high} inclusive, low > high if there are none.
+     */
+    private int[] range(int t, int axis, int size){
+        double low = Math.min(vertices[9*t + axis], Math.min(vertices[9*t + 3 + axis], vertices[9*t + 6 + axis]));
+        double high = Math.max(vertices[9*t + axis], Math.max(vertices[9*t + 3 + axis], vertices[9*t + 6 + axis]));
+        int a = (int)Math.max(0, Math.ceil(low));
+        int b = (int)Math.min(size - 1, Math.floor(high));
+        return new int[]{a, b};
+    }
+
+    /**
+     * Scans every slice, in parallel, passing the runs of voxels inside of the mesh to the consumer.
+     *
+     * @param consumer receives the runs, it is called concurrently for different slices, for a single slice the
+     *                 rows are in order.
+     */
+    public void scan(SpanVolume.SpanConsumer consumer){
+        IntStream.range(0, depth).parallel().forEach(z->scanSlice(z, consumer));
+    }
+
+    void scanSlice(int z, SpanVolume.SpanConsumer consumer){
+        int start = sliceOffsets[z];
+        int end = sliceOffsets[z + 1];
+        if(start == end){
+            return;
+        }
+
+        //bin the triangles of this slice by row.
+        int[] counts = new int[height + 1];
+        for(int i = start; i<end; i++){
+            int[] range = range(sliceTriangles[i], 1, height);
+            for(int y = range[0]; y<=range[1]; y++){
+                counts[y + 1]++;
+            }
+        }
+        for(int y = 0; y<height; y++){
+            counts[y + 1] += counts[y];
+        }
+        int[] rowTriangles = new int[counts[height]];
+        int[] fill = Arrays.copyOf(counts, height);
+        for(int i = start; i<end; i++){
+            int t = sliceTriangles[i];
+            int[] range = range(t, 1, height);
+            for(int y = range[0]; y<=range[1]; y++){
+                rowTriangles[fill[y]++] = t;
+            }
+        }
+
+        double[] crossings = new double[16];
+        for(int y = 0; y<height; y++){
+            int found = 0;
+            for(int i = counts[y]; i<counts[y + 1]; i++){
+                if(found + 2 > crossings.length){
+                    crossings = Arrays.copyOf(crossings, 2*crossings.length);
+                }
+                found += cross(rowTriangles[i], y, z, crossings, found);
+            }
+            if(found > 0){
+                emit(crossings, found/2, y, z, consumer);
+            }
+        }
+    }
+
+    /**
+     * Checks if the line along x at (y, z) crosses the triangle.
+     *
+     * @return 2 if a crossing, x and +1 entering or -1 leaving, was written, otherwise 0.
+     */
+    private int cross(int t, double y, double z, double[] crossings, int offset){
+        int o = 9*t;
+        double ax = vertices[o], ay = vertices[o + 1], az = vertices[o + 2];
+        double bx = vertices[o + 3], by = vertices[o + 4], bz = vertices[o + 5];
+        double cx = vertices[o + 6], cy = vertices[o + 7], cz = vertices[o + 8];
+
+        //x component of the triangle normal, twice the signed area of the y-z projection.
+        double area = (by - ay)*(cz - az) - (bz - az)*(cy - ay);
+        if(area == 0){
+            return 0;
+        }
+        double sign = area > 0 ? 1 : -1;
+
+        double w0 = sign*edge(by, bz, cy, cz, y, z);
+        double w1 = sign*edge(cy, cz, ay, az, y, z);
+        double w2 = sign*edge(ay, az, by, bz, y, z);
+        if(!covers(w0, sign*(cy - by), sign*(cz - bz))
+                || !covers(w1, sign*(ay - cy), sign*(az - cz))
+                || !covers(w2, sign*(by - ay), sign*(bz - az))){
+            return 0;
+        }
+        double sum = w0 + w1 + w2;
+        crossings[offset] = (w0*ax + w1*bx + w2*cx)/sum;
+        //normal facing -x means the line enters the mesh.
+        crossings[offset + 1] = area < 0 ? 1 : -1;
+        return 2;
+    }
+
+    private static double edge(double uy, double uz, double vy, double vz, double y, double z){
+        return (vy - uy)*(z - uz) - (vz - uz)*(y - uy);
+    }
+
+    /**
+     * A point is covered by an edge when it is strictly inside, points on the edge belong to only one of the two
+     * opposite directions the edge can have.
+     */
+    private static boolean covers(double w, double dy, double dz){
+        if(w != 0){
+            return w > 0;
+        }
+        return dy > 0 || (dy == 0 && dz < 0);
+    }
+
+    private void emit(double[] crossings, int n, int y, int z, SpanVolume.SpanConsumer consumer){
+        //sort the crossings by x, they are pairs so insertion sort them.
+        for(int i = 1; i<n; i++){
+            double x = crossings[2*i];
+            double d = crossings[2*i + 1];
+            int j = i - 1;
+            while(j >= 0 && crossings[2*j] > x){
+                crossings[2*j + 2] = crossings[2*j];
+                crossings[2*j + 3] = crossings[2*j + 1];
+                j--;
+            }
+            crossings[2*j + 2] = x;
+            crossings[2*j + 3] = d;
+        }
+
+        int winding = 0;
+        int x0 = 0;
+        for(int i = 0; i<n; i++){
+            int before = winding;
+            winding += (int)crossings[2*i + 1];
+            if(before <= 0 && winding > 0){
+                x0 = first(crossings[2*i]);
+            } else if(before > 0 && winding <= 0){
+                int x1 = first(crossings[2*i]);
+                if(x1 > x0){
+                    consumer.accept(z, y, x0, x1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the first voxel after the crossing, clamped to the row.
+     */
+    private int first(double x){
+        double f = Math.floor(x) + 1;
+        return f < 0 ? 0 : f > width ? width : (int)f;
+    }
+
+    /**
+     * @return the interior of the mesh as runs of voxels.
+     */
+    public SpanVolume getSpanVolume(){
+        SpanVolume volume = new SpanVolume(width, height, depth);
+        scan(volume::add);
+        return volume;
+    }
+
+    /**
+     * Every voxel inside of the mesh, ordered by slice, row and x.
+     *
+     * @return {x, y, z} for each voxel.
+     */
+    public List<int[]> getVoxels(){
+        return getSpanVolume().getVoxels();
+    }
+
+    /**
+     * Sets every voxel inside of the mesh to a value. The processors need to be backed by int[] pixels.
+     *
+     * @param out destination, with the dimensions of this voxelizer.
+     * @param value value or rgb color.
+     */
+    public void fill(ImageStack out, int value){
+        int[][] pixels = new int[depth][];
+        for(int z = 0; z<depth; z++){
+            if(sliceOffsets[z] != sliceOffsets[z + 1]){
+                pixels[z] = (int[])out.getProcessor(z + 1).getPixels();
+            }
+        }
+        scan((z, y, x0, x1) -> Arrays.fill(pixels[z], x0 + y*width, x1 + y*width, value));
+    }
+}
@@ -0,0 +1,320 @@
+package deformablemesh.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary volume stored as runs of voxels. Each row, a (y, z) pair, has a sorted list of [x0, x1) runs that do not
+ * overlap or touch. A voxel costs nothing, a run costs two ints, so the interior of a cell takes a few bytes per row
+ * instead of an int[] per voxel.
+ *
+ * Rows can be added to concurrently as long as each row is only modified by one thread.
+ */
+public class SpanVolume {
+    /**
+     * Receives runs of voxels.
+     */
+    public interface SpanConsumer{
+        /**
+         * @param z slice, 0 based.
+         * @param y row.
+         * @param x0 first voxel of the run.
+         * @param x1 one past the last voxel of the run.
+         */
+        void accept(int z, int y, int x0, int x1);
+    }
+
+    /**
+     * Receives individual voxels.
+     */
+    public interface VoxelConsumer{
+        void accept(int x, int y, int z);
+    }
+
+    final static int[] EMPTY = new int[0];
+    final int width;
+    final int height;
+    final int depth;
+    /**
+     * Runs for each row, indexed by y + z*height, x0, x1 pairs.
+     */
+    final int[][] rows;
+
+    public SpanVolume(int width, int height, int depth){
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        rows = new int[width == 0 ? 0 : height*depth][];
+        Arrays.fill(rows, EMPTY);
+    }
+
+    /**
+     * Creates a volume from a list of voxels.
+     *
+     * @param voxels {x, y, z} for each voxel, in any order.
+     */
+    public static SpanVolume fromVoxels(List<int[]> voxels, int width, int height, int depth){
+        SpanVolume volume = new SpanVolume(width, height, depth);
+        for(int[] voxel: voxels){
+            volume.add(voxel[2], voxel[1], voxel[0], voxel[0] + 1);
+        }
+        return volume;
+    }
+
+    /**
+     * Adds a run of voxels, merging with existing runs. Runs are clamped to the width of the volume.
+     *
+     * @param z slice
+     * @param y row
+     * @param x0 first voxel.
+     * @param x1 one past the last voxel.
+     */
+    public void add(int z, int y, int x0, int x1){
+        x0 = x0 < 0 ? 0 : x0;
+        x1 = x1 > width ? width : x1;
+        if(x1 <= x0){
+            return;
+        }
+        int r = y + z*height;
+        int[] row = rows[r];
+        int n = row.length/2;
+
+        //the common case, appending in order.
+        if(n == 0 || row[2*n - 1] < x0){
+            int[] added = Arrays.copyOf(row, row.length + 2);
+            added[2*n] = x0;
+            added[2*n + 1] = x1;
+            rows[r] = added;
+            return;
+        }
+
+        //runs before the first that touches and after the last that touches are kept.
+        int first = 0;
+        while(first < n && row[2*first + 1] < x0){
+            first++;
+        }
+        int last = first;
+        while(last < n && row[2*last] <= x1){
+            x0 = Math.min(x0, row[2*last]);
+            x1 = Math.max(x1, row[2*last + 1]);
+            last++;
+        }
+        int[] merged = new int[row.length - 2*(last - first) + 2];
+        System.arraycopy(row, 0, merged, 0, 2*first);
+        merged[2*first] = x0;
+        merged[2*first + 1] = x1;
+        System.arraycopy(row, 2*last, merged, 2*first + 2, row.length - 2*last);
+        rows[r] = merged;
+    }
+
+    /**
+     * @return a new volume with the voxels that are in either volume.
+     */
+    public SpanVolume union(SpanVolume other){
+        checkDimensions(other);
+        SpanVolume result = new SpanVolume(width, height, depth);
+        for(int r = 0; r<rows.length; r++){
+            int[] a = rows[r];
+            int[] b = other.rows[r];
+            if(b.length == 0){
+                result.rows[r] = a;
+            } else if(a.length == 0){
+                result.rows[r] = b;
+            } else{
+                result.rows[r] = mergeRows(a, b);
+            }
+        }
+        return result;
+    }
+
+    private static int[] mergeRows(int[] a, int[] b){
+        int[] merged = new int[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while(i < a.length || j < b.length){
+            int x0, x1;
+            if(j >= b.length || (i < a.length && a[i] <= b[j])){
+                x0 = a[i];
+                x1 = a[i + 1];
+                i += 2;
+            } else{
+                x0 = b[j];
+                x1 = b[j + 1];
+                j += 2;
+            }
+            if(n > 0 && merged[n - 1] >= x0){
+                merged[n - 1] = Math.max(merged[n - 1], x1);
+            } else{
+                merged[n++] = x0;
+                merged[n++] = x1;
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * @return a new volume with the voxels that are in both volumes.
+     */
+    public SpanVolume intersection(SpanVolume other){
+        checkDimensions(other);
+        SpanVolume result = new SpanVolume(width, height, depth);
+        for(int r = 0; r<rows.length; r++){
+            int[] a = rows[r];
+            int[] b = other.rows[r];
+            if(a.length == 0 || b.length == 0){
+                continue;
+            }
+            int[] overlap = new int[a.length + b.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while(i < a.length && j < b.length){
+                int x0 = Math.max(a[i], b[j]);
+                int x1 = Math.min(a[i + 1], b[j + 1]);
+                if(x1 > x0){
+                    overlap[n++] = x0;
+                    overlap[n++] = x1;
+                }
+                if(a[i + 1] < b[j + 1]){
+                    i += 2;
+                } else{
+                    j += 2;
+                }
+            }
+            result.rows[r] = n == 0 ? EMPTY : Arrays.copyOf(overlap, n);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the voxels in both volumes without creating the intersection.
+     *
+     * @return number of shared voxels.
+     */
+    public long intersectionCount(SpanVolume other){
+        checkDimensions(other);
+        long count = 0;
+        for(int r = 0; r<rows.length; r++){
+            int[] a = rows[r];
+            int[] b = other.rows[r];
+            int i = 0;
+            int j = 0;
+            while(i < a.length && j < b.length){
+                int x0 = Math.max(a[i], b[j]);
+                int x1 = Math.min(a[i + 1], b[j + 1]);
+                if(x1 > x0){
+                    count += x1 - x0;
+                }
+                if(a[i + 1] < b[j + 1]){
+                    i += 2;
+                } else{
+                    j += 2;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void checkDimensions(SpanVolume other){
+        if(other.width != width || other.height != height || other.depth != depth){
+            throw new IllegalArgumentException("Span volumes need to have the same dimensions.");
+        }
+    }
+
+    /**
+     * @return the number of voxels.
+     */
+    public long count(){
+        long count = 0;
+        for(int[] row: rows){
+            for(int i = 0; i<row.length; i+=2){
+                count += row[i + 1] - row[i];
+            }
+        }
+        return count;
+    }
+
+    public boolean contains(int x, int y, int z){
+        if(x < 0 || y < 0 || z < 0 || x >= width || y >= height || z >= depth){
+            return false;
+        }
+        int[] row = rows[y + z*height];
+        int low = 0;
+        int high = row.length/2 - 1;
+        while(low <= high){
+            int mid = (low + high) >>> 1;
+            if(row[2*mid + 1] <= x){
+                low = mid + 1;
+            } else if(row[2*mid] > x){
+                high = mid - 1;
+            } else{
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Passes every run to the consumer, ordered by slice, row and x.
+     */
+    public void forEachSpan(SpanConsumer consumer){
+        for(int r = 0; r<rows.length; r++){
+            int[] row = rows[r];
+            for(int i = 0; i<row.length; i+=2){
+                consumer.accept(r/height, r%height, row[i], row[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Passes every voxel to the consumer, ordered by slice, row and x, without creating a list.
+     */
+    public void forEachVoxel(VoxelConsumer consumer){
+        forEachSpan((z, y, x0, x1) -> {
+            for(int x = x0; x<x1; x++){
+                consumer.accept(x, y, z);
+            }
+        });
+    }
+
+    /**
+     * @return {x, y, z} of every voxel, ordered by slice, row and x.
+     */
+    public List<int[]> getVoxels(){
+        List<int[]> voxels = new ArrayList<>();
+        forEachVoxel((x, y, z) -> voxels.add(new int[]{x, y, z}));
+        return voxels;
+    }
+
+    /**
+     * @return a copy of the x0, x1 pairs for a row.
+     */
+    public int[] getRow(int y, int z){
+        return rows[y + z*height].clone();
+    }
+
+    /**
+     * @return the number of runs.
+     */
+    public int getSpanCount(){
+        int count = 0;
+        for(int[] row: rows){
+            count += row.length/2;
+        }
+        return count;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getDepth(){
+        return depth;
+    }
+}
@@ -1,5 +1,8 @@
 package deformablemesh;
 
+import deformablemesh.geometry.Box3D;
+import deformablemesh.io.MappedFrames;
+import deformablemesh.ringdetection.FurrowTransformer;
 import deformablemesh.util.Vector3DOps;
 import ij.ImagePlus;
 import ij.ImageStack;
@@ -9,6 +12,14 @@ import ij.process.ShortProcessor;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
 /**
  * Created by msmith on 4/21/16.
  */
@@ -65,4 +76,299 @@ public class MeshImageStackTesting {
         Assert.assertEquals(i, v, Vector3DOps.TOL);
     }
 
+    @Test
+    public void downsampleTest(){
+        MeshImageStack mesh_stack = new MeshImageStack(testStack());
+        MeshImageStack coarse = mesh_stack.getPyramidLevel(1);
+
+        //z pixels are already twice as large, so only x and y are downsampled.
+        Assert.assertEquals(5, coarse.width);
+        Assert.assertEquals(15, coarse.height);
+        Assert.assertEquals(5, coarse.depth);
+        Assert.assertEquals(mesh_stack.getMinPx()*2, coarse.getMinPx(), Vector3DOps.TOL);
+
+        //the test image is linear, so away from the edges the smoothed value is the value at the center of the pixel.
+        double[] pt = coarse.getNormalizedCoordinate(new double[]{2, 3, 1});
+        Assert.assertEquals(mesh_stack.getInterpolatedValue(pt), coarse.getInterpolatedValue(pt), 1e-6);
+        Assert.assertEquals(coarse.getValue(2, 3, 1), coarse.getInterpolatedValue(pt), 1e-6);
+    }
+
+    @Test
+    public void pixelViewTest(){
+        ImagePlus original = testStack();
+        MeshImageStack copied = new MeshImageStack(original);
+        MeshImageStack viewed = new MeshImageStack(original);
+        viewed.setPixelView(true);
+        Assert.assertTrue(viewed.isPixelView());
+
+        double[] values = copied.getIntensityValues();
+        Assert.assertArrayEquals(values, viewed.getIntensityValues(), 0);
+
+        double[] pt = {0.01, -0.02, 0.03};
+        Assert.assertEquals(copied.getInterpolatedValue(pt), viewed.getInterpolatedValue(pt), Vector3DOps.TOL);
+
+        viewed.setPixelView(false);
+        Assert.assertFalse(viewed.isPixelView());
+        Assert.assertArrayEquals(values, viewed.getIntensityValues(), 0);
+    }
+
+    @Test
+    public void frameCacheTest(){
+        ImageStack stack = new ImageStack(4, 4);
+        for(int frame = 0; frame<3; frame++){
+            for(int z = 0; z<2; z++){
+                ImageProcessor improc = new ShortProcessor(4, 4);
+                improc.set(1, 2, 10*frame + z + 1);
+                stack.addSlice("frame " + frame, improc);
+            }
+        }
+        ImagePlus plus = new ImagePlus("frames", stack);
+        plus.setDimensions(1, 2, 3);
+        plus.setOpenAsHyperStack(true);
+
+        MeshImageStack cached = new MeshImageStack(plus);
+        cached.setFrameCacheSize(1024);
+        FrameCache cache = cached.getFrameCache();
+        for(int frame = 0; frame<3; frame++){
+            cached.setFrame(frame);
+            Assert.assertEquals(10*frame + 2, cached.getValue(1, 2, 1), 0);
+            Assert.assertEquals(10*frame + 2, cached.MAX_VALUE, 0);
+        }
+        cached.setFrame(1);
+        Assert.assertEquals(12, cached.getValue(1, 2, 1), 0);
+        Assert.assertTrue(cache.getHits() > 0);
+        Assert.assertTrue(cache.getMemoryUsage() <= 1024);
+
+        cached.setFrameCacheSize(0);
+        Assert.assertNull(cached.getFrameCache());
+        cached.setFrame(0);
+        Assert.assertEquals(2, cached.getValue(1, 2, 1), 0);
+    }
+
+    /**
+     * A prefetch that is still loading when the cache is cleared should not put its volume in the cache.
+     */
+    @Test
+    public void frameCacheClearTest() throws InterruptedException {
+        FrameCache cache = new FrameCache(1024);
+        FrameCache.Volume stale = new FrameCache.Volume(new float[]{1}, 1, 1);
+        FrameCache.Volume fresh = new FrameCache.Volume(new float[]{2}, 2, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        cache.prefetch(0, 0, (f, c) -> {
+            started.countDown();
+            try{
+                release.await();
+            } catch(InterruptedException e){
+                //cancelled by clear.
+            }
+            return stale;
+        });
+        started.await();
+        cache.clear();
+        release.countDown();
+
+        //the prefetch thread runs one load at a time, so the stale load has finished once this one runs.
+        CountDownLatch next = new CountDownLatch(1);
+        cache.prefetch(1, 0, (f, c) -> {
+            next.countDown();
+            return fresh;
+        });
+        next.await();
+        Assert.assertSame(fresh, cache.get(0, 0, (f, c) -> fresh));
+        cache.shutdown();
+    }
+
+    @Test
+    public void batchInterpolationTest(){
+        MeshImageStack stack = new MeshImageStack(testStack());
+        int count = 3*MeshImageStack.PARALLEL_BLOCK + 7;
+        double[] xyz = new double[3*count];
+        for(int i = 0; i<xyz.length; i++){
+            xyz[i] = 0.6*Math.sin(0.37*i);
+        }
+        double[] expected = new double[count];
+        for(int i = 0; i<count; i++){
+            expected[i] = stack.getInterpolatedValue(xyz[3*i], xyz[3*i + 1], xyz[3*i + 2]);
+        }
+
+        double[] values = new double[count];
+        stack.getInterpolatedValues(xyz, values);
+        Assert.assertArrayEquals(expected, values, 0);
+
+        double[] parallel = new double[count];
+        stack.getInterpolatedValuesParallel(xyz, parallel);
+        Assert.assertArrayEquals(expected, parallel, 0);
+
+        //offsets into shared arrays.
+        double[] shifted = new double[count + 2];
+        stack.getInterpolatedValues(xyz, 3, shifted, 2, count - 1);
+        Assert.assertEquals(expected[1], shifted[2], 0);
+        Assert.assertEquals(expected[count - 1], shifted[count], 0);
+    }
+
+    @Test
+    public void gradientVolumeTest(){
+        MeshImageStack stack = new MeshImageStack(testStack());
+        GradientVolume gradient = stack.getGradientVolume();
+        Assert.assertSame(gradient, stack.getGradientVolume());
+
+        //values increase by 32 for each pixel along y, 0.25 units per pixel.
+        double expected = 32/(stack.pixel_dimensions[1]/stack.SCALE);
+        MeshImageStack gy = gradient.getComponent(1);
+        Assert.assertEquals(expected, gy.getValue(5, 15, 2), expected*1e-4);
+        Assert.assertTrue(gradient.getMagnitude().getValue(5, 15, 2) >= gy.getValue(5, 15, 2));
+
+        stack.copyValues();
+        Assert.assertNotSame(gradient, stack.getGradientVolume());
+    }
+
+    @Test
+    public void pyramidTest(){
+        MeshImageStack stack = new MeshImageStack(testStack());
+        Assert.assertSame(stack, stack.getPyramidLevel(0));
+
+        //z pixels are twice as large, so only x and y are downsampled for the first level.
+        MeshImageStack level1 = stack.getPyramidLevel(1);
+        Assert.assertSame(level1, stack.getPyramidLevel(1));
+        Assert.assertEquals(5, level1.getWidthPx());
+        Assert.assertEquals(15, level1.getHeightPx());
+        Assert.assertEquals(5, level1.getNSlices());
+
+        MeshImageStack level2 = stack.getPyramidLevel(2);
+        Assert.assertEquals(3, level2.getWidthPx());
+        Assert.assertEquals(8, level2.getHeightPx());
+        Assert.assertEquals(3, level2.getNSlices());
+
+        //the test image is linear, so the smoothed levels agree away from the edges.
+        double[] center = {0, 0, 0};
+        Assert.assertEquals(stack.getInterpolatedValue(center), level1.getInterpolatedValue(center), 1e-3);
+
+        stack.copyValues();
+        Assert.assertNotSame(level1, stack.getPyramidLevel(1));
+    }
+
+    @Test
+    public void mappedFramesTest() throws IOException {
+        int w = 5;
+        int h = 4;
+        int d = 3;
+        File raw = File.createTempFile("mapped", ".raw");
+        raw.deleteOnExit();
+        ByteBuffer buffer = ByteBuffer.allocate(2*w*h*d*2).order(ByteOrder.BIG_ENDIAN);
+        for(int frame = 0; frame<2; frame++){
+            for(int z = 0; z<d; z++){
+                for(int y = 0; y<h; y++){
+                    for(int x = 0; x<w; x++){
+                        buffer.putShort((short)(1000*frame + 100*z + 10*y + x));
+                    }
+                }
+            }
+        }
+        Files.write(raw.toPath(), buffer.array());
+
+        MappedFrames frames = MappedFrames.openRaw(
+                Collections.singletonList(raw), w, h, d, FileInfo.GRAY16_UNSIGNED, false, 0, new double[]{1, 1, 2}, "um"
+        );
+        Assert.assertEquals(2, frames.getNFrames());
+
+        MeshImageStack stack = new MeshImageStack(frames, 0);
+        Assert.assertEquals(w, stack.getWidthPx());
+        Assert.assertEquals(d, stack.getNSlices());
+        Assert.assertEquals(234, stack.getValue(4, 3, 2), 0);
+
+        stack.nextFrame();
+        Assert.assertEquals(1, stack.CURRENT);
+        Assert.assertEquals(1123, stack.getValue(3, 2, 1), 0);
+        Assert.assertEquals(w*h*d, stack.getIntensityValues().length);
+    }
+
+    @Test
+    public void meshCropTest(){
+        MeshImageStack stack = new MeshImageStack(testStack());
+        Box3D box = new Box3D(-0.02, -0.05, -0.02, 0.02, 0.05, 0.02);
+        MeshImageSubStack crop = new MeshImageSubStack(stack, box, 2*stack.getMinPx());
+        Assert.assertTrue(crop.getWidthPx() < stack.getWidthPx());
+        Assert.assertTrue(crop.getHeightPx() < stack.getHeightPx());
+
+        double[][] points = {{0, 0, 0}, {0.015, -0.04, 0.01}, {-0.02, 0.05, -0.02}};
+        for(double[] pt: points){
+            Assert.assertEquals(stack.getInterpolatedValue(pt), crop.getInterpolatedValue(pt), 1e-9);
+        }
+
+        Assert.assertFalse(crop.follow(box));
+        Box3D moved = new Box3D(-0.02, 0.15, -0.02, 0.02, 0.25, 0.02);
+        Assert.assertTrue(crop.follow(moved));
+        double[] pt = {0.01, 0.2, 0};
+        Assert.assertEquals(stack.getInterpolatedValue(pt), crop.getInterpolatedValue(pt), 1e-9);
+    }
+
+    @Test
+    public void statisticsTest(){
+        MeshImageStack stack = new MeshImageStack(testStack());
+        IntensityStatistics stats = stack.getStatistics(100, 1);
+        Assert.assertSame(stats, stack.getStatistics(100, 1));
+        Assert.assertEquals(stack.MIN_VALUE, stats.getMin(), 0);
+        Assert.assertEquals(stack.MAX_VALUE, stats.getMax(), 0);
+        Assert.assertEquals(10*30*5, stats.getCount());
+
+        long total = 0;
+        for(int i = 0; i<stats.getNBins(); i++){
+            total += stats.getBin(i);
+        }
+        Assert.assertEquals(stats.getCount(), total);
+        Assert.assertEquals(stats.getMin(), stats.getPercentile(0), 0);
+        Assert.assertEquals(stats.getMax(), stats.getPercentile(1), 1e-9);
+        double median = stats.getPercentile(0.5);
+        Assert.assertEquals(0.5*(stats.getMin() + stats.getMax()), median, 0.05*stats.getMax());
+
+        IntensityStatistics preview = stack.getStatistics(100, 2);
+        Assert.assertEquals(3*150, preview.getCount());
+        Assert.assertTrue(preview.getMax() <= stats.getMax());
+    }
+
+    /**
+     * Statistics should follow the pixels when the values are loaded again, and in pixel view mode.
+     */
+    @Test
+    public void statisticsReloadTest(){
+        ImagePlus plus = testStack();
+        MeshImageStack stack = new MeshImageStack(plus);
+        IntensityStatistics stats = stack.getStatistics(100, 1);
+
+        plus.getStack().getProcessor(1).set(0, 0, 10000);
+        Assert.assertSame(stats, stack.getStatistics(100, 1));
+        stack.copyValues();
+        IntensityStatistics reloaded = stack.getStatistics(100, 1);
+        Assert.assertNotSame(stats, reloaded);
+        Assert.assertEquals(10000, reloaded.getMax(), 0);
+
+        stack.setPixelView(true);
+        Assert.assertEquals(10000, stack.getStatistics(100, 1).getMax(), 0);
+        plus.getStack().getProcessor(1).set(0, 0, 20000);
+        Assert.assertEquals(20000, stack.getStatistics(100, 1).getMax(), 0);
+    }
+
+    @Test
+    public void planeSliceTest(){
+        MeshImageStack stack = new MeshImageStack(testStack());
+        double[] normal = {0.3, -0.2, 0.9};
+        Vector3DOps.normalize(normal);
+        FurrowTransformer transformer = stack.createFurrowTransform(new double[]{0.05, -0.1, 0.02}, normal);
+        ImageProcessor proc = stack.createSliceProcessor(transformer);
+        Assert.assertEquals(transformer.getXCounts(), proc.getWidth());
+        Assert.assertEquals(transformer.getYCounts(), proc.getHeight());
+        for(int i = 0; i<proc.getWidth(); i++){
+            for(int j = 0; j<proc.getHeight(); j++){
+                double expected = stack.getInterpolatedValue(transformer.getVolumeCoordinates(new double[]{i, j}));
+                Assert.assertEquals(expected, proc.getf(i, j), 1e-3);
+            }
+        }
+
+        MeshImageStack.PlaneSlice slice = stack.getPlaneSlice(transformer);
+        Assert.assertSame(slice, stack.getPlaneSlice(transformer));
+        transformer.rotatePiOver2();
+        Assert.assertNotSame(slice, stack.getPlaneSlice(transformer));
+    }
+
 }
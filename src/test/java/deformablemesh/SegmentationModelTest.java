@@ -0,0 +1,53 @@
+package deformablemesh;
+
+import deformablemesh.externalenergies.ImageEnergyType;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SegmentationModelTest {
+
+    static DeformableMesh3D createSphere(double r, double[] center){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(1);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + center[i%3];
+        }
+        return mesh;
+    }
+
+    static List<DeformableMesh3D> deform(int threads){
+        SegmentationModel model = new SegmentationModel();
+        model.setOriginalPlus(MeshImageStackTesting.testStack());
+        model.setImageEnergyType(ImageEnergyType.PerpendicularIntensity);
+        model.setWeight(0.01);
+        model.setPressure(0.5);
+        model.setStericNeighborWeight(1);
+        model.setDeformationThreads(threads);
+
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        double[][] centers = {{-0.05, 0, 0}, {0.05, 0, 0}, {0, 0.08, 0}};
+        for(double[] center: centers){
+            DeformableMesh3D mesh = createSphere(0.07, center);
+            model.startMeshTrack(0, mesh);
+            meshes.add(mesh);
+        }
+        model.deformMeshes(meshes, 5);
+        return meshes;
+    }
+
+    /**
+     * Overlapping meshes push on each other, the result should not depend on the number of threads.
+     */
+    @Test
+    public void threadsGiveSamePositions(){
+        List<DeformableMesh3D> sequential = deform(1);
+        List<DeformableMesh3D> parallel = deform(3);
+        for(int i = 0; i<sequential.size(); i++){
+            Assert.assertArrayEquals(sequential.get(i).positions, parallel.get(i).positions, 0);
+        }
+    }
+}
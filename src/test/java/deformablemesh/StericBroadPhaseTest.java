@@ -0,0 +1,91 @@
+package deformablemesh;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class StericBroadPhaseTest {
+
+    static DeformableMesh3D createSphere(double r, double[] center){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(0);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + center[i%3];
+        }
+        return mesh;
+    }
+
+    static boolean boxesOverlap(DeformableMesh3D a, DeformableMesh3D b, double padding){
+        double[] ba = new double[6];
+        double[] bb = new double[6];
+        StericBroadPhase.bounds(a.positions, ba, 0);
+        StericBroadPhase.bounds(b.positions, bb, 0);
+        for(int k = 0; k<3; k++){
+            if(ba[k] - padding > bb[3 + k] + padding || bb[k] - padding > ba[3 + k] + padding){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The sweep should find the same pairs as checking every pair of boxes.
+     */
+    @Test
+    public void sweepMatchesAllPairs(){
+        Random ng = new Random(3);
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        for(int i = 0; i<50; i++){
+            double[] center = {ng.nextDouble() - 0.5, ng.nextDouble() - 0.5, ng.nextDouble() - 0.5};
+            meshes.add(createSphere(0.02 + 0.05*ng.nextDouble(), center));
+        }
+        double padding = 0.01;
+        StericBroadPhase broadPhase = new StericBroadPhase(meshes, padding);
+        int pairs = 0;
+        for(int i = 0; i<meshes.size(); i++){
+            Assert.assertFalse(broadPhase.mayTouch(meshes.get(i), meshes.get(i)));
+            for(int j = i + 1; j<meshes.size(); j++){
+                boolean expected = boxesOverlap(meshes.get(i), meshes.get(j), padding);
+                Assert.assertEquals(expected, broadPhase.mayTouch(meshes.get(i), meshes.get(j)));
+                Assert.assertEquals(expected, broadPhase.mayTouch(meshes.get(j), meshes.get(i)));
+                if(expected){
+                    pairs++;
+                }
+            }
+        }
+        Assert.assertEquals(pairs, broadPhase.getPairCount());
+        Assert.assertTrue(pairs < meshes.size()*(meshes.size() - 1)/2);
+    }
+
+    /**
+     * Movement within the padding keeps the pairs, leaving the padded box finds them again.
+     */
+    @Test
+    public void updateWhenMoved(){
+        DeformableMesh3D a = createSphere(0.1, new double[]{-0.3, 0, 0});
+        DeformableMesh3D b = createSphere(0.1, new double[]{0.3, 0, 0});
+        List<DeformableMesh3D> meshes = new ArrayList<>();
+        meshes.add(a);
+        meshes.add(b);
+        StericBroadPhase broadPhase = new StericBroadPhase(meshes, 0.05);
+        Assert.assertFalse(broadPhase.mayTouch(a, b));
+        Assert.assertEquals(1, broadPhase.getSweepCount());
+
+        for(int i = 0; i<a.positions.length; i+=3){
+            a.positions[i] += 0.04;
+        }
+        Assert.assertFalse(broadPhase.update());
+
+        for(int i = 0; i<a.positions.length; i+=3){
+            a.positions[i] += 0.3;
+        }
+        Assert.assertTrue(broadPhase.update());
+        Assert.assertTrue(broadPhase.mayTouch(a, b));
+        Assert.assertTrue(broadPhase.getNeighbors(b).contains(a));
+        Assert.assertEquals(2, broadPhase.getSweepCount());
+    }
+}
@@ -0,0 +1,105 @@
+package deformablemesh.externalenergies;
+
+import deformablemesh.GradientVolume;
+import deformablemesh.MeshImageStack;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.MeshWorkspace;
+import deformablemesh.geometry.RayCastMesh;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileInfo;
+import ij.process.ShortProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PerpendicularGradientEnergyTest {
+
+    /**
+     * A stack with a step from 0 to 1000 along x, at the center of the stack.
+     */
+    static MeshImageStack stepEdge(){
+        ImageStack stack = new ImageStack(40, 40);
+        for(int z = 0; z<40; z++){
+            ShortProcessor proc = new ShortProcessor(40, 40);
+            for(int y = 0; y<40; y++){
+                for(int x = 20; x<40; x++){
+                    proc.set(x, y, 1000);
+                }
+            }
+            stack.addSlice(proc);
+        }
+        ImagePlus plus = new ImagePlus("step", stack);
+        FileInfo info = plus.getFileInfo();
+        info.pixelWidth = 1;
+        info.pixelHeight = 1;
+        info.pixelDepth = 1;
+        plus.setFileInfo(info);
+        return new MeshImageStack(plus);
+    }
+
+    static double[][] forces(ExternalEnergy energy, DeformableMesh3D mesh){
+        int n = mesh.positions.length/3;
+        double[][] f = new double[3][n];
+        energy.updateForces(mesh.positions, f[0], f[1], f[2], new MeshWorkspace(n));
+        return f;
+    }
+
+    /**
+     * The precomputed mode should push the nodes in the same direction as the sampled mode, the two modes smooth
+     * the image differently so only the direction is compared.
+     */
+    @Test
+    public void precomputedMatchesSampled(){
+        MeshImageStack stack = stepEdge();
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*0.2 + (i%3 == 0 ? 0.1 : 0);
+        }
+
+        double[][] sampled = forces(new PerpendicularGradientEnergy(stack, mesh, 1, false), mesh);
+        PerpendicularGradientEnergy energy = new PerpendicularGradientEnergy(stack, mesh, 1, true);
+        double[][] precomputed = forces(energy, mesh);
+
+        int n = mesh.positions.length/3;
+        double max = 0;
+        for(int i = 0; i<n; i++){
+            max = Math.max(max, Math.abs(sampled[0][i]));
+        }
+        Assert.assertTrue(max > 0);
+
+        int compared = 0;
+        for(int i = 0; i<n; i++){
+            double s = sampled[0][i]*sampled[0][i] + sampled[1][i]*sampled[1][i] + sampled[2][i]*sampled[2][i];
+            if(s < 0.04*max*max){
+                continue;
+            }
+            compared++;
+            //both forces are along the normal, so they agree when their dot product is positive.
+            double dot = sampled[0][i]*precomputed[0][i] + sampled[1][i]*precomputed[1][i] + sampled[2][i]*precomputed[2][i];
+            Assert.assertTrue(dot > 0);
+        }
+        Assert.assertTrue(compared > 0);
+
+        //only the component of the gradient along the normal contributes.
+        GradientVolume gradient = stack.getGradientVolume();
+        double[] normal = new double[3];
+        double[] g = new double[3];
+        for(int i = 0; i<n; i++){
+            energy.getNormal(i, normal);
+            double[] change = new double[2];
+            for(int side = 0; side<2; side++){
+                double sign = side == 0 ? 1 : -1;
+                double[] pt = new double[3];
+                for(int j = 0; j<3; j++){
+                    pt[j] = mesh.positions[3*i + j] + sign*normal[j]*energy.ds;
+                }
+                gradient.getGradient(pt, g);
+                change[side] = Math.abs(g[0]*normal[0] + g[1]*normal[1] + g[2]*normal[2]);
+            }
+            double f = (change[0] - change[1])*energy.ds*Math.abs(energy.kernelMoment);
+            for(int j = 0; j<3; j++){
+                Assert.assertEquals(f*normal[j], precomputed[j][i], 1e-6*max);
+            }
+        }
+    }
+}
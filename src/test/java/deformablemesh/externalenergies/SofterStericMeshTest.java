@@ -0,0 +1,83 @@
+package deformablemesh.externalenergies;
+
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.InterceptingMesh3D;
+import deformablemesh.geometry.MeshWorkspace;
+import deformablemesh.geometry.RayCastMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SofterStericMeshTest {
+
+    static DeformableMesh3D createSphere(double r, double x){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + (i%3 == 0 ? x : 0);
+        }
+        return mesh;
+    }
+
+    static double[] forces(StericMesh energy, DeformableMesh3D mesh, boolean workspace){
+        int n = mesh.positions.length/3;
+        double[] fx = new double[n];
+        double[] fy = new double[n];
+        double[] fz = new double[n];
+        if(workspace){
+            energy.updateForces(mesh.positions, fx, fy, fz, new MeshWorkspace(n));
+        } else{
+            energy.updateForces(mesh.positions, fx, fy, fz);
+        }
+        double[] f = new double[3*n];
+        for(int i = 0; i<n; i++){
+            f[3*i] = fx[i];
+            f[3*i + 1] = fy[i];
+            f[3*i + 2] = fz[i];
+        }
+        return f;
+    }
+
+    /**
+     * The soft force depends on the penetration, so it differs from the constant force of the steric mesh, and both
+     * overloads of updateForces need to use it.
+     */
+    @Test
+    public void softForceIsUsed(){
+        DeformableMesh3D a = createSphere(0.3, -0.2);
+        DeformableMesh3D b = createSphere(0.3, 0.2);
+
+        double[] hard = forces(new StericMesh(a, b, 1), a, true);
+        double[] soft = forces(new SofterStericMesh(a, b, 1), a, true);
+        double[] softFour = forces(new SofterStericMesh(a, b, 1), a, false);
+
+        Assert.assertArrayEquals(soft, softFour, 1e-12);
+
+        double difference = 0;
+        double magnitude = 0;
+        for(int i = 0; i<hard.length; i++){
+            difference += Math.abs(hard[i] - soft[i]);
+            magnitude += Math.abs(soft[i]);
+        }
+        Assert.assertTrue(magnitude > 0);
+        Assert.assertTrue(difference > 1e-6);
+    }
+
+    /**
+     * Updating follows the neighbor by refitting, the intercepting mesh is not recreated each step.
+     */
+    @Test
+    public void updateRefitsNeighbor(){
+        DeformableMesh3D a = createSphere(0.3, -0.2);
+        DeformableMesh3D b = createSphere(0.3, 0.2);
+        StericMesh steric = new SofterStericMesh(a, b, 1);
+        steric.update();
+        InterceptingMesh3D first = steric.mesh;
+
+        for(int i = 0; i<b.positions.length; i+=3){
+            b.positions[i] += 0.5;
+        }
+        steric.update();
+        Assert.assertSame(first, steric.mesh);
+        Assert.assertFalse(steric.mesh.contains(new double[]{0.1, 0, 0}));
+        Assert.assertTrue(steric.mesh.contains(new double[]{0.7, 0, 0}));
+    }
+}
@@ -1,10 +1,15 @@
 package deformablemesh.geometry;
 
+import deformablemesh.ConvergenceCriterion;
 import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.externalenergies.PressureForce;
+import deformablemesh.solvers.SolverType;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by msmith on 4/21/16.
@@ -73,4 +78,127 @@ public class DeformableMesh3DTests {
         Assert.assertEquals(before, after, 1e-2);
     }
 
+    @Test
+    public void testSolvers(){
+        for(SolverType type: new SolverType[]{SolverType.SparseDirect, SolverType.ConjugateGradient}){
+            for(double beta: new double[]{0, 0.1}){
+                DeformableMesh3D dense = RayCastMesh.sphereRayCastMesh(2);
+                DeformableMesh3D other = DeformableMesh3DTools.copyOf(dense);
+                other.setSolverType(type);
+
+                for(DeformableMesh3D mesh: new DeformableMesh3D[]{dense, other}){
+                    mesh.ALPHA = 1;
+                    mesh.BETA = beta;
+                    mesh.GAMMA = 100;
+                    mesh.addExternalEnergy(new PressureForce(mesh, 1));
+                    mesh.reshape();
+                }
+
+                for(int i = 0; i<5; i++){
+                    dense.update();
+                    other.update();
+                }
+                Assert.assertArrayEquals(dense.positions, other.positions, 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testReorderNodes(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(3);
+        DeformableMesh3D reordered = DeformableMesh3DTools.reorderNodes(mesh);
+
+        Assert.assertEquals(mesh.nodes.size(), reordered.nodes.size());
+        Assert.assertEquals(mesh.connections.size(), reordered.connections.size());
+        Assert.assertEquals(mesh.triangles.size(), reordered.triangles.size());
+        Assert.assertEquals(mesh.calculateVolume(), reordered.calculateVolume(), TOL);
+
+        int before = 0;
+        for(Connection3D con: mesh.connections){
+            before = Math.max(before, Math.abs(con.A.index - con.B.index));
+        }
+        int after = 0;
+        for(Connection3D con: reordered.connections){
+            after = Math.max(after, Math.abs(con.A.index - con.B.index));
+        }
+        Assert.assertTrue(after < before);
+    }
+
+    @Test
+    public void testConvergenceCriterion(){
+        ConvergenceCriterion criterion = new ConvergenceCriterion(ConvergenceCriterion.Measure.Maximum, 1e-3, 3);
+        ConvergenceCriterion.State state = criterion.createState();
+        double[] positions = {0, 0, 0, 1, 1, 1};
+        state.reset(positions);
+
+        positions[0] = 0.1;
+        Assert.assertFalse(state.update(positions));
+        Assert.assertEquals(0.1, state.getDisplacement(), TOL);
+
+        positions[0] = 0.1005;
+        Assert.assertFalse(state.update(positions));
+        Assert.assertFalse(state.update(positions));
+        //a large step resets the patience.
+        positions[3] = 2;
+        Assert.assertFalse(state.update(positions));
+        Assert.assertFalse(state.update(positions));
+        Assert.assertFalse(state.update(positions));
+        Assert.assertTrue(state.update(positions));
+
+        //rms of one node moving 0.002 and one still node.
+        ConvergenceCriterion rms = new ConvergenceCriterion(ConvergenceCriterion.Measure.RMS, 1.5e-3, 1);
+        ConvergenceCriterion.State rmsState = rms.createState();
+        rmsState.reset(positions);
+        positions[0] += 0.002;
+        Assert.assertTrue(rmsState.update(positions));
+        Assert.assertEquals(Math.sqrt(0.002*0.002/2), rmsState.getDisplacement(), TOL);
+    }
+
+    @Test
+    public void testMeshConverges(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        mesh.ALPHA = 1;
+        mesh.GAMMA = 100;
+        mesh.BETA = 0;
+        ConvergenceCriterion.State state = new ConvergenceCriterion(ConvergenceCriterion.Measure.RMS, 1e-6, 5).createState();
+        state.reset(mesh.positions);
+        int steps = 0;
+        do{
+            mesh.update();
+            steps++;
+        } while(steps < 10000 && !state.update(mesh.positions));
+        Assert.assertTrue(state.isConverged());
+        Assert.assertTrue(steps < 10000);
+    }
+
+    @Test
+    public void testTopologyMatchesMaps(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        MeshTopology topology = mesh.getTopology();
+        Map<Node3D, List<Connection3D>> noder = mesh.getCurvatureMap();
+        Map<Connection3D, Set<Connection3D>> conner = mesh.getAdjacencyMap(noder);
+
+        for(Node3D n: mesh.nodes){
+            List<Connection3D> cons = noder.get(n);
+            Assert.assertEquals(cons.size(), topology.getDegree(n.index));
+            int slot = topology.nodeOffsets[n.index];
+            for(int i = 0; i<cons.size(); i++){
+                Connection3D a = cons.get(i);
+                Node3D other = a.A.equals(n)?a.B:a.A;
+                Assert.assertEquals(other.index, topology.getNeighbor(n.index, i));
+
+                int k = topology.firstOrderOffsets[slot + i];
+                for(int j = i+1; j<cons.size(); j++){
+                    Connection3D b = cons.get(j);
+                    if(conner.get(a).contains(b)){
+                        continue;
+                    }
+                    Node3D another = b.A.equals(n)?b.B:b.A;
+                    Assert.assertEquals(another.index, topology.firstOrder[k++]);
+                }
+                Assert.assertEquals(topology.firstOrderOffsets[slot + i + 1], k);
+            }
+        }
+    }
+
 }
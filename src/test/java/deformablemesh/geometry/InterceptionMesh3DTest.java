@@ -4,7 +4,9 @@ import deformablemesh.util.Vector3DOps;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by msmith on 4/21/16.
@@ -33,4 +35,63 @@ public class InterceptionMesh3DTest {
         }
 
     }
+
+    /**
+     * The bounding volume hierarchy should find the same intersections as checking every triangle, before and
+     * after the mesh is deformed and refit.
+     */
+    @Test
+    public void testHierarchyMatchesLinear(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        InterceptingMesh3D ints = new InterceptingMesh3D(mesh);
+        Random random = new Random(1);
+        for(int pass = 0; pass<2; pass++){
+            for(int k = 0; k<500; k++){
+                double[] o = {random.nextGaussian()*0.7, random.nextGaussian()*0.7, random.nextGaussian()*0.7};
+                double[] d = {random.nextGaussian(), random.nextGaussian(), random.nextGaussian()};
+                List<Intersection> expected = new ArrayList<>();
+                for(InterceptingTriangle3D triangle: ints.triangles){
+                    triangle.getIntersection(o, d, expected);
+                }
+                List<Intersection> found = ints.getIntersections(o, d);
+                Assert.assertEquals(expected.size(), found.size());
+                for(int i = 0; i<found.size(); i++){
+                    Assert.assertArrayEquals(expected.get(i).location, found.get(i).location, 0);
+                }
+            }
+            for(int i = 0; i<mesh.positions.length; i++){
+                mesh.positions[i] = mesh.positions[i]*(1 + 0.3*Math.sin(i)) + 0.1;
+            }
+            ints.refit();
+        }
+    }
+
+    /**
+     * Moving the nodes refits the existing hierarchy, changing the triangles rebuilds it.
+     */
+    @Test
+    public void testRefitRebuildsOnTopologyChange(){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(1);
+        InterceptingMesh3D ints = new InterceptingMesh3D(mesh);
+        BoundingVolumeHierarchy built = ints.hierarchy;
+        double high = ints.bounds.high[0];
+
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*1.1;
+        }
+        ints.refit();
+        Assert.assertSame(built, ints.hierarchy);
+        Assert.assertEquals(1.1*high, ints.bounds.high[0], 1e-9);
+
+        //same triangles with the vertex order rotated, the topology array no longer matches.
+        int[] rotated = new int[mesh.triangle_index.length];
+        for(int i = 0; i<rotated.length; i+=3){
+            rotated[i] = mesh.triangle_index[i + 1];
+            rotated[i + 1] = mesh.triangle_index[i + 2];
+            rotated[i + 2] = mesh.triangle_index[i];
+        }
+        mesh.triangle_index = rotated;
+        ints.refit();
+        Assert.assertNotSame(built, ints.hierarchy);
+    }
 }
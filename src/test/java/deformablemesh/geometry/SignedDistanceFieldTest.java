@@ -0,0 +1,64 @@
+package deformablemesh.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignedDistanceFieldTest {
+
+    static DeformableMesh3D createSphere(double r){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r;
+        }
+        return mesh;
+    }
+
+    /**
+     * The distance to a sphere mesh should be close to the distance to the sphere within the band, with the gradient
+     * pointing away from the center.
+     */
+    @Test
+    public void sphereDistance(){
+        double r = 0.3;
+        double spacing = 0.02;
+        DeformableMesh3D mesh = createSphere(r);
+        SignedDistanceField field = new SignedDistanceField(mesh, spacing);
+
+        double[] gradient = new double[3];
+        double[] direction = {0.48, 0.6, 0.64};
+        for(double l: new double[]{0.25, 0.28, 0.3, 0.32, 0.35}){
+            double[] pt = {l*direction[0], l*direction[1], l*direction[2]};
+            double d = field.getDistance(pt, gradient);
+            Assert.assertEquals(l - r, d, spacing);
+            double dot = gradient[0]*direction[0] + gradient[1]*direction[1] + gradient[2]*direction[2];
+            Assert.assertTrue(dot > 0.9);
+        }
+
+        Assert.assertTrue(field.contains(new double[]{0, 0, 0}));
+        Assert.assertEquals(-field.getBand(), field.getDistance(new double[]{0, 0, 0}), 1e-6);
+        Assert.assertEquals(field.getBand(), field.getDistance(new double[]{1, 1, 1}), 1e-6);
+    }
+
+    /**
+     * Small movements of the mesh should not cause the field to be rebuilt.
+     */
+    @Test
+    public void rebuildTolerance(){
+        double spacing = 0.02;
+        DeformableMesh3D mesh = createSphere(0.3);
+        SignedDistanceField field = new SignedDistanceField(mesh, spacing);
+        Assert.assertEquals(1, field.getBuildCount());
+
+        for(int i = 0; i<mesh.positions.length; i+=3){
+            mesh.positions[i] += 0.5*spacing;
+        }
+        Assert.assertFalse(field.update());
+
+        for(int i = 0; i<mesh.positions.length; i+=3){
+            mesh.positions[i] += spacing;
+        }
+        Assert.assertTrue(field.update());
+        Assert.assertEquals(2, field.getBuildCount());
+        Assert.assertEquals(0, field.getDistance(new double[]{0.3 + 1.5*spacing, 0, 0}), 0.5*spacing);
+    }
+}
@@ -0,0 +1,156 @@
+package deformablemesh.solvers;
+
+import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FactorizationCacheTest {
+
+    /**
+     * Stand in solver with a fixed memory usage.
+     */
+    static class SizedSolver implements MeshSolver{
+        final long bytes;
+        SizedSolver(long bytes){
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void setMatrix(SparseMatrix matrix){
+
+        }
+
+        @Override
+        public void solve(double[] b, double[] x){
+
+        }
+
+        @Override
+        public void solve(double[] fx, double[] fy, double[] fz, double[] positions){
+
+        }
+
+        @Override
+        public long getMemoryUsage(){
+            return bytes;
+        }
+    }
+
+    static StiffnessKey key(int i){
+        return new StiffnessKey(SolverType.DenseLU, 1, 0, 100, new int[]{0, i}, new int[0], new double[0]);
+    }
+
+    static DeformableMesh3D createMesh(FactorizationCache cache){
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(1);
+        mesh.ALPHA = 1;
+        mesh.BETA = 0.1;
+        mesh.GAMMA = 100;
+        mesh.setFactorizationCache(cache);
+        return mesh;
+    }
+
+    /**
+     * A copied mesh, as when tracking to the next frame, should reuse the factorization.
+     */
+    @Test
+    public void copiedMeshHits(){
+        FactorizationCache cache = new FactorizationCache();
+        DeformableMesh3D mesh = createMesh(cache);
+        mesh.reshape();
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(0, cache.getHits());
+
+        DeformableMesh3D copy = DeformableMesh3DTools.copyOf(mesh);
+        for(int i = 0; i<copy.positions.length; i++){
+            copy.positions[i] += 0.01;
+        }
+        copy.ALPHA = mesh.ALPHA;
+        copy.BETA = mesh.BETA;
+        copy.GAMMA = mesh.GAMMA;
+        copy.setFactorizationCache(cache);
+        Assert.assertEquals(mesh.getStiffnessKey(), copy.getStiffnessKey());
+        copy.reshape();
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * Changing any parameter or the connections changes the stiffness matrix.
+     */
+    @Test
+    public void changesMiss(){
+        FactorizationCache cache = new FactorizationCache();
+        DeformableMesh3D mesh = createMesh(cache);
+        mesh.reshape();
+
+        mesh.ALPHA = 2;
+        mesh.reshape();
+        Assert.assertEquals(2, cache.getMisses());
+        mesh.BETA = 0.2;
+        mesh.reshape();
+        Assert.assertEquals(3, cache.getMisses());
+        mesh.GAMMA = 200;
+        mesh.reshape();
+        Assert.assertEquals(4, cache.getMisses());
+        Assert.assertEquals(0, cache.getHits());
+
+        mesh.reshape();
+        Assert.assertEquals(1, cache.getHits());
+
+        StiffnessKey key = mesh.getStiffnessKey();
+        int[] connections = key.connections.clone();
+        int swap = connections[1];
+        connections[1] = connections[3];
+        connections[3] = swap;
+        StiffnessKey changed = new StiffnessKey(
+                key.type, key.alpha, key.beta, key.gamma, connections, key.triangles, key.gammaFactors
+        );
+        Assert.assertNotEquals(key, changed);
+        cache.getSolver(changed, () -> new SizedSolver(0));
+        Assert.assertEquals(5, cache.getMisses());
+    }
+
+    /**
+     * The least recently used solver is removed first.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed(){
+        FactorizationCache cache = new FactorizationCache(Long.MAX_VALUE, 2);
+        MeshSolver a = cache.getSolver(key(1), () -> new SizedSolver(10));
+        MeshSolver b = cache.getSolver(key(2), () -> new SizedSolver(10));
+        Assert.assertSame(a, cache.getSolver(key(1), () -> new SizedSolver(10)));
+
+        cache.getSolver(key(3), () -> new SizedSolver(10));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(a, cache.getSolver(key(1), () -> new SizedSolver(10)));
+        Assert.assertNotSame(b, cache.getSolver(key(2), () -> new SizedSolver(10)));
+        Assert.assertEquals(4, cache.getMisses());
+    }
+
+    /**
+     * The estimated memory of the cached solvers stays under the limit, solvers larger than the limit are not kept.
+     */
+    @Test
+    public void enforcesByteLimit(){
+        long keyBytes = key(0).getMemoryUsage();
+        long limit = 2*(100 + keyBytes);
+        FactorizationCache cache = new FactorizationCache(limit, 32);
+        for(int i = 0; i<5; i++){
+            cache.getSolver(key(i), () -> new SizedSolver(100));
+            Assert.assertTrue(cache.getMemoryUsage() <= limit);
+        }
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(limit, cache.getMemoryUsage());
+
+        MeshSolver large = cache.getSolver(key(10), () -> new SizedSolver(limit));
+        Assert.assertNotSame(large, cache.getSolver(key(10), () -> new SizedSolver(limit)));
+        Assert.assertEquals(2, cache.size());
+
+        cache.setMaxBytes(100 + keyBytes);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(100 + keyBytes, cache.getMemoryUsage());
+    }
+}
@@ -0,0 +1,36 @@
+package deformablemesh.solvers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+public class SparseDirectSolverTest {
+
+    /**
+     * A matrix with a vanishing pivot is solved with the dense decomposition, without writing to the console.
+     */
+    @Test
+    public void fallsBackToDense(){
+        SparseMatrix.Assembler assembler = new SparseMatrix.Assembler(2);
+        assembler.add(0, 1, 1);
+        assembler.add(1, 0, 1);
+        SparseDirectSolver solver = new SparseDirectSolver();
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(output));
+        try{
+            solver.setMatrix(assembler.build());
+        } finally{
+            System.setErr(err);
+        }
+        Assert.assertEquals(0, output.size());
+        Assert.assertTrue(solver.isDense());
+
+        double[] x = new double[2];
+        solver.solve(new double[]{2, 3}, x);
+        Assert.assertArrayEquals(new double[]{3, 2}, x, 1e-12);
+    }
+}
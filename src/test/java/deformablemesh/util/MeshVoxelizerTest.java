@@ -0,0 +1,197 @@
+package deformablemesh.util;
+
+import deformablemesh.DeformableMesh3DTools;
+import deformablemesh.MeshImageStack;
+import deformablemesh.geometry.DeformableMesh3D;
+import deformablemesh.geometry.RayCastMesh;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileInfo;
+import ij.process.ColorProcessor;
+import ij.process.ShortProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MeshVoxelizerTest {
+
+    static MeshImageStack createStack(){
+        ImageStack stack = new ImageStack(40, 40);
+        for(int i = 0; i<20; i++){
+            stack.addSlice(new ShortProcessor(40, 40));
+        }
+        ImagePlus plus = new ImagePlus("blank", stack);
+        FileInfo info = plus.getFileInfo();
+        info.pixelWidth = 1;
+        info.pixelHeight = 1;
+        info.pixelDepth = 2;
+        plus.setFileInfo(info);
+        return new MeshImageStack(plus);
+    }
+
+    /**
+     * Box with two triangles per face, the normals point out.
+     *
+     * @param low corner with the smallest coordinates.
+     * @param high corner with the largest coordinates.
+     */
+    static DeformableMesh3D createBox(double[] low, double[] high){
+        double[] positions = new double[24];
+        for(int i = 0; i<8; i++){
+            positions[3*i] = (i & 1) == 0 ? low[0] : high[0];
+            positions[3*i + 1] = (i & 2) == 0 ? low[1] : high[1];
+            positions[3*i + 2] = (i & 4) == 0 ? low[2] : high[2];
+        }
+        int[][] faces = {
+                {0, 4, 6, 2}, {1, 3, 7, 5},
+                {0, 1, 5, 4}, {2, 6, 7, 3},
+                {0, 2, 3, 1}, {4, 5, 7, 6}
+        };
+        int[] triangles = new int[36];
+        for(int f = 0; f<6; f++){
+            int[] q = faces[f];
+            int[] split = {q[0], q[1], q[2], q[0], q[2], q[3]};
+            System.arraycopy(split, 0, triangles, 6*f, 6);
+        }
+        //every edge is in two triangles with opposite directions, keep the increasing one.
+        int[] connections = new int[36];
+        int c = 0;
+        for(int t = 0; t<12; t++){
+            for(int k = 0; k<3; k++){
+                int a = triangles[3*t + k];
+                int b = triangles[3*t + (k + 1)%3];
+                if(a < b){
+                    connections[c++] = a;
+                    connections[c++] = b;
+                }
+            }
+        }
+        return new DeformableMesh3D(positions, connections, triangles);
+    }
+
+    /**
+     * Voxelizes on a grid with unit spacing, so the mesh positions are the image coordinates.
+     */
+    static List<int[]> voxelize(DeformableMesh3D mesh){
+        return new MeshVoxelizer(mesh, new double[]{0, 0, 0}, 1, 10, 10, 10).getVoxels();
+    }
+
+    /**
+     * Voxelizes a sphere, the voxels should be inside of the sphere and account for its volume.
+     */
+    @Test
+    public void sphereVoxels(){
+        MeshImageStack stack = createStack();
+        double r = 0.3;
+        DeformableMesh3D mesh = RayCastMesh.sphereRayCastMesh(2);
+        for(int i = 0; i<mesh.positions.length; i++){
+            mesh.positions[i] = mesh.positions[i]*r + 0.01;
+        }
+
+        MeshVoxelizer voxelizer = new MeshVoxelizer(stack, mesh);
+        List<int[]> voxels = voxelizer.getVoxels();
+        double[] px = stack.getNormalizedCoordinate(new double[]{1, 1, 1});
+        double[] origin = stack.getNormalizedCoordinate(new double[]{0, 0, 0});
+        double voxelVolume = (px[0] - origin[0])*(px[1] - origin[1])*(px[2] - origin[2]);
+        double expected = 4*Math.PI*r*r*r/3;
+        Assert.assertEquals(expected, voxels.size()*voxelVolume, 0.1*expected);
+
+        for(int[] voxel: voxels){
+            double[] pt = stack.getNormalizedCoordinate(new double[]{voxel[0], voxel[1], voxel[2]});
+            double d = Vector3DOps.mag(Vector3DOps.difference(pt, new double[]{0.01, 0.01, 0.01}));
+            Assert.assertTrue(d < r + (px[2] - origin[2]));
+        }
+
+        SpanVolume spans = voxelizer.getSpanVolume();
+        Assert.assertEquals(voxels.size(), spans.count());
+        for(int[] voxel: voxels){
+            Assert.assertTrue(spans.contains(voxel[0], voxel[1], voxel[2]));
+        }
+    }
+
+    /**
+     * The voxels inside of an axis aligned box are after the low face and at or before the high face.
+     */
+    @Test
+    public void boxVoxels(){
+        DeformableMesh3D mesh = createBox(new double[]{1.5, 2.5, 0.5}, new double[]{5.5, 4.5, 3.5});
+        List<int[]> expected = new ArrayList<>();
+        for(int z = 1; z<=3; z++){
+            for(int y = 3; y<=4; y++){
+                for(int x = 2; x<=5; x++){
+                    expected.add(new int[]{x, y, z});
+                }
+            }
+        }
+        List<int[]> voxels = voxelize(mesh);
+        Assert.assertEquals(expected.size(), voxels.size());
+        for(int i = 0; i<expected.size(); i++){
+            Assert.assertArrayEquals(expected.get(i), voxels.get(i));
+        }
+    }
+
+    /**
+     * Rows pass through the edges and vertexes of a box with integer corners. Each row crosses the box once, so
+     * the runs cover the full width and the box faces are counted as half open.
+     */
+    @Test
+    public void sharedEdgesCountedOnce(){
+        DeformableMesh3D mesh = createBox(new double[]{1, 2, 1}, new double[]{5, 4, 3});
+        SpanVolume spans = new MeshVoxelizer(mesh, new double[]{0, 0, 0}, 1, 10, 10, 10).getSpanVolume();
+        List<int[]> voxels = spans.getVoxels();
+        Assert.assertEquals(4*2*2, voxels.size());
+        for(int[] voxel: voxels){
+            Assert.assertTrue(voxel[0] >= 2 && voxel[0] <= 5);
+            Assert.assertTrue(voxel[1] >= 2 && voxel[1] <= 4);
+            Assert.assertTrue(voxel[2] >= 1 && voxel[2] <= 3);
+            for(int x = 2; x<=5; x++){
+                Assert.assertTrue(spans.contains(x, voxel[1], voxel[2]));
+            }
+        }
+
+        //the row through the diagonals of the x faces, the shared edge of two triangles.
+        for(int x = 0; x<10; x++){
+            Assert.assertEquals(x >= 2 && x <= 5, spans.contains(x, 3, 2));
+        }
+    }
+
+    /**
+     * Fills an rgb stack, only the voxels inside of the mesh are changed.
+     */
+    @Test
+    public void fillColorStack(){
+        MeshImageStack stack = createStack();
+        DeformableMesh3D mesh = createBox(new double[]{10.5, 12.5, 3.5}, new double[]{20.5, 15.5, 6.5});
+        for(int i = 0; i<mesh.nodes.size(); i++){
+            double[] pt = stack.getNormalizedCoordinate(mesh.nodes.get(i).getCoordinates());
+            System.arraycopy(pt, 0, mesh.positions, 3*i, 3);
+        }
+
+        ImageStack out = new ImageStack(40, 40);
+        for(int i = 0; i<20; i++){
+            ColorProcessor proc = new ColorProcessor(40, 40);
+            proc.set(0, 7);
+            out.addSlice(proc);
+        }
+        int rgb = 0xff8040;
+        DeformableMesh3DTools.mosaicBinary(stack, out, mesh, rgb);
+
+        int count = 0;
+        for(int z = 0; z<20; z++){
+            int[] pixels = (int[])out.getPixels(z + 1);
+            for(int y = 0; y<40; y++){
+                for(int x = 0; x<40; x++){
+                    boolean inside = x >= 11 && x <= 20 && y >= 13 && y <= 15 && z >= 4 && z <= 6;
+                    int background = x == 0 && y == 0 ? 7 : 0;
+                    Assert.assertEquals(inside ? rgb : background, pixels[x + 40*y]);
+                    if(inside){
+                        count++;
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(10*3*3, count);
+    }
+}
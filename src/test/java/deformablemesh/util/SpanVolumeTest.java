@@ -0,0 +1,73 @@
+package deformablemesh.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SpanVolumeTest {
+
+    @Test
+    public void addMergesRuns(){
+        SpanVolume volume = new SpanVolume(20, 2, 2);
+        volume.add(1, 1, 10, 12);
+        volume.add(1, 1, 2, 4);
+        volume.add(1, 1, 4, 6);
+        volume.add(1, 1, 15, 30);
+        Assert.assertArrayEquals(new int[]{2, 6, 10, 12, 15, 20}, volume.getRow(1, 1));
+        volume.add(1, 1, 5, 16);
+        Assert.assertArrayEquals(new int[]{2, 20}, volume.getRow(1, 1));
+        Assert.assertEquals(18, volume.count());
+        Assert.assertEquals(1, volume.getSpanCount());
+        Assert.assertTrue(volume.contains(2, 1, 1));
+        Assert.assertFalse(volume.contains(1, 1, 1));
+        Assert.assertFalse(volume.contains(2, 0, 1));
+    }
+
+    @Test
+    public void unionAndIntersection(){
+        int w = 16;
+        int h = 5;
+        int d = 3;
+        List<int[]> first = new ArrayList<>();
+        List<int[]> second = new ArrayList<>();
+        boolean[] a = new boolean[w*h*d];
+        boolean[] b = new boolean[w*h*d];
+        for(int z = 0; z<d; z++){
+            for(int y = 0; y<h; y++){
+                for(int x = 0; x<w; x++){
+                    int i = x + w*(y + h*z);
+                    a[i] = (x*7 + y*3 + z)%5 < 2;
+                    b[i] = (x + y + z)%3 == 0 || x > 10;
+                    if(a[i]) first.add(new int[]{x, y, z});
+                    if(b[i]) second.add(new int[]{x, y, z});
+                }
+            }
+        }
+        SpanVolume va = SpanVolume.fromVoxels(first, w, h, d);
+        SpanVolume vb = SpanVolume.fromVoxels(second, w, h, d);
+        SpanVolume union = va.union(vb);
+        SpanVolume intersection = va.intersection(vb);
+
+        long unionCount = 0;
+        long intersectionCount = 0;
+        for(int z = 0; z<d; z++){
+            for(int y = 0; y<h; y++){
+                for(int x = 0; x<w; x++){
+                    int i = x + w*(y + h*z);
+                    Assert.assertEquals(a[i], va.contains(x, y, z));
+                    Assert.assertEquals(a[i] || b[i], union.contains(x, y, z));
+                    Assert.assertEquals(a[i] && b[i], intersection.contains(x, y, z));
+                    unionCount += a[i] || b[i] ? 1 : 0;
+                    intersectionCount += a[i] && b[i] ? 1 : 0;
+                }
+            }
+        }
+        Assert.assertEquals(first.size(), va.count());
+        Assert.assertEquals(unionCount, union.count());
+        Assert.assertEquals(intersectionCount, intersection.count());
+        Assert.assertEquals(intersectionCount, va.intersectionCount(vb));
+        Assert.assertEquals(first.size(), va.getVoxels().size());
+    }
+}